@@ -0,0 +1,392 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fachada asíncrona de ConcurrentCFGAlgorithms: cada consulta devuelve un
+ * CompletableFuture y se ejecuta en el ejecutor configurado.
+ *
+ * El número de consultas admitidas y aún no terminadas (en cola o en
+ * ejecución) está acotado por la capacidad. Cuando está completa, una
+ * consulta nueva se rechaza (el futuro falla con
+ * RejectedExecutionException) o espera a que haya sitio, según la política
+ * de desbordamiento. Así la cola del ejecutor nunca crece sin límite, sea
+ * cual sea el ejecutor, y la sobrecarga se nota en rechazos o esperas en
+ * lugar de en memoria.
+ *
+ * Cada consulta lleva su propio CancellationToken: cancelar el futuro detiene
+ * el análisis en curso, y con un plazo el tiempo en cola cuenta dentro del
+ * plazo.
+ *
+ * Con un pool de hilos cada consulta usa el CYKWorkspace de su hilo, que se
+ * reutiliza entre consultas. Con hilos virtuales eso no sirve, porque cada
+ * consulta tiene un hilo nuevo; en su lugar la fachada guarda un pool
+ * acotado de espacios de trabajo (uno por procesador) que las consultas toman
+ * y devuelven. Si están todos en uso se crea uno temporal, que se descarta
+ * al terminar si el pool está lleno.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class AsyncRecognizer implements AutoCloseable {
+
+    /**
+     * Qué hacer con una consulta nueva cuando la cola está llena.
+     */
+    public enum Overflow {
+        /**
+         * El futuro falla al momento con RejectedExecutionException.
+         */
+        REJECT,
+        /**
+         * El hilo que envía la consulta espera a que haya sitio.
+         */
+        BLOCK
+    }
+
+    private final ConcurrentCFGAlgorithms grammar;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final int capacity;
+    private final Overflow overflow;
+    private final Semaphore permits;
+    private final BlockingQueue<CYKWorkspace> workspaces; // null: el del hilo de cada consulta.
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peakQueued = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * Crea la fachada sobre un ejecutor externo, que no se cierra con close.
+     *
+     * @param grammar Gramática sobre la que se hacen las consultas.
+     * @param executor Ejecutor de las consultas.
+     * @param capacity Máximo de consultas admitidas y no terminadas.
+     * @param overflow Política cuando se alcanza la capacidad.
+     */
+    public AsyncRecognizer(ConcurrentCFGAlgorithms grammar, Executor executor, int capacity, Overflow overflow) {
+        this(grammar, executor, false, capacity, overflow, 0);
+    }
+
+    /**
+     * Crea la fachada con su propio pool de hilos de tamaño fijo, que se
+     * cierra con close.
+     *
+     * @param grammar Gramática sobre la que se hacen las consultas.
+     * @param threads Número de hilos del pool.
+     * @param capacity Máximo de consultas admitidas y no terminadas.
+     * @param overflow Política cuando se alcanza la capacidad.
+     */
+    public AsyncRecognizer(ConcurrentCFGAlgorithms grammar, int threads, int capacity, Overflow overflow) {
+        this(grammar, Executors.newFixedThreadPool(threads), true, capacity, overflow, 0);
+    }
+
+    private AsyncRecognizer(ConcurrentCFGAlgorithms grammar, Executor executor, boolean ownsExecutor, int capacity, Overflow overflow, int pooledWorkspaces) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La capacidad debe ser al menos 1.");
+        }
+        this.grammar = grammar;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.permits = new Semaphore(capacity);
+        this.workspaces = pooledWorkspaces > 0 ? new ArrayBlockingQueue<>(pooledWorkspaces) : null;
+    }
+
+    /**
+     * Método que crea la fachada con un hilo virtual por consulta, que se
+     * cierra con close. Los hilos virtuales sólo existen a partir de Java 21;
+     * se buscan por reflexión para poder compilar con versiones anteriores.
+     * Las consultas comparten un pool de espacios de trabajo con uno por
+     * procesador, como mucho la capacidad.
+     *
+     * @param grammar Gramática sobre la que se hacen las consultas.
+     * @param capacity Máximo de consultas admitidas y no terminadas.
+     * @param overflow Política cuando se alcanza la capacidad.
+     *
+     * @return La fachada.
+     *
+     * @throws UnsupportedOperationException Si la máquina virtual no tiene
+     * hilos virtuales.
+     */
+    public static AsyncRecognizer withVirtualThreads(ConcurrentCFGAlgorithms grammar, int capacity, Overflow overflow) {
+        Method factory = virtualThreadFactory();
+        if (factory == null) {
+            throw new UnsupportedOperationException("Esta máquina virtual no tiene hilos virtuales.");
+        }
+        try {
+            int pooled = Math.min(capacity, Runtime.getRuntime().availableProcessors());
+            return new AsyncRecognizer(grammar, (ExecutorService) factory.invoke(null), true, capacity, overflow, pooled);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new UnsupportedOperationException("No se han podido crear hilos virtuales: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Método que indica si la máquina virtual tiene hilos virtuales.
+     *
+     * @return TRUE si se puede usar withVirtualThreads.
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return virtualThreadFactory() != null;
+    }
+
+    private static Method virtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Método que indica de forma asíncrona si una palabra pertenece al
+     * lenguaje, como ConcurrentCFGAlgorithms.isDerivedUsignCYK(String).
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     *
+     * @return Un futuro con el resultado, que falla con la
+     * CFGAlgorithmsException de la consulta o con
+     * RejectedExecutionException si no se admite.
+     */
+    public CompletableFuture<Boolean> isDerivedUsignCYK(String word) {
+        return submit(word, new CancellationToken());
+    }
+
+    /**
+     * Método que indica de forma asíncrona si una palabra pertenece al
+     * lenguaje, con un plazo que empieza a contar al enviar la consulta.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param timeout Tiempo máximo desde el envío hasta el resultado.
+     *
+     * @return Un futuro con el resultado, que falla con CYKAbortedException
+     * si vence el plazo.
+     */
+    public CompletableFuture<Boolean> isDerivedUsignCYK(String word, Duration timeout) {
+        return submit(word, CancellationToken.withTimeout(timeout));
+    }
+
+    private CompletableFuture<Boolean> submit(String word, CancellationToken token) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        if (closed) {
+            rejected.increment();
+            future.completeExceptionally(new RejectedExecutionException("La fachada asíncrona está cerrada."));
+            return future;
+        }
+        if (overflow == Overflow.REJECT) {
+            if (!permits.tryAcquire()) {
+                rejected.increment();
+                future.completeExceptionally(new RejectedExecutionException("La cola de consultas está llena."));
+                return future;
+            }
+        } else {
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                rejected.increment();
+                future.completeExceptionally(ex);
+                return future;
+            }
+        }
+        submitted.increment();
+        peakQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+        future.whenComplete((result, ex) -> {
+            if (future.isCancelled()) {
+                token.cancel();
+            }
+        });
+        try {
+            executor.execute(() -> run(word, token, future));
+        } catch (RejectedExecutionException ex) {
+            queued.decrementAndGet();
+            permits.release();
+            rejected.increment();
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    private void run(String word, CancellationToken token, CompletableFuture<Boolean> future) {
+        queued.decrementAndGet();
+        running.incrementAndGet();
+        CYKWorkspace workspace = null;
+        try {
+            if (future.isDone()) { // cancelado mientras esperaba en la cola.
+                aborted.increment();
+            } else {
+                workspace = acquireWorkspace();
+                future.complete(grammar.isDerivedUsignCYK(word, token, workspace));
+            }
+        } catch (CYKAbortedException ex) {
+            aborted.increment();
+            future.completeExceptionally(ex);
+        } catch (CFGAlgorithmsException | RuntimeException ex) {
+            future.completeExceptionally(ex);
+        } finally {
+            if (workspaces != null && workspace != null) {
+                workspaces.offer(workspace); // si el pool está lleno se descarta.
+            }
+            running.decrementAndGet();
+            completed.increment();
+            permits.release();
+        }
+    }
+
+    /**
+     * Espacio de trabajo de una consulta: el del hilo actual o, con hilos
+     * virtuales, uno libre del pool (o uno nuevo si no queda ninguno).
+     */
+    private CYKWorkspace acquireWorkspace() {
+        if (workspaces == null) {
+            return CYKWorkspace.current();
+        }
+        CYKWorkspace workspace = workspaces.poll();
+        return workspace != null ? workspace : new CYKWorkspace();
+    }
+
+    /**
+     * Método que devuelve cuántas consultas admitidas esperan a que el
+     * ejecutor las empiece.
+     *
+     * @return Profundidad actual de la cola.
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Método que devuelve la mayor profundidad de cola observada.
+     *
+     * @return Profundidad máxima desde la creación o el último
+     * resetStatistics.
+     */
+    public int getPeakQueueDepth() {
+        return peakQueued.get();
+    }
+
+    /**
+     * Método que devuelve cuántas consultas se están analizando.
+     *
+     * @return Número de consultas en ejecución.
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * Método que devuelve cuántas consultas más se admitirían ahora sin
+     * rechazar ni esperar.
+     *
+     * @return Huecos libres de la capacidad.
+     */
+    public int getAvailableCapacity() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Método que devuelve la capacidad de la fachada.
+     *
+     * @return Máximo de consultas admitidas y no terminadas.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Método que devuelve cuántas consultas se han admitido.
+     *
+     * @return Consultas admitidas desde la creación o el último
+     * resetStatistics.
+     */
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas consultas se han rechazado.
+     *
+     * @return Consultas rechazadas desde la creación o el último
+     * resetStatistics.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas consultas admitidas han terminado, con
+     * resultado, con error o canceladas.
+     *
+     * @return Consultas terminadas desde la creación o el último
+     * resetStatistics.
+     */
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas consultas admitidas no han llegado al
+     * resultado por cancelarse o vencer su plazo, en la cola o durante el
+     * análisis.
+     *
+     * @return Consultas detenidas desde la creación o el último
+     * resetStatistics.
+     */
+    public long getAborted() {
+        return aborted.sum();
+    }
+
+    /**
+     * Método que pone a cero las estadísticas acumuladas. La profundidad
+     * máxima vuelve a la actual.
+     */
+    public void resetStatistics() {
+        submitted.reset();
+        rejected.reset();
+        completed.reset();
+        aborted.reset();
+        peakQueued.set(queued.get());
+    }
+
+    /**
+     * Método que deja de admitir consultas. Si el ejecutor es propio, espera
+     * a que terminen las consultas admitidas y lo cierra; un ejecutor
+     * externo no se toca.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ownsExecutor) {
+            ExecutorService service = (ExecutorService) executor;
+            service.shutdown();
+            try {
+                while (!service.awaitTermination(1, TimeUnit.MINUTES)) {
+                    // se sigue esperando a las consultas admitidas.
+                }
+            } catch (InterruptedException ex) {
+                service.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
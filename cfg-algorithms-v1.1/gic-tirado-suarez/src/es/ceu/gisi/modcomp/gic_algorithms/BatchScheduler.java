@@ -0,0 +1,485 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Planificador de lotes de consultas CYK que ordena el trabajo según su coste
+ * estimado.
+ *
+ * El coste de una palabra de longitud n se estima como n³·|P|, con |P| el
+ * número de producciones binarias de la gramática compilada. Las consultas se
+ * ordenan de menor a mayor coste (primero la más corta) o por plazo (primero
+ * la que vence antes) y se agrupan en tareas:
+ *
+ * - Las palabras cortas se empaquetan en tareas de coste parecido a
+ * setPackCost, para que el reparto no cueste más que el análisis.
+ *
+ * - Las palabras de longitud setSplitLength o mayor van solas y se analizan
+ * repartiendo cada diagonal de la tabla entre los hilos del pool, que las
+ * roban cuando se quedan sin tareas propias.
+ *
+ * Las tareas se ejecutan en un ForkJoinPool: cada hilo toma la siguiente
+ * tarea del orden fijado, de modo que el orden se respeta entre hilos, y los
+ * trozos de diagonal se reparten por robo de trabajo.
+ *
+ * Con plazos, cada consulta se analiza con un CancellationToken que vence en
+ * su plazo; las que no llegan a tiempo no se terminan y se cuentan como
+ * plazos incumplidos.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class BatchScheduler {
+
+    /**
+     * Orden en el que se analizan las consultas del lote.
+     */
+    public enum Order {
+        /**
+         * Primero las de menor coste estimado.
+         */
+        SHORTEST_JOB_FIRST,
+        /**
+         * Primero las de plazo más cercano; sin plazos, el de llegada.
+         */
+        EARLIEST_DEADLINE_FIRST
+    }
+
+    private final CompiledGrammar grammar;
+    private final ForkJoinPool pool;
+    private final long productions;
+    private Order order = Order.SHORTEST_JOB_FIRST;
+    private int splitLength = 512;
+    private long packCost = 1L << 22;
+
+    /**
+     * Crea el planificador sobre el pool común de fork/join.
+     *
+     * @param grammar Gramática en Forma Normal de Chomsky ya compilada.
+     */
+    public BatchScheduler(CompiledGrammar grammar) {
+        this(grammar, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Crea el planificador sobre un pool de fork/join concreto.
+     *
+     * @param grammar Gramática en Forma Normal de Chomsky ya compilada.
+     * @param pool Pool en el que se ejecutan los lotes.
+     */
+    public BatchScheduler(CompiledGrammar grammar, ForkJoinPool pool) {
+        this.grammar = grammar;
+        this.pool = pool;
+        this.productions = Math.max(1, grammar.pairOffset(grammar.nonterminalCount()));
+    }
+
+    /**
+     * Método que fija el orden de análisis de las consultas.
+     *
+     * @param order Criterio de orden (SHORTEST_JOB_FIRST por defecto).
+     */
+    public void setOrder(Order order) {
+        this.order = order;
+    }
+
+    /**
+     * Método que fija la longitud a partir de la cual una palabra se analiza
+     * repartiendo sus diagonales entre los hilos del pool.
+     *
+     * @param length Longitud mínima (512 por defecto).
+     */
+    public void setSplitLength(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("La longitud de reparto debe ser al menos 1.");
+        }
+        this.splitLength = length;
+    }
+
+    /**
+     * Método que fija el coste estimado de las tareas en que se empaquetan
+     * las palabras cortas.
+     *
+     * @param cost Coste de cada paquete, en unidades de n³·|P| (2^22 por
+     * defecto).
+     */
+    public void setPackCost(long cost) {
+        if (cost <= 0) {
+            throw new IllegalArgumentException("El coste de cada paquete debe ser al menos 1.");
+        }
+        this.packCost = cost;
+    }
+
+    /**
+     * Método que estima el coste de analizar una palabra.
+     *
+     * @param n Longitud de la palabra.
+     *
+     * @return n³·|P|, con |P| el número de producciones binarias.
+     */
+    public long estimateCost(int n) {
+        return (long) n * n * n * productions;
+    }
+
+    /**
+     * Método que analiza un lote de palabras sin plazos.
+     *
+     * @param words Palabras a verificar, formadas sólo por terminales.
+     *
+     * @return Los resultados y las estadísticas del lote.
+     *
+     * @throws CFGAlgorithmsException Si alguna palabra contiene caracteres
+     * que no son terminales.
+     */
+    public Result run(List<? extends CharSequence> words) throws CFGAlgorithmsException {
+        return run(words, null);
+    }
+
+    /**
+     * Método que analiza un lote de palabras, cada una con un plazo contado
+     * desde el inicio del lote. Las consultas cuyo plazo vence antes de
+     * terminar se abandonan y no tienen resultado.
+     *
+     * @param words Palabras a verificar, formadas sólo por terminales.
+     * @param deadlines Plazo de cada palabra (null en la lista o en una
+     * posición para no tener plazo).
+     *
+     * @return Los resultados y las estadísticas del lote.
+     *
+     * @throws CFGAlgorithmsException Si alguna palabra contiene caracteres
+     * que no son terminales.
+     */
+    public Result run(List<? extends CharSequence> words, List<Duration> deadlines) throws CFGAlgorithmsException {
+        int count = words.size();
+        if (deadlines != null && deadlines.size() != count) {
+            throw new IllegalArgumentException("Hace falta un plazo por palabra.");
+        }
+        long[] costs = new long[count];
+        long[] limits = new long[count]; // nanosegundos desde el inicio del lote.
+        Integer[] sorted = new Integer[count];
+        long totalCost = 0;
+        for (int i = 0; i < count; i++) {
+            sorted[i] = i;
+            costs[i] = estimateCost(words.get(i).length());
+            totalCost += costs[i];
+            Duration deadline = deadlines == null ? null : deadlines.get(i);
+            limits[i] = deadline == null ? Long.MAX_VALUE : saturatedNanos(deadline);
+        }
+        Comparator<Integer> comparator = order == Order.SHORTEST_JOB_FIRST
+                ? Comparator.comparingLong(i -> costs[i])
+                : Comparator.comparingLong(i -> limits[i]);
+        Arrays.sort(sorted, comparator);
+        int[] ordered = toArray(sorted);
+
+        List<int[]> tasks = new ArrayList<>();
+        int split = 0;
+        int from = 0;
+        long packed = 0;
+        for (int k = 0; k < count; k++) {
+            if (words.get(ordered[k]).length() >= splitLength) {
+                if (from < k) {
+                    tasks.add(Arrays.copyOfRange(ordered, from, k));
+                }
+                tasks.add(new int[]{ordered[k]});
+                split++;
+                from = k + 1;
+                packed = 0;
+                continue;
+            }
+            packed += costs[ordered[k]];
+            if (packed >= packCost) {
+                tasks.add(Arrays.copyOfRange(ordered, from, k + 1));
+                from = k + 1;
+                packed = 0;
+            }
+        }
+        if (from < count) {
+            tasks.add(Arrays.copyOfRange(ordered, from, count));
+        }
+
+        Batch batch = new Batch(words, limits, tasks, split, totalCost);
+        int drainers = Math.max(1, Math.min(pool.getParallelism(), tasks.size()));
+        ForkJoinTask<?>[] workers = new ForkJoinTask<?>[drainers];
+        batch.start = System.nanoTime();
+        for (int i = 0; i < drainers; i++) {
+            workers[i] = pool.submit(batch.new Drainer());
+        }
+        for (ForkJoinTask<?> worker : workers) {
+            worker.join();
+        }
+        if (batch.failure.get() != null) {
+            throw batch.failure.get();
+        }
+        return batch.result();
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException ex) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static int[] toArray(Integer[] values) {
+        int[] array = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            array[i] = values[i];
+        }
+        return array;
+    }
+
+    /**
+     * Estado de un lote en ejecución. Cada posición de los vectores de
+     * resultados la escribe un único hilo; el join de los Drainer las hace
+     * visibles al hilo que llama a run.
+     */
+    private final class Batch {
+
+        private final List<? extends CharSequence> words;
+        private final long[] limits;
+        private final List<int[]> tasks;
+        private final int split;
+        private final long totalCost;
+        private final boolean[] results;
+        private final boolean[] completed;
+        private final long[] finished;
+        private final long[] busy;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicReference<CFGAlgorithmsException> failure = new AtomicReference<>();
+        private long start;
+
+        Batch(List<? extends CharSequence> words, long[] limits, List<int[]> tasks, int split, long totalCost) {
+            this.words = words;
+            this.limits = limits;
+            this.tasks = tasks;
+            this.split = split;
+            this.totalCost = totalCost;
+            int count = words.size();
+            results = new boolean[count];
+            completed = new boolean[count];
+            finished = new long[count];
+            busy = new long[tasks.size()];
+        }
+
+        /**
+         * Tarea que va tomando las tareas del lote en orden hasta acabarlas.
+         */
+        private final class Drainer extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                CYKWorkspace workspace = CYKWorkspace.current();
+                int t;
+                while (failure.get() == null && (t = next.getAndIncrement()) < tasks.size()) {
+                    long t0 = System.nanoTime();
+                    try {
+                        for (int index : tasks.get(t)) {
+                            analyze(index, workspace);
+                        }
+                    } catch (CFGAlgorithmsException ex) {
+                        failure.compareAndSet(null, ex);
+                    }
+                    busy[t] = System.nanoTime() - t0;
+                }
+            }
+        }
+
+        private void analyze(int index, CYKWorkspace workspace) throws CFGAlgorithmsException {
+            CharSequence word = words.get(index);
+            int n = word.length();
+            CancellationToken token = null;
+            if (limits[index] != Long.MAX_VALUE) {
+                long remaining = limits[index] - (System.nanoTime() - start);
+                if (remaining <= 0) {
+                    finished[index] = System.nanoTime() - start;
+                    return;
+                }
+                token = CancellationToken.withTimeout(Duration.ofNanos(remaining));
+            }
+            try {
+                if (n >= splitLength) {
+                    results[index] = grammar.recognizeParallel(grammar.toClasses(word), n, 2 * pool.getParallelism(), workspace, token);
+                } else {
+                    results[index] = grammar.isDerived(word, 0, n, false, ChartPolicy.DEFAULT, workspace, token);
+                }
+                completed[index] = true;
+            } catch (CYKAbortedException ex) {
+                // plazo incumplido: la consulta queda sin resultado.
+            }
+            finished[index] = System.nanoTime() - start;
+        }
+
+        Result result() {
+            long makespan = 0;
+            long latency = 0;
+            int missed = 0;
+            for (int i = 0; i < finished.length; i++) {
+                makespan = Math.max(makespan, finished[i]);
+                latency += finished[i];
+                if (!completed[i]) {
+                    missed++;
+                }
+            }
+            long work = 0;
+            for (long b : busy) {
+                work += b;
+            }
+            return new Result(results, completed, finished, makespan,
+                    finished.length == 0 ? 0 : latency / finished.length, work,
+                    tasks.size(), split, missed, totalCost);
+        }
+    }
+
+    /**
+     * Resultados y estadísticas de un lote. Los tiempos se cuentan en
+     * nanosegundos desde el inicio del lote.
+     */
+    public static final class Result {
+
+        private final boolean[] results;
+        private final boolean[] completed;
+        private final long[] finished;
+        private final long makespan;
+        private final long meanLatency;
+        private final long busy;
+        private final int tasks;
+        private final int split;
+        private final int missed;
+        private final long cost;
+
+        Result(boolean[] results, boolean[] completed, long[] finished, long makespan, long meanLatency,
+                long busy, int tasks, int split, int missed, long cost) {
+            this.results = results;
+            this.completed = completed;
+            this.finished = finished;
+            this.makespan = makespan;
+            this.meanLatency = meanLatency;
+            this.busy = busy;
+            this.tasks = tasks;
+            this.split = split;
+            this.missed = missed;
+            this.cost = cost;
+        }
+
+        /**
+         * Método que indica si una palabra del lote pertenece al lenguaje.
+         *
+         * @param index Posición de la palabra en el lote.
+         *
+         * @return TRUE si pertenece, FALSE si no pertenece o si no se
+         * terminó de analizar (ver isCompleted).
+         */
+        public boolean isDerived(int index) {
+            return results[index];
+        }
+
+        /**
+         * Método que indica si una palabra se terminó de analizar dentro de
+         * su plazo.
+         *
+         * @param index Posición de la palabra en el lote.
+         *
+         * @return TRUE si su resultado es válido.
+         */
+        public boolean isCompleted(int index) {
+            return completed[index];
+        }
+
+        /**
+         * Método que devuelve cuándo terminó una consulta.
+         *
+         * @param index Posición de la palabra en el lote.
+         *
+         * @return Nanosegundos desde el inicio del lote.
+         */
+        public long getLatencyNanos(int index) {
+            return finished[index];
+        }
+
+        /**
+         * Método que devuelve la duración del lote: el momento en que
+         * terminó la última consulta.
+         *
+         * @return Nanosegundos desde el inicio del lote.
+         */
+        public long getMakespanNanos() {
+            return makespan;
+        }
+
+        /**
+         * Método que devuelve la media de las latencias de las consultas.
+         *
+         * @return Nanosegundos.
+         */
+        public long getMeanLatencyNanos() {
+            return meanLatency;
+        }
+
+        /**
+         * Método que devuelve la suma de las duraciones de las tareas. Las
+         * palabras repartidas por diagonales cuentan una sola vez aunque las
+         * analicen varios hilos.
+         *
+         * @return Nanosegundos.
+         */
+        public long getBusyNanos() {
+            return busy;
+        }
+
+        /**
+         * Método que devuelve el número de tareas en que se dividió el lote.
+         *
+         * @return Número de tareas.
+         */
+        public int getTasks() {
+            return tasks;
+        }
+
+        /**
+         * Método que devuelve cuántas palabras se analizaron repartiendo sus
+         * diagonales entre hilos.
+         *
+         * @return Número de palabras largas.
+         */
+        public int getSplitWords() {
+            return split;
+        }
+
+        /**
+         * Método que devuelve cuántas consultas no terminaron en su plazo.
+         *
+         * @return Número de plazos incumplidos.
+         */
+        public int getMissedDeadlines() {
+            return missed;
+        }
+
+        /**
+         * Método que devuelve el coste estimado del lote.
+         *
+         * @return Suma de n³·|P| de todas las palabras.
+         */
+        public long getEstimatedCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            return "Lote: " + results.length + " consultas en " + tasks + " tareas (" + split
+                    + " repartidas), duración " + makespan / 1000 + " µs, latencia media "
+                    + meanLatency / 1000 + " µs, plazos incumplidos " + missed;
+        }
+    }
+}
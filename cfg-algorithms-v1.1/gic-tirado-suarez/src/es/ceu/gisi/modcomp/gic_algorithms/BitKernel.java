@@ -0,0 +1,78 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+/**
+ * Operaciones sobre bitsets empaquetados en long[] que forman el bucle
+ * interno de FourRussiansRecognizer: OR de una fila en otra y OR de dos filas
+ * en una tercera.
+ *
+ * Sólo ese reconocedor las usa. El CYK por celdas de CompiledGrammar (join)
+ * sigue siendo escalar: allí cada celda tiene words() longs, que con menos de
+ * 64·4 no terminales no llenan ni un vector, y la combinación no es una OR de
+ * filas sino un recorrido de los pares (C, A) de cada B presente, bit a bit.
+ * Las filas de los cuatro rusos, en cambio, tienen n/64 longs y sí se
+ * benefician de la vectorización.
+ *
+ * Hay dos implementaciones: la escalar, que opera long a long, y la
+ * vectorial (VectorBitKernel), que utiliza la Vector API incubada del JDK para
+ * procesar varios longs por instrucción. La vectorial sólo se usa si el
+ * módulo jdk.incubator.vector está cargado (--add-modules
+ * jdk.incubator.vector) y no se ha desactivado con la propiedad
+ * gic.vector=false; en cualquier otro caso se usa la escalar.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+abstract class BitKernel {
+
+    static final BitKernel SCALAR = new Scalar();
+    static final BitKernel PREFERRED = load();
+
+    private static BitKernel load() {
+        if (!Boolean.parseBoolean(System.getProperty("gic.vector", "true"))
+                || !ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return SCALAR;
+        }
+        try {
+            return (BitKernel) Class.forName("es.ceu.gisi.modcomp.gic_algorithms.VectorBitKernel")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return SCALAR;
+        }
+    }
+
+    /**
+     * dst[d..d+len) |= src[s..s+len)
+     */
+    abstract void or(long[] dst, int d, long[] src, int s, int len);
+
+    /**
+     * dst[d..d+len) = a[x..x+len) | b[y..y+len)
+     */
+    abstract void or(long[] dst, int d, long[] a, int x, long[] b, int y, int len);
+
+    /**
+     * Indica si la implementación utiliza instrucciones vectoriales.
+     */
+    abstract boolean isVectorized();
+
+    private static final class Scalar extends BitKernel {
+
+        @Override
+        void or(long[] dst, int d, long[] src, int s, int len) {
+            for (int i = 0; i < len; i++) {
+                dst[d + i] |= src[s + i];
+            }
+        }
+
+        @Override
+        void or(long[] dst, int d, long[] a, int x, long[] b, int y, int len) {
+            for (int i = 0; i < len; i++) {
+                dst[d + i] = a[x + i] | b[y + i];
+            }
+        }
+
+        @Override
+        boolean isVectorized() {
+            return false;
+        }
+    }
+}
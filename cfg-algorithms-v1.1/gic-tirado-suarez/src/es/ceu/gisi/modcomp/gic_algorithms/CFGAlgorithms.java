@@ -1,8 +1,15 @@
 package es.ceu.gisi.modcomp.gic_algorithms;
 
 import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
 import es.ceu.gisi.modcomp.gic_algorithms.interfaces.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Esta clase contiene la implementación de las interfaces que establecen los
@@ -18,6 +25,26 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
     private Map<Character, List<String>> productions = new TreeMap();
     private Map<String, List<Character>> inverse = new TreeMap();
     private Character startsymbol;
+    private Map<Character, String> rendered = new HashMap<>(); // caché de getProductionsToString por no terminal.
+
+    // Copia en escritura: tras snapshot() los contenedores y las listas se
+    // comparten con la versión y sólo se copian cuando se van a modificar.
+    private boolean sharedSymbols = false;
+    private boolean sharedProductions = false;
+    private boolean sharedInverse = false;
+    private long generation = GENERATIONS.incrementAndGet(); // las listas de la generación actual son propias y pueden modificarse sin copiarlas.
+
+    private CompiledGrammar compiled; // gramática compilada para CYK, se descarta con cualquier cambio.
+    private boolean topDownFiltering = false;
+    private ChartPolicy chartPolicy = ChartPolicy.DEFAULT;
+    private MembershipCache resultCache;
+    private ResultStore resultStore;
+    private TransformationReport transformationReport; // resumen del último transformToWellFormedGrammar.
+    private Map<Character, List<String>> changeLog; // producciones previas de los no terminales modificados, mientras se registran.
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+    private static final AtomicLong GENERATIONS = new AtomicLong(); // únicas entre gramáticas: restore() puede recibir versiones de otra.
+    private long version = VERSIONS.incrementAndGet(); // cambia con cada modificación; único entre gramáticas.
 
     /**
      * Método que añade los elementos no terminales de la gramática.
@@ -31,7 +58,7 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
         if (nonterminals.contains(nonterminal)) { // este condicional, comprueba que la letra no esté repetida en la gramática, si esto sucede lanza una extepción.
             throw new CFGAlgorithmsException("Ya hay un no terminal igual.");
         } else if (Character.isAlphabetic(nonterminal) && Character.isUpperCase(nonterminal)) { // este condicional, comprueba que la letra es mayúscula y se añade a la gramática.
-            nonterminals.add(nonterminal);
+            nonterminalsForUpdate().add(nonterminal);
         } else { // este else, hace que se lance una extepción si la letra no es mayúscula.
             throw new CFGAlgorithmsException("La letra no es mayúscula.");
         }
@@ -62,10 +89,12 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
 
         }
         if (productions.containsKey(nonterminal)) {
-            productions.remove(nonterminal);
+            logChange(nonterminal);
+            productionsForUpdate().remove(nonterminal);
+            productionsChanged(nonterminal);
         }
         if (nonterminals.contains(nonterminal)) {
-            nonterminals.remove(nonterminal);
+            nonterminalsForUpdate().remove(nonterminal);
         } else {
             throw new CFGAlgorithmsException("El elemento no pertenece a la gramática.");
         }
@@ -93,7 +122,7 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
         if (terminals.contains(terminal)) { // este condicional, comprueba que la letra no esté repetida en la gramática, si esto sucede lanza una extepción.
             throw new CFGAlgorithmsException("Ya hay un terminal igual.");
         } else if (Character.isAlphabetic(terminal) && Character.isLowerCase(terminal)) { // este condicional, comprueba que la letra sea minúscula y se añade a la gramática.
-            terminals.add(terminal);
+            terminalsForUpdate().add(terminal);
         } else { // este else, hace que se lance una extepción si la letra no es minúscula.
             throw new CFGAlgorithmsException("La letra no es minúscula.");
         }
@@ -123,7 +152,7 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
 
         }
         if (terminals.contains(terminal)) { // el condicional comprueba si el terminal está en el conjunto y lo elimina de él.
-            terminals.remove(terminal);
+            terminalsForUpdate().remove(terminal);
         } else { // este else, hace que se lance una extepción si no está contenido en los terminales.
             throw new CFGAlgorithmsException("El elemento no pertenece a la gramática.");
         }
@@ -152,6 +181,7 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
     public void setStartSymbol(char nonterminal) throws CFGAlgorithmsException {
         if (this.nonterminals.contains(nonterminal)) { // este condicional, comprueba que el no terminal está comprendido en el conjunto.
             this.startsymbol = nonterminal; // fijo que este no terminal es el axioma.
+            grammarModified();
         } else { // este else hace que se lance una extepción si no forma parte del conjunto de los no terminales.
             throw new CFGAlgorithmsException("El elemento insertado no forma parate de los elementos no terminales.");
         }
@@ -198,13 +228,14 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
             }
 
         }
-        productions.putIfAbsent(nonterminal, new ArrayList<>()); // el putIfAbsent comprueba que no esté repetido y lo añade.
-        if (productions.get(nonterminal).contains(production)) {
+        List<String> lista = productions.get(nonterminal);
+        int position = lista == null ? -1 : Collections.binarySearch(lista, production); // la lista se mantiene ordenada, así que basta una búsqueda binaria.
+        if (position >= 0) {
             throw new CFGAlgorithmsException();
         }
-        productions.get(nonterminal).add(production);
-        inverse.putIfAbsent(production, new ArrayList<>());
-        inverse.get(production).add(nonterminal);
+        productionsForUpdate(nonterminal).add(-position - 1, production);
+        productionsChanged(nonterminal);
+        inverseForUpdate(production).add(nonterminal);
     }
 
     /**
@@ -221,7 +252,8 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
     public boolean removeProduction(char nonterminal, String production) throws CFGAlgorithmsException {
         for (int i = 0; i < productions.get(nonterminal).size(); i++) { //bucle que recorre la lista de producciones del no terminal introducido
             if (productions.get(nonterminal).get(i).equals(production)) { //consigue la producción de la posicion por la que va en el bucle que recorre la lista de producciones y comprueba si la producción por la que va en el bucle es igual a la producción que buscamos
-                productions.get(nonterminal).remove(production); //elimina la produccion del no terminal introducido
+                productionsForUpdate(nonterminal).remove(production); //elimina la produccion del no terminal introducido
+                productionsChanged(nonterminal);
                 //inverse.get(production).remove(nonterminal);
                 return true; //devuelve true
             }
@@ -238,7 +270,10 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
      * producciones
      *
      * @return Devuelve una lista de String donde cada String es la parte
-     * derecha de cada producción
+     * derecha de cada producción. Es la lista interna de la gramática, no una
+     * copia: no debe modificarse, porque puede estar compartida con versiones
+     * tomadas con snapshot(). Mientras no cambien las producciones de ese no
+     * terminal se devuelve siempre la misma lista.
      */
     public List<String> getProductions(char nonterminal) {
         return productions.get(nonterminal); // devuelve la lista de producciones de ese no terminal.
@@ -259,21 +294,60 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
      * POR ORDEN ALFABÉTICO.
      */
     public String getProductionsToString(char nonterminal) {
-        String symbol = "::=";
+        String cached = rendered.get(nonterminal); // las listas ya están ordenadas, sólo se vuelve a generar si han cambiado.
+        if (cached != null) {
+            return cached;
+        }
+        if (productions.get(nonterminal) == null) { // este condicional devuelve "", si es null.
+            return "";
+        }
+        StringBuilder symbol = new StringBuilder();
+        try {
+            writeProductions(nonterminal, symbol);
+        } catch (IOException e) { // un StringBuilder nunca lanza IOException.
+            throw new UncheckedIOException(e);
+        }
+        cached = symbol.toString();
+        rendered.put(nonterminal, cached);
+        return cached;
+    }
+
+    /**
+     * Escribe las producciones de un no terminal sin pasar por la caché.
+     */
+    private void writeProductions(char nonterminal, Appendable out) throws IOException {
         List<String> lista = productions.get(nonterminal); // señalo la lista del map productions.
-        if (lista != null) { // este condicional devuelve " ", si es null.
-            Collections.sort(lista); // ordeno lista.
-            for (int i = 0; i < lista.size(); i++) { // el bucle, da cada elemento de la lista y los separa con una barra.
-                symbol = symbol + lista.get(i);
-                if (i < lista.size() - 1) {
-                    symbol = symbol + "|";
-                }
+        if (lista == null) {
+            return;
+        }
+        out.append(nonterminal).append("::=");
+        for (int i = 0; i < lista.size(); i++) { // el bucle, da cada elemento de la lista y los separa con una barra.
+            if (i > 0) {
+                out.append('|');
             }
-        } else {
-            return "";
+            out.append(lista.get(i));
         }
-        return nonterminal + symbol;
+    }
 
+    /**
+     * Escribe en el destino indicado lo mismo que devuelve
+     * getProductionsToString(nonterminal), sin construir un String
+     * intermedio. Si ya está en la caché se copia de ella; si no, se escribe
+     * directamente en el destino y la caché no se rellena.
+     *
+     * @param nonterminal Elemento no terminal del que se buscan las
+     * producciones
+     * @param out Destino en el que se escriben las producciones.
+     *
+     * @throws IOException Si el destino no admite la escritura.
+     */
+    public void getProductionsToString(char nonterminal, Appendable out) throws IOException {
+        String cached = rendered.get(nonterminal);
+        if (cached != null) {
+            out.append(cached);
+        } else {
+            writeProductions(nonterminal, out);
+        }
     }
 
     /**
@@ -284,16 +358,46 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
      * los elementos no terminales ORDENADOS POR ORDEN ALFABÉTICO.
      */
     public String getGrammar() {
-        String grammar = ""; // creo variable vacía.
-        grammar = getTerminals().toString() + ","; // guardo los terminales en la variable.
-        grammar += getNonTerminals().toString() + ","; // guardo los no terminales en la variable.
+        StringBuilder grammar = new StringBuilder(); // creo el acumulador vacío.
+        try {
+            writeGrammar(grammar, true);
+        } catch (IOException e) { // un StringBuilder nunca lanza IOException.
+            throw new UncheckedIOException(e);
+        }
+        return grammar.toString();
+    }
+
+    /**
+     * Escribe en el destino indicado lo mismo que devuelve getGrammar(), sin
+     * construir un String intermedio. Permite volcar gramáticas grandes
+     * directamente a un Writer: las producciones que no están en la caché se
+     * escriben directamente en el destino, sin rellenarla.
+     *
+     * @param out Destino en el que se escribe la gramática.
+     *
+     * @throws IOException Si el destino no admite la escritura.
+     */
+    public void getGrammar(Appendable out) throws IOException {
+        writeGrammar(out, false);
+    }
+
+    /**
+     * Escribe la gramática completa. Con fillCache se generan y guardan en la
+     * caché las producciones que no estaban; sin él se escriben directamente.
+     */
+    private void writeGrammar(Appendable out, boolean fillCache) throws IOException {
+        out.append(getTerminals().toString()).append(','); // escribo los terminales.
+        out.append(getNonTerminals().toString()).append(','); // escribo los no terminales.
         for (Character noterminal : nonterminals) { // bucle para que dé los noterminales del conjunto.
-            grammar += getProductionsToString(noterminal); // guardo las producciones en la variable.
+            if (fillCache) {
+                out.append(getProductionsToString(noterminal)); // escribo las producciones (cacheadas).
+            } else {
+                getProductionsToString(noterminal, out);
+            }
         }
         if (startsymbol != null) { // condicional que comprueba que el axioma no sea nulo.
-            grammar += "," + startsymbol; // guardo el axioma en la variable.
+            out.append(',').append(startsymbol); // escribo el axioma.
         }
-        return grammar;
     }
 
     /**
@@ -302,10 +406,15 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
      * dejando el algoritmo listo para volver a insertar una gramática nueva.
      */
     public void deleteGrammar() {
-        nonterminals.clear(); // borra todo el contenido de noterminales.
-        terminals.clear(); // borra todo el contenido de terminales.
-        productions.clear(); // borra todo el contenido de producciones.
+        nonterminalsForUpdate().clear(); // borra todo el contenido de noterminales.
+        terminalsForUpdate().clear(); // borra todo el contenido de terminales.
+        for (char nonterminal : productions.keySet()) {
+            logChange(nonterminal);
+        }
+        productionsForUpdate().clear(); // borra todo el contenido de producciones.
+        rendered.clear(); // borra las producciones cacheadas.
         this.startsymbol = null; // borra el valor del axioma y le da null.
+        grammarModified();
 
     }
 
@@ -343,16 +452,31 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
      * por cada producción), con todas las reglas innecesarias eliminadas.
      */
     public List<String> removeUselessProductions() {
+        return removeUselessProductions(productions.keySet());
+    }
+
+    /**
+     * Igual que removeUselessProductions(), pero sólo examina los no
+     * terminales indicados. Lo utiliza WellFormedPipeline para no volver a
+     * recorrer los que no han cambiado.
+     */
+    List<String> removeUselessProductions(Collection<Character> scope) {
         List<String> productionstoremove = new ArrayList<>(); // lista de eliminados.
         List<String> formattedlist = new ArrayList<>(); // lista a devolver.
-        for (Character nonterminal : productions.keySet()) { // bucle que me da los noterminales de productions.
+        for (Character nonterminal : scope) { // bucle que me da los noterminales a examinar.
+            if (productions.get(nonterminal) == null) {
+                continue;
+            }
             for (String production : productions.get(nonterminal)) { // bucle que me da las producciones de productions.
                 if (production.equals(nonterminal.toString())) {
                     productionstoremove.add(production); // añado producció a eliminar.
                     formattedlist.add(nonterminal + "::=" + production); // añado el terminal y no terminal.
                 }
             }
-            productions.get(nonterminal).removeAll(productionstoremove); // elimino de la lista del mapa los que coincidan de la lista productionstoremove.
+            if (!Collections.disjoint(productions.get(nonterminal), productionstoremove)) { // elimino de la lista del mapa los que coincidan de la lista productionstoremove.
+                productionsForUpdate(nonterminal).removeAll(productionstoremove);
+                productionsChanged(nonterminal);
+            }
         }
 
         return formattedlist; // devolver formattedlist.
@@ -397,11 +521,12 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
                     nonterminalstodeleted.add(nonterminal);
                 }
             }
-            nonterminals.clear();
-            nonterminals.addAll(nuevo);
+            nonterminalsForUpdate().clear();
+            nonterminalsForUpdate().addAll(nuevo);
             for (char nonterminal : nonterminalstodeleted) {
-                productions.remove(nonterminal);
-
+                logChange(nonterminal);
+                productionsForUpdate().remove(nonterminal);
+                productionsChanged(nonterminal);
             }
         }
         for (Character nonterminal : productions.keySet()) {
@@ -411,7 +536,11 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
                     productionsAux.add(production);
                 }
             }
-            productions.replace(nonterminal, productionsAux);
+            if (!productionsAux.equals(productions.get(nonterminal))) {
+                logChange(nonterminal);
+                productionsForUpdate().replace(nonterminal, own(productionsAux));
+                productionsChanged(nonterminal);
+            }
         }
         // Algoritmo 2
         Set<Character> viejont = new HashSet<>();
@@ -443,16 +572,17 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
                     nonterminalstodeleted.add(nonterminal);
                 }
             }
-            nonterminals.clear();
-            nonterminals.addAll(nuevont);
+            nonterminalsForUpdate().clear();
+            nonterminalsForUpdate().addAll(nuevont);
             for (char nonterminal : nonterminalstodeleted) {
-                productions.remove(nonterminal);
-
+                logChange(nonterminal);
+                productionsForUpdate().remove(nonterminal);
+                productionsChanged(nonterminal);
             }
         }
         if (!nuevot.containsAll(terminals)) {
-            terminals.clear();
-            terminals.addAll(nuevot);
+            terminalsForUpdate().clear();
+            terminalsForUpdate().addAll(nuevot);
         }
         for (Character nonterminal : productions.keySet()) {
             List<String> productionsAux = new ArrayList();
@@ -461,7 +591,11 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
                     productionsAux.add(production);
                 }
             }
-            productions.replace(nonterminal, productionsAux);
+            if (!productionsAux.equals(productions.get(nonterminal))) {
+                logChange(nonterminal);
+                productionsForUpdate().replace(nonterminal, own(productionsAux));
+                productionsChanged(nonterminal);
+            }
         }
 
         List<Character> result = new ArrayList();
@@ -535,8 +669,24 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
             nuevasProducciones.put(startsymbol, produccionAxioma);
         }
 
-        // Actualizar las producciones
-        productions = nuevasProducciones;
+        // Actualizar las producciones (ordenadas, como las deja addProduction),
+        // conservando las listas que no han cambiado para que sigan compartidas.
+        Map<Character, List<String>> actualizadas = new TreeMap<>();
+        for (Map.Entry<Character, List<String>> entry : nuevasProducciones.entrySet()) {
+            List<String> lista = entry.getValue();
+            Collections.sort(lista);
+            List<String> anterior = productions.get(entry.getKey());
+            if (lista.equals(anterior)) {
+                actualizadas.put(entry.getKey(), anterior);
+            } else {
+                logChange(entry.getKey());
+                actualizadas.put(entry.getKey(), own(lista));
+                productionsChanged(entry.getKey());
+            }
+        }
+        productions = actualizadas;
+        sharedProductions = false;
+        grammarModified();
 
         // Devolver los no terminales que tenían producciones lambda
         resultado.addAll(anulable);
@@ -596,14 +746,122 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
      * Método que transforma la gramática almacenada en una gramática bien
      * formada: - 1. Elimina las reglas innecesarias. - 2. Elimina las reglas no
      * generativas. - 3. Elimina las reglas unitarias. - 4. Elimina los símbolo
-     * inútiles.
+     * inútiles. Las etapas se repiten (sólo
+     * sobre los no terminales que han cambiado) hasta que ninguna modifica la
+     * gramática; véase WellFormedPipeline. El resumen de la ejecución queda
+     * disponible en getTransformationReport().
      */
     public void transformToWellFormedGrammar() {
-        removeUselessProductions();// innecesarias
-        removeLambdaProductions();// no generativa
-        removeUnitProductions();// unitarias
-        removeUselessSymbols();// inutiles
+        transformationReport = new WellFormedPipeline(this).run(); // innecesarias, no generativas, unitarias e inútiles hasta el punto fijo.
+    }
 
+    /**
+     * Método que devuelve el resumen de la última llamada a
+     * transformToWellFormedGrammar(): rondas, ejecuciones de cada etapa,
+     * producciones eliminadas y añadidas, y si se alcanzó el punto fijo.
+     *
+     * @return El resumen, o null si todavía no se ha transformado la
+     * gramática.
+     */
+    public TransformationReport getTransformationReport() {
+        return transformationReport;
+    }
+
+    /**
+     * Método que fusiona los no terminales equivalentes: aquellos con el mismo
+     * conjunto de producciones (considerando iguales las apariciones de cada
+     * no terminal en sus propias producciones, como en A::=aA y B::=aB). Los
+     * no terminales se agrupan por la forma canónica de sus partes derechas,
+     * se sustituye cada uno por el representante de su grupo (el axioma si
+     * pertenece a él) y se repite hasta que no queden grupos, ya que cada
+     * fusión puede igualar otros conjuntos. Es especialmente útil tras pasar a
+     * Forma Normal de Chomsky, que crea muchos no terminales auxiliares
+     * idénticos, y reduce el trabajo de cada celda de CYK.
+     *
+     * @return Devuelve una lista con los no terminales eliminados por haberse
+     * fusionado con otro.
+     */
+    public List<Character> mergeEquivalentNonTerminals() {
+        List<Character> merged = new ArrayList<>();
+        boolean cambio = true;
+        while (cambio) {
+            List<Character> orden = new ArrayList<>(); // el axioma va primero para que sea siempre el representante.
+            if (startsymbol != null) {
+                orden.add(startsymbol);
+            }
+            for (Character nonterminal : productions.keySet()) {
+                if (!nonterminal.equals(startsymbol)) {
+                    orden.add(nonterminal);
+                }
+            }
+
+            Map<String, Character> representantes = new HashMap<>();
+            Map<Character, Character> sustituciones = new HashMap<>();
+            for (Character nonterminal : orden) {
+                List<String> lista = productions.get(nonterminal);
+                if (lista == null || lista.isEmpty()) { // sin producciones no hay nada que comparar.
+                    continue;
+                }
+                Character representante = representantes.putIfAbsent(canonicalProductions(nonterminal, lista), nonterminal);
+                if (representante != null) {
+                    sustituciones.put(nonterminal, representante);
+                }
+            }
+
+            cambio = !sustituciones.isEmpty();
+            if (cambio) {
+                replaceNonTerminals(sustituciones);
+                merged.addAll(sustituciones.keySet());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Forma canónica de las producciones de un no terminal: las partes
+     * derechas ordenadas, con las apariciones del propio no terminal
+     * sustituidas por un marcador.
+     */
+    private static String canonicalProductions(char nonterminal, List<String> lista) {
+        List<String> partes = new ArrayList<>(lista.size());
+        for (String production : lista) {
+            partes.add(production.replace(nonterminal, '\u0000'));
+        }
+        Collections.sort(partes);
+        return String.join("|", partes);
+    }
+
+    /**
+     * Elimina los no terminales indicados y sustituye todas sus apariciones en
+     * las producciones por su representante.
+     */
+    private void replaceNonTerminals(Map<Character, Character> sustituciones) {
+        for (char nonterminal : sustituciones.keySet()) {
+            logChange(nonterminal);
+            productionsForUpdate().remove(nonterminal);
+            nonterminalsForUpdate().remove(nonterminal);
+            productionsChanged(nonterminal);
+        }
+        for (Character nonterminal : new ArrayList<>(productions.keySet())) {
+            List<String> lista = productions.get(nonterminal);
+            TreeSet<String> nuevas = new TreeSet<>();
+            boolean distinta = false;
+            for (String production : lista) {
+                StringBuilder sb = new StringBuilder(production.length());
+                for (int i = 0; i < production.length(); i++) {
+                    char symbol = production.charAt(i);
+                    sb.append(sustituciones.getOrDefault(symbol, symbol));
+                }
+                String nueva = sb.toString();
+                distinta |= !nueva.equals(production);
+                nuevas.add(nueva);
+            }
+            if (distinta) {
+                logChange(nonterminal);
+                productionsForUpdate().put(nonterminal, own(new ArrayList<>(nuevas)));
+                productionsChanged(nonterminal);
+            }
+        }
     }
 
     /**
@@ -701,65 +959,328 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
      * introducida, si la gramática es vacía o si el autómata carece de axioma.
      */
     public boolean isDerivedUsignCYK(String word) throws CFGAlgorithmsException {
-        if (!isCNF()) {
-            throw new CFGAlgorithmsException("La gramática no está en Forma Normal de Chomsky.");
-        }
+        return isDerivedUsignCYK(word, 0, word.length());
+    }
 
-        if (word.isEmpty()) {
+    /**
+     * Método que indica, con el algoritmo CYK, si un fragmento de un texto
+     * pertenece al lenguaje de la gramática. La validación y el análisis leen
+     * directamente del texto, sin copiar el fragmento a un String.
+     *
+     * @param text Texto que contiene la palabra.
+     * @param offset Posición del primer carácter de la palabra.
+     * @param length Longitud de la palabra.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * isDerivedUsignCYK(String).
+     *
+     * @throws IndexOutOfBoundsException Si el fragmento se sale del texto.
+     */
+    public boolean isDerivedUsignCYK(CharSequence text, int offset, int length) throws CFGAlgorithmsException {
+        Objects.checkFromIndexSize(offset, length, text.length());
+        return recognize(text, null, offset, length, null);
+    }
+
+    /**
+     * Método que indica, con el algoritmo CYK, si una palabra pertenece al
+     * lenguaje de la gramática, deteniendo el análisis si se cancela el
+     * testigo desde otro hilo o vence su plazo. El testigo se consulta una
+     * vez por cada longitud de fragmento, así que una palabra larga no puede
+     * ocupar el hilo mucho más allá del plazo.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param token Testigo de cancelación.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CYKAbortedException Si el análisis se ha detenido antes de
+     * terminar.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * isDerivedUsignCYK(String).
+     */
+    public boolean isDerivedUsignCYK(String word, CancellationToken token) throws CFGAlgorithmsException {
+        return recognize(word, null, 0, word.length(), Objects.requireNonNull(token));
+    }
+
+    /**
+     * Método que indica, con el algoritmo CYK, si una palabra pertenece al
+     * lenguaje de la gramática, con un tiempo máximo de análisis.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param timeout Tiempo máximo de análisis.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CYKAbortedException Si se agota el tiempo antes de terminar.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * isDerivedUsignCYK(String).
+     */
+    public boolean isDerivedUsignCYK(String word, Duration timeout) throws CFGAlgorithmsException {
+        return isDerivedUsignCYK(word, CancellationToken.withTimeout(timeout));
+    }
+
+    /**
+     * Camino común de las consultas CYK de una palabra. La palabra llega en
+     * text o en chars (el otro es null) para que un vector se analice sin
+     * envolverlo; sólo se envuelve para compilar o para usar la caché.
+     */
+    private boolean recognize(CharSequence text, char[] chars, int offset, int length, CancellationToken token) throws CFGAlgorithmsException {
+        CompiledGrammar grammar = compiled;
+        if (grammar == null) {
+            grammar = compiledForCYK(text != null ? text : CharBuffer.wrap(chars), offset, length);
+        }
+        if (length == 0) {
             return false;
         }
+        if (resultCache != null || resultStore != null) {
+            return isDerivedCached(grammar, text != null ? text : CharBuffer.wrap(chars), offset, length, token);
+        }
+        // rechaza sin tabla las longitudes que el axioma no puede derivar.
+        return text != null
+                ? grammar.isDerived(text, offset, length, topDownFiltering, chartPolicy, CYKWorkspace.current(), token)
+                : grammar.isDerived(chars, offset, length, topDownFiltering, chartPolicy, CYKWorkspace.current(), token);
+    }
+
+    /**
+     * Método que indica, con el algoritmo CYK, si un fragmento de un vector
+     * de caracteres pertenece al lenguaje de la gramática, sin copiarlo.
+     *
+     * @param text Vector que contiene la palabra.
+     * @param offset Posición del primer carácter de la palabra.
+     * @param length Longitud de la palabra.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * isDerivedUsignCYK(String).
+     *
+     * @throws IndexOutOfBoundsException Si el fragmento se sale del vector.
+     */
+    public boolean isDerivedUsignCYK(char[] text, int offset, int length) throws CFGAlgorithmsException {
+        Objects.checkFromIndexSize(offset, length, text.length);
+        return recognize(null, text, offset, length, null);
+    }
 
-        for (int i = 0; i < word.length(); i++) {
-            char letter = word.charAt(i);
-            if (!terminals.contains(letter)) {
-                throw new CFGAlgorithmsException("La palabra contiene caracteres que no están en el conjunto de terminales.");
+    /**
+     * Consulta la caché y el almacén de resultados (en ese orden) antes de
+     * ejecutar CYK, y guarda en ambos los resultados nuevos. Un análisis
+     * detenido por el testigo no guarda nada.
+     */
+    private boolean isDerivedCached(CompiledGrammar grammar, CharSequence text, int offset, int length, CancellationToken token) throws CFGAlgorithmsException {
+        MembershipCache cache = resultCache;
+        ResultStore store = resultStore;
+        if (cache != null) {
+            int cached = cache.get(version, text, offset, length);
+            if (cached != MembershipCache.ABSENT) {
+                return cached == 1;
+            }
+        }
+        boolean derived;
+        int stored = store == null ? ResultStore.ABSENT : store.getOrAbsent(grammar.getFingerprint(), text, offset, length);
+        if (stored != ResultStore.ABSENT) {
+            derived = stored == 1;
+        } else {
+            derived = grammar.isDerived(text, offset, length, topDownFiltering, chartPolicy, CYKWorkspace.current(), token);
+            if (store != null) {
+                store.putOrSkip(grammar.getFingerprint(), text, offset, length, derived);
             }
         }
+        if (cache != null) {
+            cache.put(version, text, offset, length, derived);
+        }
+        return derived;
+    }
+
+    /**
+     * Método que indica, con el algoritmo CYK, si los caracteres restantes de
+     * un CharBuffer (de su posición a su límite) forman una palabra del
+     * lenguaje. No modifica la posición del buffer ni copia su contenido.
+     *
+     * @param buffer Buffer con la palabra.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * isDerivedUsignCYK(String).
+     */
+    public boolean isDerivedUsignCYK(CharBuffer buffer) throws CFGAlgorithmsException {
+        return isDerivedUsignCYK(buffer, 0, buffer.remaining());
+    }
+
+    /**
+     * Método que indica qué palabras de un lote pertenecen al lenguaje
+     * generado por la gramática. El lote se analiza con
+     * PrefixSharingRecognizer, que analiza una sola vez los prefijos comunes
+     * a varias palabras: con lotes de palabras parecidas es más rápido que
+     * llamar a isDerivedUsignCYK(String) con cada una. No se consultan la
+     * caché ni el almacén de resultados.
+     *
+     * @param words Las palabras a verificar, formadas sólo por terminales.
+     *
+     * @return Un vector con el resultado de cada palabra, en el orden del
+     * lote.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * isDerivedUsignCYK(String).
+     */
+    public boolean[] isDerivedUsignCYK(List<String> words) throws CFGAlgorithmsException {
+        CompiledGrammar grammar = compiledForCYK("", 0, 0);
+        for (int i = 0; grammar == null && i < words.size(); i++) {
+            grammar = compiledForCYK(words.get(i), 0, words.get(i).length());
+        }
+        if (grammar == null) {
+            return new boolean[words.size()];
+        }
+        boolean[] results = new PrefixSharingRecognizer(grammar).isDerived(words);
+        for (int i = 0; i < results.length; i++) {
+            results[i] &= !words.get(i).isEmpty();
+        }
+        return results;
+    }
 
-        if (productions.isEmpty() || startsymbol == null) {
-            throw new CFGAlgorithmsException("La gramática está vacía o no tiene axioma.");
+    /**
+     * Método que analiza una palabra con el algoritmo CYK y devuelve su tabla
+     * completa en lugar de sólo si pertenece al lenguaje. La tabla se puede
+     * guardar y consultar después (qué no terminales derivan cada fragmento)
+     * sin volver a analizar la palabra.
+     *
+     * La gramática deberá estar en FNC.
+     *
+     * @param word La palabra a analizar, no vacía y formada sólo por
+     * terminales.
+     *
+     * @return La tabla CYK de la palabra.
+     *
+     * @throws CFGAlgorithmsException Si la palabra es vacía o por los mismos
+     * motivos que isDerivedUsignCYK(String).
+     */
+    public ParseChart parseUsignCYK(String word) throws CFGAlgorithmsException {
+        CompiledGrammar grammar = compiledForCYK(word, 0, word.length());
+        if (grammar == null || word.isEmpty()) {
+            throw new CFGAlgorithmsException("La palabra vacía no tiene tabla CYK.");
         }
+        return grammar.parse(word);
+    }
 
-        int n = word.length();
-        int r = nonterminals.size();
+    /**
+     * Devuelve la gramática compilada para CYK. Sólo se comprueba y compila
+     * la gramática la primera vez tras un cambio; en ese caso se valida
+     * también la palabra, y si es vacía se devuelve null sin compilar.
+     */
+    private CompiledGrammar compiledForCYK(CharSequence text, int offset, int length) throws CFGAlgorithmsException {
+        CompiledGrammar grammar = compiled;
+        if (grammar == null) {
+            if (!isCNF()) {
+                throw new CFGAlgorithmsException("La gramática no está en Forma Normal de Chomsky.");
+            }
 
-        Set<Character>[][] table = new HashSet[n][n];
-        for (int i = 0; i < n; i++) {
-            table[i][0] = new HashSet<>();
-            char terminal = word.charAt(i);
-            for (Map.Entry<Character, List<String>> entry : productions.entrySet()) {
-                char nonterminal = entry.getKey();
-                for (String production : entry.getValue()) {
-                    if (production.length() == 1 && production.charAt(0) == terminal) {
-                        table[i][0].add(nonterminal);
-                    }
-                }
+            if (length == 0) {
+                return null;
             }
-        }
 
-        for (int l = 2; l <= n; l++) {
-            for (int s = 0; s <= n - l; s++) {
-                table[s][l - 1] = new HashSet<>();
-                for (int p = 1; p < l; p++) {
-                    Set<Character> bSet = table[s][p - 1];
-                    Set<Character> cSet = table[s + p][l - p - 1];
-                    for (char b : bSet) {
-                        for (char c : cSet) {
-                            for (Map.Entry<Character, List<String>> entry : productions.entrySet()) {
-                                char a = entry.getKey();
-                                for (String production : entry.getValue()) {
-                                    if (production.length() == 2 && production.charAt(0) == b && production.charAt(1) == c) {
-                                        table[s][l - 1].add(a);
-                                    }
-                                }
-                            }
-                        }
-                    }
+            for (int i = 0; i < length; i++) {
+                char letter = text.charAt(offset + i);
+                if (!terminals.contains(letter)) {
+                    throw new CFGAlgorithmsException("La palabra contiene caracteres que no están en el conjunto de terminales.");
                 }
             }
+
+            if (productions.isEmpty() || startsymbol == null) {
+                throw new CFGAlgorithmsException("La gramática está vacía o no tiene axioma.");
+            }
+            grammar = CompiledGrammar.compile(this);
+            compiled = grammar;
         }
+        return grammar;
+    }
+
+    /**
+     * Método que activa o desactiva el filtrado descendente de CYK: cada
+     * celda conserva sólo los no terminales que pueden aparecer en su
+     * posición en alguna derivación desde el axioma. No cambia el resultado
+     * de isDerivedUsignCYK, sólo el trabajo necesario para obtenerlo.
+     *
+     * @param topDownFiltering TRUE para activarlo (desactivado por defecto).
+     */
+    public void setTopDownFiltering(boolean topDownFiltering) {
+        this.topDownFiltering = topDownFiltering;
+    }
+
+    /**
+     * Método que fija la longitud de palabra a partir de la cual la tabla CYK
+     * se reserva fuera del heap, en memoria directa que se libera en cuanto
+     * termina el análisis en lugar de esperar al recolector de basura.
+     *
+     * @param length Longitud mínima de las palabras que usan una tabla fuera
+     * del heap (4096 por defecto).
+     */
+    public void setOffHeapChartThreshold(int length) {
+        chartPolicy = chartPolicy.withOffHeapLength(length);
+    }
+
+    /**
+     * Método que permite guardar las tablas CYK muy grandes en un fichero
+     * temporal proyectado en memoria, para palabras cuya tabla no cabe en
+     * RAM. El fichero se borra al terminar cada análisis.
+     *
+     * @param directory Directorio de los ficheros temporales, o null para no
+     * usar nunca ficheros (por defecto).
+     * @param bytes Tamaño a partir del cual la tabla se guarda en un fichero.
+     */
+    public void setMappedChart(Path directory, long bytes) {
+        chartPolicy = chartPolicy.withMapped(directory, bytes);
+    }
 
-        return table[0][n - 1].contains(startsymbol);
+    /**
+     * Método que activa la tabla CYK dispersa, que sólo guarda las celdas no
+     * vacías. Conviene con palabras largas cuya tabla está casi vacía.
+     *
+     * @param sparse TRUE para usar la tabla dispersa (desactivada por
+     * defecto).
+     */
+    public void setSparseChart(boolean sparse) {
+        chartPolicy = chartPolicy.withSparse(sparse);
+    }
+
+    /**
+     * Método que asocia una caché de resultados a isDerivedUsignCYK. Los
+     * resultados se guardan con la versión de la gramática, así que tras
+     * cualquier modificación no se reutilizan. Una misma caché puede
+     * compartirse entre varias gramáticas.
+     *
+     * @param cache La caché, o null para no usar ninguna (por defecto).
+     */
+    public void setResultCache(MembershipCache cache) {
+        this.resultCache = cache;
+    }
+
+    /**
+     * Método que asocia un almacén persistente de resultados a
+     * isDerivedUsignCYK, que se consulta antes de analizar (después de la
+     * caché, si la hay). Los resultados se guardan con la huella de la
+     * gramática compilada, de modo que sirven entre ejecuciones mientras la
+     * gramática no cambie; con otra gramática el almacén se vacía.
+     *
+     * @param store El almacén abierto, o null para no usar ninguno (por
+     * defecto). No se cierra al cambiarlo.
+     */
+    public void setResultStore(ResultStore store) {
+        this.resultStore = store;
+    }
+
+    /**
+     * Método que devuelve la versión de la gramática: un número que cambia
+     * con cada modificación (también con restore) y que no se repite entre
+     * gramáticas distintas.
+     *
+     * @return La versión actual.
+     */
+    public long getVersion() {
+        return version;
     }
 
     /**
@@ -783,4 +1304,194 @@ public class CFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface
         throw new UnsupportedOperationException("Not supported yet."); // Generated from nbfs://nbhost/SystemFileSystem/Templates/Classes/Code/GeneratedMethodBody
     }
 
+    /**
+     * Método que congela el estado actual de la gramática en una versión
+     * inmutable. Es O(1): la versión comparte los conjuntos, el mapa y las
+     * listas de producciones con la gramática, y éstos sólo se copian (uno a
+     * uno) cuando la gramática los modifica después.
+     *
+     * @return La versión de la gramática en este instante.
+     */
+    public GrammarVersion snapshot() {
+        sharedSymbols = true;
+        sharedProductions = true;
+        sharedInverse = true;
+        generation = GENERATIONS.incrementAndGet();
+        return new GrammarVersion(nonterminals, terminals, productions, inverse, startsymbol);
+    }
+
+    /**
+     * Método que devuelve la gramática al estado de una versión tomada con
+     * snapshot(). Es O(1) y la versión sigue siendo válida para volver a ella
+     * más adelante.
+     *
+     * @param version Versión a la que se quiere volver.
+     */
+    public void restore(GrammarVersion version) {
+        nonterminals = version.nonterminals;
+        terminals = version.terminals;
+        productions = version.productions;
+        inverse = version.inverse;
+        startsymbol = version.startsymbol;
+        sharedSymbols = true;
+        sharedProductions = true;
+        sharedInverse = true;
+        generation = GENERATIONS.incrementAndGet();
+        rendered = new HashMap<>();
+        grammarModified();
+    }
+
+    /**
+     * Devuelve el conjunto de no terminales listo para modificarse, copiándolo
+     * antes si está compartido con alguna versión.
+     */
+    private Set<Character> nonterminalsForUpdate() {
+        grammarModified();
+        if (sharedSymbols) {
+            nonterminals = new TreeSet<>(nonterminals);
+            terminals = new TreeSet<>(terminals);
+            sharedSymbols = false;
+        }
+        return nonterminals;
+    }
+
+    /**
+     * Devuelve el conjunto de terminales listo para modificarse, copiándolo
+     * antes si está compartido con alguna versión.
+     */
+    private Set<Character> terminalsForUpdate() {
+        nonterminalsForUpdate();
+        return terminals;
+    }
+
+    /**
+     * Devuelve el mapa de producciones listo para añadir o quitar no
+     * terminales. Las listas siguen compartidas.
+     */
+    private Map<Character, List<String>> productionsForUpdate() {
+        grammarModified();
+        if (sharedProductions) {
+            productions = new TreeMap<>(productions);
+            sharedProductions = false;
+        }
+        return productions;
+    }
+
+    /**
+     * Devuelve la lista de producciones de un no terminal lista para
+     * modificarse: la crea si no existe y la copia si está compartida.
+     */
+    private List<String> productionsForUpdate(char nonterminal) {
+        grammarModified();
+        logChange(nonterminal);
+        List<String> lista = productions.get(nonterminal);
+        if (!isOwned(lista)) {
+            lista = own(lista == null ? Collections.emptyList() : lista);
+            productionsForUpdate().put(nonterminal, lista);
+        }
+        return lista;
+    }
+
+    /**
+     * Devuelve la lista de no terminales que producen la parte derecha
+     * indicada, lista para modificarse.
+     */
+    private List<Character> inverseForUpdate(String production) {
+        if (sharedInverse) {
+            inverse = new TreeMap<>(inverse);
+            sharedInverse = false;
+        }
+        List<Character> lista = inverse.get(production);
+        if (!isOwned(lista)) {
+            lista = own(lista == null ? Collections.emptyList() : lista);
+            inverse.put(production, lista);
+        }
+        return lista;
+    }
+
+    /**
+     * Indica si la lista pertenece a la generación actual, es decir, si no la
+     * comparte ninguna versión.
+     */
+    private boolean isOwned(List<?> lista) {
+        return lista instanceof OwnedList && ((OwnedList<?>) lista).generation == generation;
+    }
+
+    /**
+     * Devuelve una lista propia con los mismos elementos (la misma lista si ya
+     * lo era).
+     */
+    private <E> List<E> own(List<E> lista) {
+        return isOwned(lista) ? lista : new OwnedList<>(generation, lista);
+    }
+
+    /**
+     * Lista marcada con la generación en la que se creó. Tras un snapshot()
+     * la generación avanza y todas las listas existentes pasan a ser
+     * compartidas sin necesidad de recorrerlas.
+     */
+    private static final class OwnedList<E> extends ArrayList<E> {
+
+        private static final long serialVersionUID = 1L;
+
+        final long generation;
+
+        OwnedList(long generation, Collection<? extends E> elements) {
+            super(elements);
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Método que empieza a registrar qué no terminales cambian de
+     * producciones. Lo utiliza WellFormedPipeline para saber qué ha tocado
+     * cada etapa sin comparar la gramática completa.
+     */
+    void startChangeLog() {
+        changeLog = new HashMap<>();
+    }
+
+    /**
+     * Método que deja de registrar cambios.
+     *
+     * @return Para cada no terminal cuyas producciones se han modificado
+     * desde startChangeLog(), la lista que tenía antes del primer cambio (null
+     * si no tenía ninguna).
+     */
+    Map<Character, List<String>> stopChangeLog() {
+        Map<Character, List<String>> log = changeLog;
+        changeLog = null;
+        return log;
+    }
+
+    /**
+     * Anota las producciones de un no terminal antes de modificarlas, si se
+     * están registrando los cambios. Una lista compartida no se copia: quien
+     * la modifique trabajará sobre una copia.
+     */
+    private void logChange(char nonterminal) {
+        if (changeLog != null && !changeLog.containsKey(nonterminal)) {
+            List<String> lista = productions.get(nonterminal);
+            changeLog.put(nonterminal, isOwned(lista) ? new ArrayList<>(lista) : lista);
+        }
+    }
+
+    /**
+     * Invalida la representación cacheada de las producciones de un no
+     * terminal. Debe llamarse tras cualquier cambio en su lista.
+     */
+    private void productionsChanged(char nonterminal) {
+        rendered.remove(nonterminal);
+        grammarModified();
+    }
+
+    /**
+     * Descarta todo lo que se deriva de la gramática completa (la versión
+     * compilada). Debe llamarse ante cualquier cambio.
+     */
+    private void grammarModified() {
+        compiled = null;
+        version = VERSIONS.incrementAndGet();
+    }
+
 }
@@ -0,0 +1,248 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Almacenamiento de la tabla CYK: un vector de longs (los bitsets de todas
+ * las celdas) direccionado con índices long, porque con palabras muy largas
+ * la tabla supera los 2^31 elementos de un array.
+ *
+ * Hay tres implementaciones:
+ *
+ * - En el heap: un long[], la más rápida para palabras normales.
+ *
+ * - Fuera del heap: ByteBuffers directos de hasta 1 GiB cada uno. No cuentan
+ * para el tamaño del heap ni los recorre el recolector de basura.
+ *
+ * - Proyectada en un fichero temporal con FileChannel.map, para tablas que
+ * no caben en memoria; el sistema operativo pagina lo que no se está usando.
+ *
+ * La memoria fuera del heap se libera en close(), sin esperar al recolector
+ * de basura, y el fichero temporal se borra. La tabla no puede usarse después
+ * de cerrarla.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+abstract class CYKChart implements AutoCloseable {
+
+    private static final int SEGMENT_SHIFT = 27; // 2^27 longs = 1 GiB por segmento.
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    abstract long get(long index);
+
+    abstract void set(long index, long bits);
+
+    abstract void or(long index, long bits);
+
+    abstract void and(long index, long bits);
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Tabla en el heap de length longs.
+     */
+    static CYKChart heap(long length) {
+        return new Heap(new long[Math.toIntExact(length)]);
+    }
+
+    /**
+     * Tabla fuera del heap de length longs, inicializada a cero.
+     */
+    static CYKChart offHeap(long length) {
+        ByteBuffer[] buffers = new ByteBuffer[segments(length)];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.allocateDirect(segmentBytes(length, i));
+        }
+        return new Buffers(buffers, null);
+    }
+
+    /**
+     * Tabla de length longs proyectada en un fichero temporal del directorio
+     * indicado. El fichero se borra al cerrar la tabla.
+     */
+    static CYKChart mapped(Path directory, long length) throws IOException {
+        Path file = Files.createTempFile(directory, "cyk", ".chart");
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            ByteBuffer[] buffers = new ByteBuffer[segments(length)];
+            long position = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                int bytes = segmentBytes(length, i);
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+                position += bytes;
+            }
+            return new Buffers(buffers, channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Libera ya la memoria de un buffer directo o proyectado, que no puede
+     * usarse después.
+     */
+    static void release(ByteBuffer buffer) {
+        Cleaner.free(buffer);
+    }
+
+    private static int segments(long length) {
+        return (int) ((length + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentBytes(long length, int segment) {
+        return (int) (Math.min(length - ((long) segment << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT) * Long.BYTES);
+    }
+
+    static final class Heap extends CYKChart {
+
+        private final long[] data;
+
+        Heap(long[] data) {
+            this.data = data;
+        }
+
+        int capacity() {
+            return data.length;
+        }
+
+        /**
+         * Pone a cero los primeros length longs, para reutilizar la tabla.
+         */
+        void clear(int length) {
+            Arrays.fill(data, 0, length, 0L);
+        }
+
+        @Override
+        long get(long index) {
+            return data[(int) index];
+        }
+
+        @Override
+        void set(long index, long bits) {
+            data[(int) index] = bits;
+        }
+
+        @Override
+        void or(long index, long bits) {
+            data[(int) index] |= bits;
+        }
+
+        @Override
+        void and(long index, long bits) {
+            data[(int) index] &= bits;
+        }
+    }
+
+    private static final class Buffers extends CYKChart {
+
+        private ByteBuffer[] buffers;
+        private LongBuffer[] segments;
+        private final FileChannel channel;
+
+        Buffers(ByteBuffer[] buffers, FileChannel channel) {
+            this.buffers = buffers;
+            this.channel = channel;
+            segments = new LongBuffer[buffers.length];
+            for (int i = 0; i < buffers.length; i++) {
+                segments[i] = buffers[i].order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+        }
+
+        @Override
+        long get(long index) {
+            return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & SEGMENT_MASK));
+        }
+
+        @Override
+        void set(long index, long bits) {
+            segments[(int) (index >>> SEGMENT_SHIFT)].put((int) (index & SEGMENT_MASK), bits);
+        }
+
+        @Override
+        void or(long index, long bits) {
+            LongBuffer segment = segments[(int) (index >>> SEGMENT_SHIFT)];
+            int i = (int) (index & SEGMENT_MASK);
+            segment.put(i, segment.get(i) | bits);
+        }
+
+        @Override
+        void and(long index, long bits) {
+            LongBuffer segment = segments[(int) (index >>> SEGMENT_SHIFT)];
+            int i = (int) (index & SEGMENT_MASK);
+            segment.put(i, segment.get(i) & bits);
+        }
+
+        @Override
+        public void close() {
+            if (buffers == null) {
+                return;
+            }
+            segments = null;
+            for (ByteBuffer buffer : buffers) {
+                Cleaner.free(buffer);
+            }
+            buffers = null;
+            if (channel != null) {
+                try {
+                    channel.close(); // DELETE_ON_CLOSE borra el fichero.
+                } catch (IOException ex) {
+                    // El fichero temporal queda para el sistema; la tabla ya no se usa.
+                }
+            }
+        }
+    }
+
+    /**
+     * Liberación inmediata de ByteBuffers directos y proyectados mediante
+     * sun.misc.Unsafe.invokeCleaner, disponible en el módulo jdk.unsupported.
+     * Si no está disponible, la memoria se libera cuando el recolector de
+     * basura recoge el buffer.
+     */
+    private static final class Cleaner {
+
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> type = Class.forName("sun.misc.Unsafe");
+                Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                unsafe = null;
+                invokeCleaner = null;
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        static void free(ByteBuffer buffer) {
+            if (INVOKE_CLEANER == null) {
+                return;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                // Se deja la liberación al recolector de basura.
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+/**
+ * Memoria de trabajo reutilizable para CYK: el vector de clases de la palabra
+ * y las tablas (completa y dispersa) en el heap. Los vectores crecen bajo
+ * demanda y entre palabras sólo se pone a cero la parte que se va a usar, de
+ * modo que, una vez alcanzado el tamaño de las palabras habituales, una
+ * consulta de pertenencia no reserva memoria.
+ *
+ * Un espacio de trabajo no puede usarse desde dos hilos a la vez. Los
+ * reconocedores usan por defecto el del hilo actual (current()); también se
+ * puede crear uno y pasarlo explícitamente.
+ *
+ * Las tablas de más de retainLimit longs no se guardan en el espacio de
+ * trabajo para no retener memoria de palabras excepcionalmente largas.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class CYKWorkspace {
+
+    private static final ThreadLocal<CYKWorkspace> CURRENT = ThreadLocal.withInitial(CYKWorkspace::new);
+
+    private int[] symbols = new int[64];
+    private CYKChart.Heap chart;
+    private SparseChart sparse;
+    private long retainLimit = 1 << 20;
+
+    /**
+     * Crea un espacio de trabajo vacío.
+     */
+    public CYKWorkspace() {
+    }
+
+    /**
+     * Método que devuelve el espacio de trabajo del hilo actual.
+     *
+     * @return El espacio de trabajo del hilo.
+     */
+    public static CYKWorkspace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Método que fija el tamaño máximo de la tabla que se conserva entre
+     * palabras.
+     *
+     * @param longs Número máximo de longs (2^20, 8 MiB, por defecto).
+     */
+    public void setRetainLimit(long longs) {
+        this.retainLimit = longs;
+        if (chart != null && chart.capacity() > longs) {
+            chart = null;
+        }
+    }
+
+    int[] symbols(int n) {
+        if (symbols.length < n) {
+            symbols = new int[Math.max(n, 2 * symbols.length)];
+        }
+        return symbols;
+    }
+
+    /**
+     * Tabla completa de length longs a cero, reutilizada si cabe en el límite.
+     */
+    CYKChart chart(long length) {
+        if (length > retainLimit) {
+            return CYKChart.heap(length);
+        }
+        if (chart == null || chart.capacity() < length) {
+            chart = new CYKChart.Heap(new long[(int) Math.min(retainLimit, Math.max(length, 2L * (chart == null ? 0 : chart.capacity())))]);
+        } else {
+            chart.clear((int) length);
+        }
+        return chart;
+    }
+
+    /**
+     * Tabla dispersa vacía para una palabra de longitud n.
+     */
+    SparseChart sparseChart(int n, int words) {
+        if (sparse == null || !sparse.reset(n, words)) {
+            sparse = new SparseChart(n, words);
+        }
+        return sparse;
+    }
+}
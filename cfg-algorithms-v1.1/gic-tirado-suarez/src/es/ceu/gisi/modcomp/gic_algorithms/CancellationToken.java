@@ -0,0 +1,96 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+import java.time.Duration;
+
+/**
+ * Señal para detener un análisis CYK en curso, desde otro hilo (cancel) o al
+ * vencer un plazo. El análisis la consulta una vez por diagonal de la tabla
+ * (por cada longitud de fragmento), así que comprobarla cuesta un tiempo
+ * lineal frente al cúbico del análisis, y lo que tarda en detenerse es lo que
+ * tarda una diagonal.
+ *
+ * Un mismo testigo puede compartirse entre varios análisis, por ejemplo los
+ * de una petición, para detenerlos todos a la vez.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class CancellationToken {
+
+    private final long deadline; // System.nanoTime() del plazo.
+    private final boolean timed;
+    private volatile boolean cancelled;
+
+    /**
+     * Crea un testigo sin plazo, que sólo detiene el análisis si se llama a
+     * cancel.
+     */
+    public CancellationToken() {
+        this(0, false);
+    }
+
+    private CancellationToken(long deadline, boolean timed) {
+        this.deadline = deadline;
+        this.timed = timed;
+    }
+
+    /**
+     * Método que crea un testigo que vence cuando pasa el tiempo indicado
+     * desde ahora. También se puede cancelar antes con cancel.
+     *
+     * @param timeout Tiempo máximo de análisis.
+     *
+     * @return El testigo con el plazo.
+     */
+    public static CancellationToken withTimeout(Duration timeout) {
+        long nanos;
+        try {
+            nanos = timeout.toNanos();
+        } catch (ArithmeticException ex) {
+            return new CancellationToken(); // plazo más allá de lo representable.
+        }
+        return new CancellationToken(System.nanoTime() + nanos, true);
+    }
+
+    /**
+     * Método que pide que se detengan los análisis que usan este testigo. Se
+     * puede llamar desde cualquier hilo.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Método que indica si se ha llamado a cancel.
+     *
+     * @return TRUE si el testigo está cancelado.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Método que indica si ha vencido el plazo del testigo.
+     *
+     * @return TRUE si el testigo tiene plazo y ya ha pasado.
+     */
+    public boolean isExpired() {
+        return timed && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Indica si el análisis debe detenerse.
+     */
+    boolean shouldStop() {
+        return cancelled || isExpired();
+    }
+
+    /**
+     * Excepción con la que se detiene un análisis.
+     */
+    CYKAbortedException aborted() {
+        return cancelled
+                ? new CYKAbortedException("Se ha cancelado el análisis CYK.", false)
+                : new CYKAbortedException("Se ha agotado el plazo del análisis CYK.", true);
+    }
+}
@@ -0,0 +1,66 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Criterio (inmutable) para elegir dónde se guarda la tabla CYK de una
+ * palabra según su longitud:
+ *
+ * - Por debajo de offHeapLength, en el heap.
+ *
+ * - A partir de offHeapLength, fuera del heap. También si la tabla no cabe en
+ * un array.
+ *
+ * - Si se ha indicado un directorio y la tabla ocupa más de mappedBytes, en
+ * un fichero temporal proyectado en memoria.
+ *
+ * Con sparse activado no se reserva la tabla completa: se usa una
+ * SparseChart que sólo guarda las celdas no vacías.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+final class ChartPolicy {
+
+    static final ChartPolicy DEFAULT = new ChartPolicy(4096, null, Long.MAX_VALUE, false);
+
+    private static final long MAX_HEAP_LONGS = Integer.MAX_VALUE - 8;
+
+    final int offHeapLength;
+    final Path directory;
+    final long mappedBytes;
+    final boolean sparse;
+
+    private ChartPolicy(int offHeapLength, Path directory, long mappedBytes, boolean sparse) {
+        this.offHeapLength = offHeapLength;
+        this.directory = directory;
+        this.mappedBytes = mappedBytes;
+        this.sparse = sparse;
+    }
+
+    ChartPolicy withOffHeapLength(int length) {
+        return new ChartPolicy(length, directory, mappedBytes, sparse);
+    }
+
+    ChartPolicy withMapped(Path directory, long bytes) {
+        return new ChartPolicy(offHeapLength, directory, bytes, sparse);
+    }
+
+    ChartPolicy withSparse(boolean sparse) {
+        return new ChartPolicy(offHeapLength, directory, mappedBytes, sparse);
+    }
+
+    /**
+     * Reserva la tabla de una palabra de longitud n con length longs. Las
+     * tablas en el heap se toman del espacio de trabajo.
+     */
+    CYKChart allocate(int n, long length, CYKWorkspace workspace) throws IOException {
+        if (directory != null && length * Long.BYTES > mappedBytes) {
+            return CYKChart.mapped(directory, length);
+        }
+        if (n >= offHeapLength || length > MAX_HEAP_LONGS) {
+            return CYKChart.offHeap(length);
+        }
+        return workspace.chart(length);
+    }
+}
@@ -0,0 +1,1134 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Representación compilada (de sólo lectura) de una gramática en Forma Normal
+ * de Chomsky, preparada para ejecutar el algoritmo CYK sin volver a recorrer
+ * los mapas de producciones de CFGAlgorithms.
+ *
+ * Todas las tablas viven en un único ByteBuffer con un formato binario
+ * versionado, de modo que la misma instancia puede construirse en memoria a
+ * partir de un CFGAlgorithms o proyectarse directamente desde un fichero con
+ * FileChannel.map sin deserializar nada. Las tablas son:
+ *
+ * - Tabla de símbolos: no terminales y terminales ordenados (un char cada
+ * uno). El índice de un no terminal es su posición en la tabla, y una tabla
+ * de consulta char -> short lo da en una sola lectura (-1 si el carácter no
+ * es un no terminal).
+ *
+ * - Clases de terminales (compresión del alfabeto): los terminales que
+ * aparecen exactamente en las mismas producciones son indistinguibles para
+ * el reconocedor y comparten un identificador de clase denso. Una tabla de
+ * consulta char -> short traduce cada carácter a su clase (-1 si no es un
+ * terminal).
+ *
+ * - Índice de terminales: para cada clase, el conjunto (bitset de longs) de
+ * no terminales A con A::=a.
+ *
+ * - Producciones binarias en formato CSR, agrupadas por el hijo izquierdo: para
+ * cada B, los pares (C, A) de todas las producciones A::=BC. Es el índice de
+ * pares que utiliza CYK para combinar dos celdas.
+ *
+ * Al compilar se calculan además unas tablas derivadas, que se guardan en
+ * el mismo formato para que map(Path) no tenga que recalcularlas:
+ *
+ * - Para cada no terminal, la longitud mínima y máxima (posiblemente no
+ * acotada) de las palabras que deriva. CYK las usa para no rellenar
+ * combinaciones (no terminal, longitud) imposibles y para rechazar sin tabla
+ * las palabras cuya longitud no puede derivar el axioma.
+ *
+ * - Qué no terminales pueden aparecer, en alguna derivación desde el axioma,
+ * al principio de la palabra, al final, en ambos extremos o en medio. Con el
+ * filtrado descendente activado, CYK descarta de cada celda los no
+ * terminales que no pueden aparecer en su posición (por ejemplo, uno que sólo
+ * es hijo derecho nunca se usa en la celda que empieza la palabra), lo que
+ * aligera las combinaciones de las celdas más anchas.
+ *
+ * - Las tablas de WordFilter (primeros y últimos terminales y bigramas) y la
+ * huella de la gramática.
+ *
+ * La tabla CYK de cada palabra se reserva con un CYKChart (en el heap, fuera
+ * de él o en un fichero proyectado, según ChartPolicy) y se libera al
+ * terminar.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class CompiledGrammar {
+
+    /**
+     * Número mágico del fichero ("CFGC").
+     */
+    static final int MAGIC = 0x43464743;
+
+    /**
+     * Versión del formato binario. Debe incrementarse con cada cambio de
+     * disposición de las tablas.
+     */
+    static final int FORMAT_VERSION = 4;
+
+    /**
+     * Longitud máxima de un no terminal recursivo (no acotada).
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Mínimo de celdas de una diagonal por tarea en recognizeParallel.
+     */
+    private static final int MIN_PARALLEL_CELLS = 8;
+
+    private static final int HEADER_BYTES = 56;
+    private static final int FLAG_LAMBDA = 1;
+    private static final int LEFT_CONTEXT = 1;
+    private static final int RIGHT_CONTEXT = 2;
+
+    private final ByteBuffer data;
+    private final CharBuffer nonterminalSymbols;
+    private final CharBuffer terminalSymbols;
+    private final ShortBuffer classTable;
+    private final ShortBuffer nonterminalTable;
+    private final LongBuffer classRows;
+    private final IntBuffer pairOffsets;
+    private final IntBuffer pairRight;
+    private final IntBuffer pairHead;
+    private final int nonterminalCount;
+    private final int terminalCount;
+    private final int classCount;
+    private final int classBase;
+    private final int classSpan;
+    private final int nonterminalBase;
+    private final int nonterminalSpan;
+    private final int pairCount;
+    private final int start;
+    private final boolean startDerivesLambda;
+    private final int words;
+    private final IntBuffer minLength;
+    private final IntBuffer maxLength;
+    private final LongBuffer contextMasks;
+    private final WordFilter filter;
+    private final long fingerprint;
+
+    /**
+     * Envuelve un buffer con el formato binario. Con derive a TRUE (al
+     * compilar) calcula y escribe en él las tablas derivadas y la huella; si
+     * no (al proyectar un fichero), las lee tal cual.
+     */
+    private CompiledGrammar(ByteBuffer data, boolean derive) throws CFGAlgorithmsException {
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new CFGAlgorithmsException("El fichero no contiene una gramática compilada.");
+        }
+        if (data.getInt(4) != FORMAT_VERSION) {
+            throw new CFGAlgorithmsException("Versión de gramática compilada no soportada: " + data.getInt(4));
+        }
+        nonterminalCount = data.getInt(8);
+        terminalCount = data.getInt(12);
+        pairCount = data.getInt(16);
+        start = data.getInt(20);
+        startDerivesLambda = (data.getInt(24) & FLAG_LAMBDA) != 0;
+        classCount = data.getInt(28);
+        classBase = data.getInt(32);
+        classSpan = data.getInt(36);
+        nonterminalBase = data.getInt(40);
+        nonterminalSpan = data.getInt(44);
+        words = wordsFor(nonterminalCount);
+
+        int[] layout = layout(nonterminalCount, terminalCount, classCount, classSpan, nonterminalSpan, pairCount);
+        if (data.capacity() < layout[14]) {
+            throw new CFGAlgorithmsException("El fichero de gramática compilada está truncado.");
+        }
+        classRows = section(layout[0], layout[1]).asLongBuffer();
+        nonterminalSymbols = section(layout[1], layout[2]).asCharBuffer();
+        terminalSymbols = section(layout[2], layout[3]).asCharBuffer();
+        classTable = section(layout[3], layout[4]).asShortBuffer();
+        nonterminalTable = section(layout[4], layout[5]).asShortBuffer();
+        pairOffsets = section(layout[5], layout[6]).asIntBuffer();
+        pairRight = section(layout[6], layout[7]).asIntBuffer();
+        pairHead = section(layout[7], layout[8]).asIntBuffer();
+        minLength = section(layout[8], layout[9]).asIntBuffer();
+        maxLength = section(layout[9], layout[10]).asIntBuffer();
+        contextMasks = section(layout[10], layout[11]).asLongBuffer();
+        LongBuffer first = section(layout[11], layout[12]).asLongBuffer();
+        LongBuffer last = section(layout[12], layout[13]).asLongBuffer();
+        LongBuffer bigrams = section(layout[13], layout[14]).asLongBuffer();
+
+        if (derive) {
+            computeLengthBounds();
+            computeContextMasks();
+            WordFilter.computeTables(this, first, last, bigrams);
+            data.putLong(48, fingerprint(data, layout[14]));
+        }
+        filter = new WordFilter(this, first, last, bigrams);
+        fingerprint = data.getLong(48);
+    }
+
+    /**
+     * Hash de 64 bits de los bytes del formato binario, con el campo de la
+     * huella aún a cero. Como el formato es determinista, dos compilaciones
+     * de la misma gramática (en cualquier JVM) tienen la misma huella.
+     */
+    private static long fingerprint(ByteBuffer data, int length) {
+        long h = 0xCBF29CE484222325L ^ length;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ (data.get(i) & 0xFF)) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Calcula la longitud mínima y máxima derivable de cada no terminal. Los
+     * no terminales improductivos quedan con mínimo UNBOUNDED y máximo 0.
+     *
+     * El mínimo es un punto fijo directo. Para el máximo se relajan las
+     * producciones r veces: sin recursión los valores se estabilizan en r
+     * rondas, así que todo no terminal que siga creciendo después está en un
+     * ciclo (o lo alcanza) y su máximo no está acotado.
+     */
+    private void computeLengthBounds() {
+        int r = nonterminalCount;
+        int[] minLength = new int[r];
+        int[] maxLength = new int[r];
+        Arrays.fill(minLength, UNBOUNDED);
+        for (int cls = 0; cls < classCount; cls++) {
+            for (int a = 0; a < r; a++) {
+                if ((classRow(cls, a >>> 6) & (1L << a)) != 0) {
+                    minLength[a] = 1;
+                    maxLength[a] = 1;
+                }
+            }
+        }
+        boolean cambio = true;
+        while (cambio) {
+            cambio = false;
+            for (int b = 0; b < r; b++) {
+                for (int e = pairOffsets.get(b), end = pairOffsets.get(b + 1); e < end; e++) {
+                    int c = pairRight.get(e);
+                    int a = pairHead.get(e);
+                    int length = add(minLength[b], minLength[c]);
+                    if (length < minLength[a]) {
+                        minLength[a] = length;
+                        cambio = true;
+                    }
+                }
+            }
+        }
+
+        boolean[] unbounded = new boolean[r];
+        for (int round = 0; round <= r; round++) {
+            for (int b = 0; b < r; b++) {
+                if (minLength[b] == UNBOUNDED) {
+                    continue;
+                }
+                for (int e = pairOffsets.get(b), end = pairOffsets.get(b + 1); e < end; e++) {
+                    int c = pairRight.get(e);
+                    int a = pairHead.get(e);
+                    int length = add(maxLength[b], maxLength[c]);
+                    if (minLength[c] != UNBOUNDED && length > maxLength[a]) {
+                        maxLength[a] = length;
+                        unbounded[a] |= round == r;
+                    }
+                }
+            }
+        }
+        cambio = true;
+        while (cambio) { // todo lo que alcanza un ciclo tampoco está acotado.
+            cambio = false;
+            for (int b = 0; b < r; b++) {
+                for (int e = pairOffsets.get(b), end = pairOffsets.get(b + 1); e < end; e++) {
+                    int c = pairRight.get(e);
+                    int a = pairHead.get(e);
+                    if (!unbounded[a] && minLength[b] != UNBOUNDED && minLength[c] != UNBOUNDED
+                            && (unbounded[b] || unbounded[c])) {
+                        unbounded[a] = true;
+                        cambio = true;
+                    }
+                }
+            }
+        }
+        for (int a = 0; a < r; a++) {
+            if (unbounded[a]) {
+                maxLength[a] = UNBOUNDED;
+            }
+        }
+        this.minLength.put(0, minLength);
+        this.maxLength.put(0, maxLength);
+    }
+
+    /**
+     * Calcula, para cada tipo de contexto (con o sin símbolos a la izquierda y
+     * a la derecha), el bitset de no terminales que aparecen en ese contexto
+     * en alguna derivación desde el axioma. En A::=BC el hijo izquierdo hereda
+     * el contexto de A y gana contexto derecho (C deriva al menos un
+     * terminal), y el derecho gana contexto izquierdo.
+     */
+    private void computeContextMasks() {
+        long[] masks = new long[4 * words];
+        if (!productive(start)) {
+            return;
+        }
+        masks[start >>> 6] |= 1L << start;
+        boolean cambio = true;
+        while (cambio) {
+            cambio = false;
+            for (int b = 0; b < nonterminalCount; b++) {
+                for (int e = pairOffsets.get(b), end = pairOffsets.get(b + 1); e < end; e++) {
+                    int c = pairRight.get(e);
+                    int a = pairHead.get(e);
+                    if (!productive(b) || !productive(c)) {
+                        continue;
+                    }
+                    for (int context = 0; context < 4; context++) {
+                        if ((masks[context * words + (a >>> 6)] & (1L << a)) == 0) {
+                            continue;
+                        }
+                        cambio |= set(masks, (context | RIGHT_CONTEXT) * words, b);
+                        cambio |= set(masks, (context | LEFT_CONTEXT) * words, c);
+                    }
+                }
+            }
+        }
+        contextMasks.put(0, masks);
+    }
+
+    private static boolean set(long[] bits, int offset, int a) {
+        long old = bits[offset + (a >>> 6)];
+        bits[offset + (a >>> 6)] = old | (1L << a);
+        return (old & (1L << a)) == 0;
+    }
+
+    private static int add(int x, int y) {
+        long sum = (long) x + y;
+        return sum >= UNBOUNDED ? UNBOUNDED : (int) sum;
+    }
+
+    /**
+     * Método que compila la gramática almacenada en un CFGAlgorithms.
+     *
+     * @param grammar Gramática en Forma Normal de Chomsky y con axioma.
+     *
+     * @return La gramática compilada.
+     *
+     * @throws CFGAlgorithmsException Si la gramática no está en Forma Normal
+     * de Chomsky, si carece de axioma o si alguna producción utiliza símbolos
+     * no definidos.
+     */
+    public static CompiledGrammar compile(CFGAlgorithms grammar) throws CFGAlgorithmsException {
+        if (!grammar.isCNF()) {
+            throw new CFGAlgorithmsException("La gramática no está en Forma Normal de Chomsky.");
+        }
+        char axiom = grammar.getStartSymbol();
+
+        char[] nts = toArray(grammar.getNonTerminals());
+        char[] ts = toArray(grammar.getTerminals());
+        int r = nts.length;
+        int t = ts.length;
+        int w = wordsFor(r);
+
+        long[] rows = new long[t * w]; // fila de cada terminal, antes de agruparlos en clases.
+        List<List<int[]>> byLeft = new ArrayList<>(r);
+        for (int a = 0; a < r; a++) {
+            byLeft.add(new ArrayList<>());
+        }
+        int m = 0;
+        boolean lambda = false;
+        for (int a = 0; a < r; a++) {
+            List<String> list = grammar.getProductions(nts[a]);
+            if (list == null) {
+                continue;
+            }
+            for (String production : list) {
+                if (production.equals("l")) {
+                    lambda |= nts[a] == axiom;
+                } else if (production.length() == 1) {
+                    int ti = indexOf(ts, production.charAt(0));
+                    rows[ti * w + (a >>> 6)] |= 1L << a;
+                } else {
+                    int b = indexOf(nts, production.charAt(0));
+                    int c = indexOf(nts, production.charAt(1));
+                    byLeft.get(b).add(new int[]{c, a});
+                    m++;
+                }
+            }
+        }
+
+        // Compresión del alfabeto: terminales con la misma fila son una misma clase.
+        Map<List<Long>, Integer> classes = new HashMap<>();
+        List<Integer> representatives = new ArrayList<>();
+        int base = t == 0 ? 0 : ts[0];
+        int span = t == 0 ? 0 : ts[t - 1] - base + 1;
+        short[] table = new short[span];
+        Arrays.fill(table, (short) -1);
+        for (int ti = 0; ti < t; ti++) {
+            List<Long> row = new ArrayList<>(w);
+            for (int k = 0; k < w; k++) {
+                row.add(rows[ti * w + k]);
+            }
+            Integer id = classes.get(row);
+            if (id == null) {
+                id = classes.size();
+                classes.put(row, id);
+                representatives.add(ti);
+            }
+            table[ts[ti] - base] = (short) (int) id;
+        }
+        int q = classes.size();
+
+        int ntBase = r == 0 ? 0 : nts[0];
+        int ntSpan = r == 0 ? 0 : nts[r - 1] - ntBase + 1;
+        short[] ntTable = new short[ntSpan];
+        Arrays.fill(ntTable, (short) -1);
+        for (int a = 0; a < r; a++) {
+            ntTable[nts[a] - ntBase] = (short) a;
+        }
+
+        int[] layout = layout(r, t, q, span, ntSpan, m);
+        ByteBuffer buffer = ByteBuffer.allocate(layout[14]).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putInt(8, r);
+        buffer.putInt(12, t);
+        buffer.putInt(16, m);
+        buffer.putInt(20, indexOf(nts, axiom));
+        buffer.putInt(24, lambda ? FLAG_LAMBDA : 0);
+        buffer.putInt(28, q);
+        buffer.putInt(32, base);
+        buffer.putInt(36, span);
+        buffer.putInt(40, ntBase);
+        buffer.putInt(44, ntSpan);
+        for (int cls = 0; cls < q; cls++) {
+            for (int k = 0; k < w; k++) {
+                buffer.putLong(layout[0] + 8 * (cls * w + k), rows[representatives.get(cls) * w + k]);
+            }
+        }
+        for (int i = 0; i < r; i++) {
+            buffer.putChar(layout[1] + 2 * i, nts[i]);
+        }
+        for (int i = 0; i < t; i++) {
+            buffer.putChar(layout[2] + 2 * i, ts[i]);
+        }
+        for (int i = 0; i < span; i++) {
+            buffer.putShort(layout[3] + 2 * i, table[i]);
+        }
+        for (int i = 0; i < ntSpan; i++) {
+            buffer.putShort(layout[4] + 2 * i, ntTable[i]);
+        }
+        int k = 0;
+        for (int b = 0; b < r; b++) {
+            buffer.putInt(layout[5] + 4 * b, k);
+            for (int[] pair : byLeft.get(b)) {
+                buffer.putInt(layout[6] + 4 * k, pair[0]);
+                buffer.putInt(layout[7] + 4 * k, pair[1]);
+                k++;
+            }
+        }
+        buffer.putInt(layout[5] + 4 * r, k);
+        return new CompiledGrammar(buffer, true);
+    }
+
+    /**
+     * Método que proyecta en memoria un fichero escrito con write(Path). Las
+     * consultas se sirven directamente desde el buffer proyectado, también
+     * las de las tablas derivadas, que no se recalculan: cargar el fichero
+     * sólo lee la cabecera. Varias JVM que carguen el mismo fichero comparten
+     * la caché de páginas.
+     *
+     * @param file Fichero con la gramática compilada.
+     *
+     * @return La gramática compilada respaldada por el fichero.
+     *
+     * @throws IOException Si no se puede leer el fichero.
+     * @throws CFGAlgorithmsException Si el fichero no tiene el formato o la
+     * versión esperados.
+     */
+    public static CompiledGrammar map(Path file) throws IOException, CFGAlgorithmsException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new CompiledGrammar(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), false);
+        }
+    }
+
+    /**
+     * Método que escribe la gramática compilada en un fichero con el formato
+     * binario versionado que lee map(Path).
+     *
+     * @param file Fichero de destino (se sobrescribe si existe).
+     *
+     * @throws IOException Si no se puede escribir el fichero.
+     */
+    public void write(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = data.duplicate();
+            bytes.clear();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje de la gramática
+     * utilizando el algoritmo CYK sobre las tablas compiladas.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario. La palabra
+     * vacía pertenece si el axioma tiene la producción S::=l.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     */
+    public boolean isDerived(CharSequence word) throws CFGAlgorithmsException {
+        return isDerived(word, false);
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje de la gramática
+     * utilizando el algoritmo CYK, opcionalmente con filtrado descendente: en
+     * cada celda sólo se conservan los no terminales que pueden aparecer en
+     * esa posición de una derivación desde el axioma. El resultado es el
+     * mismo; cambia el trabajo de las celdas más anchas.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param topDown TRUE para activar el filtrado descendente.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     */
+    public boolean isDerived(CharSequence word, boolean topDown) throws CFGAlgorithmsException {
+        return isDerived(word, topDown, ChartPolicy.DEFAULT, CYKWorkspace.current());
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje de la gramática
+     * utilizando el algoritmo CYK, deteniendo el análisis si se cancela el
+     * testigo o vence su plazo. El testigo se consulta una vez por cada
+     * longitud de fragmento.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param token Testigo de cancelación.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario.
+     *
+     * @throws CYKAbortedException Si el análisis se ha detenido antes de
+     * terminar.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     */
+    public boolean isDerived(CharSequence word, CancellationToken token) throws CFGAlgorithmsException {
+        return isDerived(word, 0, word.length(), false, ChartPolicy.DEFAULT, CYKWorkspace.current(), token);
+    }
+
+    /**
+     * Método que analiza una palabra con el algoritmo CYK y devuelve su tabla
+     * completa, para consultar qué no terminales derivan cada fragmento sin
+     * volver a analizarla.
+     *
+     * @param word La palabra a analizar, formada sólo por terminales.
+     *
+     * @return La tabla CYK de la palabra.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     */
+    public ParseChart parse(CharSequence word) throws CFGAlgorithmsException {
+        return new ParseChart(this, toClasses(word), word.length());
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje de la gramática
+     * utilizando la memoria del espacio de trabajo indicado en lugar de la del
+     * hilo actual. Una vez que el espacio de trabajo ha crecido hasta la
+     * longitud de las palabras, la consulta no reserva memoria.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param workspace Espacio de trabajo, que no debe estar usándose en otro
+     * hilo.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     */
+    public boolean isDerived(CharSequence word, CYKWorkspace workspace) throws CFGAlgorithmsException {
+        return isDerived(word, false, ChartPolicy.DEFAULT, workspace);
+    }
+
+    /**
+     * Método que indica si un fragmento de un texto pertenece al lenguaje de
+     * la gramática, leyéndolo directamente del texto, sin copiarlo. Sirve
+     * también para un CharBuffer (desde su posición actual).
+     *
+     * @param text Texto que contiene la palabra.
+     * @param offset Posición del primer carácter de la palabra.
+     * @param length Longitud de la palabra.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     *
+     * @throws IndexOutOfBoundsException Si el fragmento se sale del texto.
+     */
+    public boolean isDerived(CharSequence text, int offset, int length) throws CFGAlgorithmsException {
+        Objects.checkFromIndexSize(offset, length, text.length());
+        return isDerived(text, offset, length, false, ChartPolicy.DEFAULT, CYKWorkspace.current(), null);
+    }
+
+    /**
+     * Método que indica si un fragmento de un vector de caracteres pertenece
+     * al lenguaje de la gramática, sin copiarlo.
+     *
+     * @param text Vector que contiene la palabra.
+     * @param offset Posición del primer carácter de la palabra.
+     * @param length Longitud de la palabra.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     *
+     * @throws IndexOutOfBoundsException Si el fragmento se sale del vector.
+     */
+    public boolean isDerived(char[] text, int offset, int length) throws CFGAlgorithmsException {
+        Objects.checkFromIndexSize(offset, length, text.length);
+        return isDerived(text, offset, length, false, ChartPolicy.DEFAULT, CYKWorkspace.current(), null);
+    }
+
+    boolean isDerived(CharSequence word, boolean topDown, ChartPolicy policy, CYKWorkspace workspace) throws CFGAlgorithmsException {
+        return isDerived(word, 0, word.length(), topDown, policy, workspace, null);
+    }
+
+    /**
+     * CYK sobre un fragmento de un texto. Con un testigo distinto de null el
+     * análisis se detiene con CYKAbortedException si se cancela o vence.
+     */
+    boolean isDerived(CharSequence text, int offset, int n, boolean topDown, ChartPolicy policy, CYKWorkspace workspace, CancellationToken token) throws CFGAlgorithmsException {
+        if (n == 0) {
+            return startDerivesLambda;
+        }
+        int[] symbols = workspace.symbols(n);
+        for (int i = 0; i < n; i++) {
+            symbols[i] = checkedTerminalClass(text.charAt(offset + i));
+        }
+        return recognize(symbols, n, topDown, policy, workspace, token);
+    }
+
+    boolean isDerived(char[] text, int offset, int n, boolean topDown, ChartPolicy policy, CYKWorkspace workspace, CancellationToken token) throws CFGAlgorithmsException {
+        if (n == 0) {
+            return startDerivesLambda;
+        }
+        int[] symbols = workspace.symbols(n);
+        for (int i = 0; i < n; i++) {
+            symbols[i] = checkedTerminalClass(text[offset + i]);
+        }
+        return recognize(symbols, n, topDown, policy, workspace, token);
+    }
+
+    /**
+     * CYK sobre una palabra ya traducida a clases de terminales, con la tabla
+     * reservada según el criterio indicado (en el heap, fuera de él o en un
+     * fichero proyectado). Las tablas fuera del heap se liberan antes de
+     * volver; las del heap se quedan en el espacio de trabajo. El testigo de
+     * cancelación puede ser null.
+     */
+    boolean recognize(int[] symbols, int n, boolean topDown, ChartPolicy policy, CYKWorkspace workspace, CancellationToken token) throws CFGAlgorithmsException {
+        if (!filter.accepts(symbols, n)) {
+            return false;
+        }
+        if (policy.sparse) {
+            return isDerivedSparse(workspace.sparseChart(n, words), symbols, n, topDown, token);
+        }
+        try (CYKChart chart = policy.allocate(n, cellCount(n) * words, workspace)) {
+            if (!fill(chart, symbols, n, n, topDown, token)) {
+                throw token.aborted();
+            }
+            long top = cell(n, 0, n) * words;
+            return (chart.get(top + (start >>> 6)) & (1L << start)) != 0;
+        } catch (IOException ex) {
+            throw new CFGAlgorithmsException("No se ha podido reservar la tabla CYK: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Rellena las celdas de longitud 1 a maxLength de una tabla CYK a cero
+     * para una palabra de longitud n. Las posiciones con clase -1 (caracteres
+     * que no son terminales) quedan vacías, así que ninguna celda que las
+     * contenga deriva nada. La tabla debe tener bandCells(n, maxLength)
+     * celdas.
+     *
+     * Antes de cada longitud se consulta el testigo de cancelación (si no es
+     * null); devuelve FALSE si se ha detenido sin terminar.
+     */
+    boolean fill(CYKChart chart, int[] symbols, int n, int maxLength, boolean topDown, CancellationToken token) {
+        int w = words;
+        for (int s = 0; s < n; s++) {
+            if (symbols[s] >= 0) {
+                for (int k = 0; k < w; k++) {
+                    chart.set((long) s * w + k, classRows.get(symbols[s] * w + k));
+                }
+            }
+            if (topDown) {
+                prune(chart, (long) s * w, n, s, 1);
+            }
+        }
+        for (int l = 2; l <= maxLength; l++) {
+            if (token != null && token.shouldStop()) {
+                return false;
+            }
+            fillDiagonal(chart, n, l, 0, n - l + 1, topDown);
+        }
+        return true;
+    }
+
+    /**
+     * Rellena las celdas de longitud l que empiezan en las posiciones from a
+     * to - 1. Sólo escribe en esas celdas, así que varios hilos pueden
+     * rellenar a la vez trozos distintos de la misma diagonal.
+     */
+    private void fillDiagonal(CYKChart chart, int n, int l, int from, int to, boolean topDown) {
+        int w = words;
+        for (int s = from; s < to; s++) {
+            long dst = cell(n, s, l) * w;
+            for (int p = 1; p < l; p++) {
+                join(chart, cell(n, s, p) * w, cell(n, s + p, l - p) * w, dst, l);
+            }
+            if (topDown) {
+                prune(chart, dst, n, s, l);
+            }
+        }
+    }
+
+    /**
+     * CYK de una palabra larga repartiendo cada diagonal de la tabla entre
+     * tareas de fork/join: las celdas de una misma longitud son
+     * independientes, y cada diagonal espera a que termine la anterior. Se
+     * debe llamar desde un hilo de un ForkJoinPool para que los demás hilos
+     * del pool puedan robar los trozos. La tabla es siempre la del
+     * espacio de trabajo o fuera del heap (nunca dispersa).
+     */
+    boolean recognizeParallel(int[] symbols, int n, int parts, CYKWorkspace workspace, CancellationToken token) throws CFGAlgorithmsException {
+        if (!filter.accepts(symbols, n)) {
+            return false;
+        }
+        try (CYKChart chart = ChartPolicy.DEFAULT.allocate(n, cellCount(n) * words, workspace)) {
+            fill(chart, symbols, n, 1, false, null);
+            for (int l = 2; l <= n; l++) {
+                if (token != null && token.shouldStop()) {
+                    throw token.aborted();
+                }
+                int cells = n - l + 1;
+                int count = Math.max(1, Math.min(parts, cells / MIN_PARALLEL_CELLS));
+                if (count == 1) {
+                    fillDiagonal(chart, n, l, 0, cells, false);
+                    continue;
+                }
+                ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[count];
+                for (int i = 0; i < count; i++) {
+                    int from = (int) ((long) cells * i / count);
+                    int to = (int) ((long) cells * (i + 1) / count);
+                    int length = l;
+                    tasks[i] = ForkJoinTask.adapt(() -> fillDiagonal(chart, n, length, from, to, false));
+                }
+                ForkJoinTask.invokeAll(tasks);
+            }
+            long top = cell(n, 0, n) * words;
+            return (chart.get(top + (start >>> 6)) & (1L << start)) != 0;
+        } catch (IOException ex) {
+            throw new CFGAlgorithmsException("No se ha podido reservar la tabla CYK: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * CYK sobre una tabla dispersa: para cada celda sólo se prueban los puntos
+     * de corte cuya celda izquierda existe, y se descartan los que no tienen
+     * celda derecha.
+     */
+    private boolean isDerivedSparse(SparseChart chart, int[] symbols, int n, boolean topDown, CancellationToken token) throws CYKAbortedException {
+        int w = words;
+        int scratch = chart.scratch();
+        for (int s = 0; s < n; s++) {
+            for (int k = 0; k < w; k++) {
+                chart.set(scratch + k, classRows.get(symbols[s] * w + k));
+            }
+            if (topDown) {
+                prune(chart, scratch, n, s, 1);
+            }
+            chart.commit(s, 1);
+        }
+        for (int l = 2; l <= n; l++) {
+            if (token != null && token.shouldStop()) {
+                throw token.aborted();
+            }
+            for (int s = 0; s <= n - l; s++) {
+                for (int i = 0, m = chart.count(s); i < m; i++) {
+                    int p = chart.length(s, i);
+                    if (p >= l) {
+                        break;
+                    }
+                    int right = chart.find(s + p, l - p);
+                    if (right >= 0) {
+                        join(chart, chart.offset(s, i), right, scratch, l);
+                    }
+                }
+                if (topDown) {
+                    prune(chart, scratch, n, s, l);
+                }
+                chart.commit(s, l);
+            }
+        }
+        int top = chart.find(0, n);
+        return top >= 0 && (chart.get(top + (start >>> 6)) & (1L << start)) != 0;
+    }
+
+    /**
+     * Combina dos celdas de la tabla CYK: añade a la celda destino, de
+     * longitud l, todo A tal que A::=BC con B en la celda izquierda y C en la
+     * derecha. Se saltan las producciones cuyo A no deriva palabras de
+     * longitud l. Es escalar a propósito (véase BitKernel): recorre pares de
+     * producciones bit a bit, no hace OR de filas anchas.
+     */
+    void join(CYKChart chart, long left, long right, long dst, int l) {
+        for (int k = 0; k < words; k++) {
+            long bits = chart.get(left + k);
+            while (bits != 0) {
+                int b = (k << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                for (int e = pairOffsets.get(b), end = pairOffsets.get(b + 1); e < end; e++) {
+                    int c = pairRight.get(e);
+                    if ((chart.get(right + (c >>> 6)) & (1L << c)) != 0) {
+                        int a = pairHead.get(e);
+                        if (l >= minLength.get(a) && l <= maxLength.get(a)) {
+                            chart.or(dst + (a >>> 6), 1L << a);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Filtrado descendente: quita de la celda (s, l) de una palabra de
+     * longitud n los no terminales que no pueden aparecer en su contexto.
+     */
+    void prune(CYKChart chart, long cell, int n, int s, int l) {
+        int mask = ((s > 0 ? LEFT_CONTEXT : 0) | (s + l < n ? RIGHT_CONTEXT : 0)) * words;
+        for (int k = 0; k < words; k++) {
+            chart.and(cell + k, contextMasks.get(mask + k));
+        }
+    }
+
+    /**
+     * Traduce una palabra a las clases de sus terminales.
+     *
+     * @throws CFGAlgorithmsException Si algún carácter no es un terminal.
+     */
+    int[] toClasses(CharSequence word) throws CFGAlgorithmsException {
+        int[] symbols = new int[word.length()];
+        toClasses(word, symbols);
+        return symbols;
+    }
+
+    /**
+     * Traduce una palabra a las clases de sus terminales sobre un vector
+     * existente, que debe tener al menos su longitud.
+     */
+    void toClasses(CharSequence word, int[] symbols) throws CFGAlgorithmsException {
+        for (int i = 0, n = word.length(); i < n; i++) {
+            symbols[i] = checkedTerminalClass(word.charAt(i));
+        }
+    }
+
+    int checkedTerminalClass(char symbol) throws CFGAlgorithmsException {
+        int cls = terminalClass(symbol);
+        if (cls < 0) {
+            throw new CFGAlgorithmsException("La palabra contiene caracteres que no están en el conjunto de terminales.");
+        }
+        return cls;
+    }
+
+    /**
+     * Devuelve la clase de equivalencia del terminal, o -1 si el carácter no
+     * es un terminal de la gramática. Es una única consulta a la tabla.
+     */
+    int terminalClass(char symbol) {
+        int i = symbol - classBase;
+        return i < 0 || i >= classSpan ? -1 : classTable.get(i);
+    }
+
+    /**
+     * Indica si el no terminal de índice a puede derivar alguna palabra de
+     * longitud l.
+     */
+    boolean canDerive(int a, int l) {
+        return l >= minLength.get(a) && l <= maxLength.get(a);
+    }
+
+    /**
+     * Indica si el no terminal de índice a deriva alguna palabra.
+     */
+    boolean productive(int a) {
+        return minLength.get(a) != UNBOUNDED;
+    }
+
+    /**
+     * Devuelve el índice del no terminal en la tabla de símbolos, o -1 si no
+     * pertenece a la gramática. Es una única consulta a la tabla.
+     */
+    int nonterminalIndex(char symbol) {
+        int i = symbol - nonterminalBase;
+        return i < 0 || i >= nonterminalSpan ? -1 : nonterminalTable.get(i);
+    }
+
+    /**
+     * Número de celdas de la tabla triangular CYK para una palabra de longitud
+     * n.
+     */
+    static long cellCount(int n) {
+        return (long) n * (n + 1) / 2;
+    }
+
+    /**
+     * Número de celdas de longitud 1 a maxLength de la tabla CYK para una
+     * palabra de longitud n: como se guardan por longitudes crecientes, son
+     * las primeras de la tabla.
+     */
+    static long bandCells(int n, int maxLength) {
+        return maxLength >= n ? cellCount(n) : cell(n, 0, maxLength + 1);
+    }
+
+    /**
+     * Posición de la celda (inicio s, longitud l) en la tabla triangular CYK:
+     * las celdas se guardan por longitudes crecientes.
+     */
+    static long cell(int n, int s, int l) {
+        long k = l - 1;
+        return k * n - k * (k - 1) / 2 + s;
+    }
+
+    /**
+     * Método que devuelve el axioma de la gramática compilada.
+     *
+     * @return El axioma de la gramática.
+     */
+    public char getStartSymbol() {
+        return nonterminalSymbols.get(start);
+    }
+
+    /**
+     * Método que devuelve los no terminales en el orden de sus índices.
+     *
+     * @return Los no terminales de la gramática compilada.
+     */
+    public char[] getNonTerminals() {
+        char[] symbols = new char[nonterminalCount];
+        nonterminalSymbols.get(0, symbols);
+        return symbols;
+    }
+
+    /**
+     * Método que devuelve los terminales ordenados.
+     *
+     * @return Los terminales de la gramática compilada.
+     */
+    public char[] getTerminals() {
+        char[] symbols = new char[terminalCount];
+        terminalSymbols.get(0, symbols);
+        return symbols;
+    }
+
+    /**
+     * Método que devuelve el número de clases de equivalencia de terminales.
+     * Dos terminales están en la misma clase si aparecen exactamente en las
+     * mismas producciones.
+     *
+     * @return El número de clases, que nunca supera el de terminales.
+     */
+    public int getTerminalClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Método que devuelve los filtros que se aplican a cada palabra antes de
+     * ejecutar CYK, con sus estadísticas de rechazo.
+     *
+     * @return Los filtros de la gramática.
+     */
+    public WordFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Método que devuelve la longitud de la palabra más corta que deriva un no
+     * terminal.
+     *
+     * @param nonterminal Elemento no terminal de la gramática.
+     *
+     * @return La longitud mínima, o UNBOUNDED si no deriva ninguna palabra.
+     *
+     * @throws CFGAlgorithmsException Si el no terminal no pertenece a la
+     * gramática.
+     */
+    public int getMinLength(char nonterminal) throws CFGAlgorithmsException {
+        return minLength.get(checkedNonterminalIndex(nonterminal));
+    }
+
+    /**
+     * Método que devuelve la longitud de la palabra más larga que deriva un
+     * no terminal.
+     *
+     * @param nonterminal Elemento no terminal de la gramática.
+     *
+     * @return La longitud máxima, UNBOUNDED si es recursivo o 0 si no deriva
+     * ninguna palabra.
+     *
+     * @throws CFGAlgorithmsException Si el no terminal no pertenece a la
+     * gramática.
+     */
+    public int getMaxLength(char nonterminal) throws CFGAlgorithmsException {
+        return maxLength.get(checkedNonterminalIndex(nonterminal));
+    }
+
+    int checkedNonterminalIndex(char nonterminal) throws CFGAlgorithmsException {
+        int a = nonterminalIndex(nonterminal);
+        if (a < 0) {
+            throw new CFGAlgorithmsException("El elemento no pertenece a la gramática.");
+        }
+        return a;
+    }
+
+    /**
+     * Método que devuelve la huella de la gramática compilada: un hash de su
+     * formato binario que no cambia entre ejecuciones, para reconocer los
+     * resultados guardados con la misma gramática.
+     *
+     * @return La huella de 64 bits.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Método que devuelve el número de producciones de la forma A::=BC.
+     *
+     * @return El número de producciones binarias.
+     */
+    public int getBinaryProductionCount() {
+        return pairCount;
+    }
+
+    int nonterminalCount() {
+        return nonterminalCount;
+    }
+
+    int words() {
+        return words;
+    }
+
+    int start() {
+        return start;
+    }
+
+    boolean startDerivesLambda() {
+        return startDerivesLambda;
+    }
+
+    int classCount() {
+        return classCount;
+    }
+
+    long classRow(int terminalClass, int word) {
+        return classRows.get(terminalClass * words + word);
+    }
+
+    int pairOffset(int left) {
+        return pairOffsets.get(left);
+    }
+
+    int pairRight(int pair) {
+        return pairRight.get(pair);
+    }
+
+    int pairHead(int pair) {
+        return pairHead.get(pair);
+    }
+
+    private ByteBuffer section(int from, int to) {
+        return data.slice(from, to - from).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Calcula los desplazamientos de cada sección del formato: filas de las
+     * clases de terminales, símbolos no terminales, símbolos terminales, tabla
+     * char -> clase, tabla char -> no terminal, offsets CSR, hijos derechos,
+     * cabezas, longitudes mínimas y máximas, máscaras de contexto, primeros y
+     * últimos terminales, bigramas y el tamaño total.
+     */
+    private static int[] layout(int r, int t, int q, int span, int ntSpan, int m) {
+        int w = wordsFor(r);
+        int cw = wordsFor(q);
+        int[] offsets = new int[15];
+        offsets[0] = HEADER_BYTES;
+        offsets[1] = offsets[0] + 8 * q * w;
+        offsets[2] = offsets[1] + 2 * r;
+        offsets[3] = offsets[2] + 2 * t;
+        offsets[4] = offsets[3] + 2 * span;
+        offsets[5] = align4(offsets[4] + 2 * ntSpan);
+        offsets[6] = offsets[5] + 4 * (r + 1);
+        offsets[7] = offsets[6] + 4 * m;
+        offsets[8] = offsets[7] + 4 * m;
+        offsets[9] = offsets[8] + 4 * r;
+        offsets[10] = align8(offsets[9] + 4 * r);
+        offsets[11] = offsets[10] + 8 * 4 * w;
+        offsets[12] = offsets[11] + 8 * cw;
+        offsets[13] = offsets[12] + 8 * cw;
+        offsets[14] = offsets[13] + 8 * Math.max(1, q * cw);
+        return offsets;
+    }
+
+    private static int align4(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    private static int align8(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    static int wordsFor(int symbols) {
+        return Math.max(1, (symbols + 63) >>> 6);
+    }
+
+    private static char[] toArray(Set<Character> symbols) {
+        char[] array = new char[symbols.size()];
+        int i = 0;
+        for (char symbol : new TreeSet<>(symbols)) {
+            array[i++] = symbol;
+        }
+        return array;
+    }
+
+    private static int indexOf(char[] sorted, char symbol) throws CFGAlgorithmsException {
+        int i = Arrays.binarySearch(sorted, symbol);
+        if (i < 0) {
+            throw new CFGAlgorithmsException("La producción utiliza el símbolo '" + symbol + "' que no está definido.");
+        }
+        return i;
+    }
+}
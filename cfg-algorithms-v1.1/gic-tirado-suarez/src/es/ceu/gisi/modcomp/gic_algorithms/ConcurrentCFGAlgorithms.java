@@ -0,0 +1,865 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+import es.ceu.gisi.modcomp.gic_algorithms.interfaces.*;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/**
+ * Variante de CFGAlgorithms que admite modificar la gramática mientras otros
+ * hilos la consultan o ejecutan el algoritmo CYK.
+ *
+ * Las escrituras se serializan con el cerrojo de escritura de un StampedLock,
+ * se aplican sobre un CFGAlgorithms interno y descartan la instantánea
+ * vigente. La primera lectura posterior publica una nueva a partir de
+ * CFGAlgorithms.snapshot(), que comparte la estructura de la gramática en
+ * lugar de copiarla, así que construir una gramática con muchas escrituras
+ * seguidas cuesta lo mismo que en CFGAlgorithms. El texto de la gramática,
+ * los análisis (isCNF, hasUnitProductions...) y la versión compilada para
+ * CYK se calculan una sola vez por instantánea, con la primera lectura que
+ * los necesita.
+ *
+ * Las lecturas no toman ningún cerrojo: la instantánea es inmutable y se
+ * publica en un campo volatile, así que basta con leerlo. Una lectura que
+ * coincide con una escritura ve la gramática anterior o la posterior, nunca
+ * un estado intermedio. Sólo la primera lectura tras una escritura toma el
+ * cerrojo de escritura, para publicar la instantánea siguiente.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class ConcurrentCFGAlgorithms implements CFGInterface, WFCFGInterface, CNFInterface, CYKInterface {
+
+    private final CFGAlgorithms grammar = new CFGAlgorithms();
+    private final StampedLock lock = new StampedLock();
+    private volatile Snapshot snapshot; // null tras cada escritura, hasta la siguiente lectura.
+    private volatile boolean topDownFiltering = false;
+    private volatile ChartPolicy chartPolicy = ChartPolicy.DEFAULT;
+    private volatile MembershipCache resultCache;
+    private volatile ResultStore resultStore;
+    private volatile TransformationReport transformationReport;
+
+    /**
+     * Operación de escritura sobre la gramática interna.
+     */
+    private interface Mutation<T> {
+
+        T apply(CFGAlgorithms grammar) throws CFGAlgorithmsException;
+    }
+
+    /**
+     * Estado inmutable de la gramática en un instante dado. Todas las
+     * lecturas se resuelven sobre una instantánea, nunca sobre el
+     * CFGAlgorithms interno. Lo que se deriva de la gramática completa se
+     * calcula sobre una copia restaurada a la versión la primera vez que se
+     * pide.
+     */
+    private static final class Snapshot {
+
+        final GrammarVersion grammar;
+        final long version;
+        private CFGAlgorithms view; // restaurada a la versión, sólo se usa con el monitor de la instantánea.
+        private final Map<Character, String> rendered = new ConcurrentHashMap<>();
+        final Lazy<String> text = new Lazy<>(CFGAlgorithms::getGrammar);
+        final Lazy<Boolean> cnf = new Lazy<>(CFGAlgorithms::isCNF);
+        final Lazy<Boolean> uselessProductions = new Lazy<>(CFGAlgorithms::hasUselessProductions);
+        final Lazy<Boolean> lambdaProductions = new Lazy<>(CFGAlgorithms::hasLambdaProductions);
+        final Lazy<Boolean> unitProductions = new Lazy<>(CFGAlgorithms::hasUnitProductions);
+        final Lazy<Compilation> compilation = new Lazy<>(this::compile);
+
+        Snapshot(GrammarVersion grammar, long version) {
+            this.grammar = grammar;
+            this.version = version;
+        }
+
+        /**
+         * Valor de la instantánea que se calcula la primera vez que se pide.
+         * Nunca es null una vez calculado.
+         */
+        final class Lazy<T> {
+
+            private final Function<CFGAlgorithms, T> function;
+            private volatile T value;
+
+            Lazy(Function<CFGAlgorithms, T> function) {
+                this.function = function;
+            }
+
+            T get() {
+                T result = value;
+                if (result == null) {
+                    synchronized (Snapshot.this) {
+                        result = value;
+                        if (result == null) {
+                            value = result = function.apply(view());
+                        }
+                    }
+                }
+                return result;
+            }
+        }
+
+        /**
+         * Resultado de compilar la gramática: la versión compilada, o el
+         * motivo por el que no se ha podido compilar (ambos null si no está
+         * en FNC o está vacía).
+         */
+        static final class Compilation {
+
+            final CompiledGrammar compiled;
+            final String error;
+
+            Compilation(CompiledGrammar compiled, String error) {
+                this.compiled = compiled;
+                this.error = error;
+            }
+        }
+
+        private CFGAlgorithms view() {
+            if (view == null) {
+                view = new CFGAlgorithms();
+                view.restore(grammar);
+            }
+            return view;
+        }
+
+        private Compilation compile(CFGAlgorithms view) {
+            if (!cnf.get() || grammar.startsymbol == null || grammar.productions.isEmpty()) {
+                return new Compilation(null, null);
+            }
+            try {
+                return new Compilation(CompiledGrammar.compile(view), null);
+            } catch (CFGAlgorithmsException e) {
+                return new Compilation(null, e.getMessage());
+            }
+        }
+
+        CompiledGrammar compiled() {
+            return compilation.get().compiled;
+        }
+
+        String productionsToString(char nonterminal) {
+            return rendered.computeIfAbsent(nonterminal, key -> {
+                synchronized (this) {
+                    return view().getProductionsToString(key);
+                }
+            });
+        }
+
+        synchronized String algorithmCYKStateToString(String word) throws CFGAlgorithmsException {
+            return view().algorithmCYKStateToString(word);
+        }
+    }
+
+    /**
+     * Devuelve la instantánea vigente. Si un escritor la ha descartado,
+     * publica una nueva con el cerrojo de escritura: tomarla marca como
+     * compartidas las estructuras del CFGAlgorithms interno, así que no puede
+     * solaparse con una modificación.
+     */
+    private Snapshot read() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        long stamp = lock.writeLock();
+        try {
+            current = snapshot;
+            if (current == null) {
+                current = new Snapshot(grammar.snapshot(), grammar.getVersion());
+                snapshot = current;
+            }
+            return current;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Aplica una modificación en exclusiva y descarta la instantánea vigente,
+     * también si la modificación ha fallado a medias.
+     */
+    private <T> T write(Mutation<T> mutation) throws CFGAlgorithmsException {
+        long stamp = lock.writeLock();
+        try {
+            snapshot = null;
+            return mutation.apply(grammar);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Igual que write(Mutation), para operaciones que no lanzan
+     * CFGAlgorithmsException.
+     */
+    private <T> T update(Mutation<T> mutation) {
+        try {
+            return write(mutation);
+        } catch (CFGAlgorithmsException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Método que añade un elemento no terminal a la gramática, como
+     * CFGAlgorithms.addNonTerminal.
+     *
+     * @param nonterminal El no terminal a añadir.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.addNonTerminal.
+     */
+    public void addNonTerminal(char nonterminal) throws CFGAlgorithmsException {
+        write(g -> {
+            g.addNonTerminal(nonterminal);
+            return null;
+        });
+    }
+
+    /**
+     * Método que elimina un elemento no terminal y sus producciones, como
+     * CFGAlgorithms.removeNonTerminal.
+     *
+     * @param nonterminal El no terminal a eliminar.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.removeNonTerminal.
+     */
+    public void removeNonTerminal(char nonterminal) throws CFGAlgorithmsException {
+        write(g -> {
+            g.removeNonTerminal(nonterminal);
+            return null;
+        });
+    }
+
+    /**
+     * Método que devuelve un conjunto con todos los símbolos no terminales de
+     * la gramática.
+     *
+     * @return Un conjunto inmutable con los no terminales definidos.
+     */
+    public Set<Character> getNonTerminals() {
+        return read().grammar.getNonTerminals();
+    }
+
+    /**
+     * Método que añade un elemento terminal a la gramática, como
+     * CFGAlgorithms.addTerminal.
+     *
+     * @param terminal El terminal a añadir.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.addTerminal.
+     */
+    public void addTerminal(char terminal) throws CFGAlgorithmsException {
+        write(g -> {
+            g.addTerminal(terminal);
+            return null;
+        });
+    }
+
+    /**
+     * Método que elimina un elemento terminal y las producciones que lo
+     * contienen, como CFGAlgorithms.removeTerminal.
+     *
+     * @param terminal El terminal a eliminar.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.removeTerminal.
+     */
+    public void removeTerminal(char terminal) throws CFGAlgorithmsException {
+        write(g -> {
+            g.removeTerminal(terminal);
+            return null;
+        });
+    }
+
+    /**
+     * Método que devuelve un conjunto con todos los símbolos terminales de la
+     * gramática.
+     *
+     * @return Un conjunto inmutable con los terminales definidos.
+     */
+    public Set<Character> getTerminals() {
+        return read().grammar.getTerminals();
+    }
+
+    /**
+     * Método que establece el axioma de la gramática, como
+     * CFGAlgorithms.setStartSymbol.
+     *
+     * @param nonterminal El no terminal que será el axioma.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.setStartSymbol.
+     */
+    public void setStartSymbol(char nonterminal) throws CFGAlgorithmsException {
+        write(g -> {
+            g.setStartSymbol(nonterminal);
+            return null;
+        });
+    }
+
+    /**
+     * Método que devuelve el axioma de la instantánea vigente.
+     *
+     * @return El axioma de la gramática.
+     *
+     * @throws CFGAlgorithmsException Si el axioma no ha sido establecido.
+     */
+    public Character getStartSymbol() throws CFGAlgorithmsException {
+        Character axiom = read().grammar.startsymbol;
+        if (axiom == null) {
+            throw new CFGAlgorithmsException("El axioma no a sido establecido.");
+        }
+        return axiom;
+    }
+
+    /**
+     * Método que añade una producción a un no terminal, como
+     * CFGAlgorithms.addProduction.
+     *
+     * @param nonterminal El no terminal de la parte izquierda.
+     * @param production La parte derecha de la producción.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.addProduction.
+     */
+    public void addProduction(char nonterminal, String production) throws CFGAlgorithmsException {
+        write(g -> {
+            g.addProduction(nonterminal, production);
+            return null;
+        });
+    }
+
+    /**
+     * Método que elimina una producción de un no terminal, como
+     * CFGAlgorithms.removeProduction.
+     *
+     * @param nonterminal El no terminal de la parte izquierda.
+     * @param production La parte derecha de la producción.
+     *
+     * @return TRUE si se ha eliminado.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.removeProduction.
+     */
+    public boolean removeProduction(char nonterminal, String production) throws CFGAlgorithmsException {
+        return write(g -> g.removeProduction(nonterminal, production));
+    }
+
+    /**
+     * Devuelve una lista de String que representan todas las producciones que
+     * han sido agregadas a un elemento no terminal.
+     *
+     * @param nonterminal Elemento no terminal del que se buscan las
+     * producciones
+     *
+     * @return Una lista inmutable con la parte derecha de cada producción.
+     */
+    public List<String> getProductions(char nonterminal) {
+        return read().grammar.getProductions(nonterminal);
+    }
+
+    /**
+     * Método que devuelve las producciones de un no terminal con el formato
+     * de CFGAlgorithms.getProductionsToString. Se genera una vez por
+     * instantánea.
+     *
+     * @param nonterminal Elemento no terminal del que se buscan las
+     * producciones.
+     *
+     * @return Las producciones, o "" si el no terminal no tiene.
+     */
+    public String getProductionsToString(char nonterminal) {
+        return read().productionsToString(nonterminal);
+    }
+
+    /**
+     * Método que devuelve la gramática completa con el formato de
+     * CFGAlgorithms.getGrammar. Se genera una vez por instantánea.
+     *
+     * @return La gramática de la instantánea vigente.
+     */
+    public String getGrammar() {
+        return read().text.get();
+    }
+
+    /**
+     * Método que elimina todos los elementos de la gramática, como
+     * CFGAlgorithms.deleteGrammar.
+     */
+    public void deleteGrammar() {
+        update(g -> {
+            g.deleteGrammar();
+            return null;
+        });
+    }
+
+    /**
+     * Método que indica si la gramática es independiente del contexto. Lo es
+     * siempre, porque las producciones sólo admiten un no terminal a la
+     * izquierda.
+     *
+     * @return TRUE.
+     */
+    public boolean isCFG() {
+        return true;
+    }
+
+    /**
+     * Método que indica si la gramática tiene reglas innecesarias (A::=A),
+     * como CFGAlgorithms.hasUselessProductions. Se calcula una vez por
+     * instantánea.
+     *
+     * @return TRUE si tiene alguna.
+     */
+    public boolean hasUselessProductions() {
+        return read().uselessProductions.get();
+    }
+
+    /**
+     * Método que elimina las reglas innecesarias, como
+     * CFGAlgorithms.removeUselessProductions.
+     *
+     * @return Las producciones eliminadas.
+     */
+    public List<String> removeUselessProductions() {
+        return update(CFGAlgorithms::removeUselessProductions);
+    }
+
+    /**
+     * Método que elimina los símbolos no generativos e inaccesibles, como
+     * CFGAlgorithms.removeUselessSymbols.
+     *
+     * @return Los símbolos eliminados.
+     */
+    public List<Character> removeUselessSymbols() {
+        return update(CFGAlgorithms::removeUselessSymbols);
+    }
+
+    /**
+     * Método que indica si la gramática tiene reglas no generativas, como
+     * CFGAlgorithms.hasLambdaProductions. Se calcula una vez por
+     * instantánea.
+     *
+     * @return TRUE si tiene alguna.
+     */
+    public boolean hasLambdaProductions() {
+        return read().lambdaProductions.get();
+    }
+
+    /**
+     * Método que elimina las reglas no generativas, como
+     * CFGAlgorithms.removeLambdaProductions.
+     *
+     * @return Los no terminales que tenían reglas no generativas.
+     */
+    public List<Character> removeLambdaProductions() {
+        return update(CFGAlgorithms::removeLambdaProductions);
+    }
+
+    /**
+     * Método que indica si la gramática tiene reglas unitarias, como
+     * CFGAlgorithms.hasUnitProductions. Se calcula una vez por instantánea.
+     *
+     * @return TRUE si tiene alguna.
+     */
+    public boolean hasUnitProductions() {
+        return read().unitProductions.get();
+    }
+
+    /**
+     * Método que elimina las reglas unitarias, como
+     * CFGAlgorithms.removeUnitProductions.
+     *
+     * @return Lo mismo que CFGAlgorithms.removeUnitProductions.
+     */
+    public List<String> removeUnitProductions() {
+        return update(CFGAlgorithms::removeUnitProductions);
+    }
+
+    /**
+     * Método que transforma la gramática en una gramática bien formada, como
+     * CFGAlgorithms.transformToWellFormedGrammar, y guarda el resumen de la
+     * transformación.
+     */
+    public void transformToWellFormedGrammar() {
+        transformationReport = update(g -> {
+            g.transformToWellFormedGrammar();
+            return g.getTransformationReport();
+        });
+    }
+
+    /**
+     * Método que devuelve el resumen de la última llamada a
+     * transformToWellFormedGrammar(), como en CFGAlgorithms.
+     *
+     * @return El resumen, o null si todavía no se ha transformado la
+     * gramática.
+     */
+    public TransformationReport getTransformationReport() {
+        return transformationReport;
+    }
+
+    /**
+     * Método que comprueba si una producción está en Forma Normal de
+     * Chomsky, como CFGAlgorithms.checkCNFProduction. Sólo lee la gramática,
+     * así que se ejecuta con el cerrojo de lectura.
+     *
+     * @param nonterminal El no terminal de la parte izquierda.
+     * @param production La parte derecha de la producción.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.checkCNFProduction.
+     */
+    public void checkCNFProduction(char nonterminal, String production) throws CFGAlgorithmsException {
+        long stamp = lock.readLock(); // sólo lee el axioma, puede compartirse con otros lectores.
+        try {
+            grammar.checkCNFProduction(nonterminal, production);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Método que indica si la gramática está en Forma Normal de Chomsky, como
+     * CFGAlgorithms.isCNF. Se calcula una vez por instantánea.
+     *
+     * @return TRUE si está en FNC.
+     */
+    public boolean isCNF() {
+        return read().cnf.get();
+    }
+
+    /**
+     * Método que transforma la gramática a Forma Normal de Chomsky, como
+     * CFGAlgorithms.transformIntoCNF.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.transformIntoCNF.
+     */
+    public void transformIntoCNF() throws CFGAlgorithmsException {
+        write(g -> {
+            g.transformIntoCNF();
+            return null;
+        });
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje generado por la
+     * gramática. Se ejecuta sin cerrojos sobre la gramática compilada de la
+     * instantánea vigente, por lo que no bloquea ni es bloqueado por otros
+     * lectores.
+     *
+     * @param word La palabra a verificar, tiene que estar formada sólo por
+     * elementos terminales.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.isDerivedUsignCYK.
+     */
+    public boolean isDerivedUsignCYK(String word) throws CFGAlgorithmsException {
+        return isDerivedUsignCYK(word, 0, word.length());
+    }
+
+    /**
+     * Método que indica si un fragmento de un texto (por ejemplo un
+     * CharBuffer) pertenece al lenguaje, sin copiarlo, como
+     * CFGAlgorithms.isDerivedUsignCYK(CharSequence, int, int).
+     *
+     * @param text Texto que contiene la palabra.
+     * @param offset Posición del primer carácter de la palabra.
+     * @param length Longitud de la palabra.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.isDerivedUsignCYK.
+     */
+    public boolean isDerivedUsignCYK(CharSequence text, int offset, int length) throws CFGAlgorithmsException {
+        Objects.checkFromIndexSize(offset, length, text.length());
+        return recognize(text, null, offset, length, null, CYKWorkspace.current());
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje, deteniendo el
+     * análisis si se cancela el testigo o vence su plazo, como
+     * CFGAlgorithms.isDerivedUsignCYK(String, CancellationToken).
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param token Testigo de cancelación.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CYKAbortedException Si el análisis se ha detenido antes de
+     * terminar.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.isDerivedUsignCYK.
+     */
+    public boolean isDerivedUsignCYK(String word, CancellationToken token) throws CFGAlgorithmsException {
+        return isDerivedUsignCYK(word, token, CYKWorkspace.current());
+    }
+
+    /**
+     * Igual que isDerivedUsignCYK(String, CancellationToken), con un espacio
+     * de trabajo explícito en lugar del del hilo actual.
+     */
+    boolean isDerivedUsignCYK(String word, CancellationToken token, CYKWorkspace workspace) throws CFGAlgorithmsException {
+        return recognize(word, null, 0, word.length(), Objects.requireNonNull(token), workspace);
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje con un tiempo
+     * máximo de análisis, como CFGAlgorithms.isDerivedUsignCYK(String,
+     * Duration).
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param timeout Tiempo máximo de análisis.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CYKAbortedException Si se agota el tiempo antes de terminar.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.isDerivedUsignCYK.
+     */
+    public boolean isDerivedUsignCYK(String word, Duration timeout) throws CFGAlgorithmsException {
+        return isDerivedUsignCYK(word, CancellationToken.withTimeout(timeout));
+    }
+
+    /**
+     * Camino común de las consultas CYK de una palabra. La palabra llega en
+     * text o en chars (el otro es null) para que un vector se analice sin
+     * envolverlo; sólo se envuelve para usar la caché.
+     */
+    private boolean recognize(CharSequence text, char[] chars, int offset, int length, CancellationToken token, CYKWorkspace workspace) throws CFGAlgorithmsException {
+        Snapshot current = cykSnapshot(length);
+        if (length == 0) {
+            return false;
+        }
+        if (resultCache != null || resultStore != null) {
+            return isDerivedCached(current, text != null ? text : CharBuffer.wrap(chars), offset, length, token, workspace);
+        }
+        return text != null
+                ? current.compiled().isDerived(text, offset, length, topDownFiltering, chartPolicy, workspace, token)
+                : current.compiled().isDerived(chars, offset, length, topDownFiltering, chartPolicy, workspace, token);
+    }
+
+    /**
+     * Método que indica si un fragmento de un vector de caracteres pertenece
+     * al lenguaje, sin copiarlo.
+     *
+     * @param text Vector que contiene la palabra.
+     * @param offset Posición del primer carácter de la palabra.
+     * @param length Longitud de la palabra.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.isDerivedUsignCYK.
+     */
+    public boolean isDerivedUsignCYK(char[] text, int offset, int length) throws CFGAlgorithmsException {
+        Objects.checkFromIndexSize(offset, length, text.length);
+        return recognize(null, text, offset, length, null, CYKWorkspace.current());
+    }
+
+    /**
+     * Método que indica qué palabras de un lote pertenecen al lenguaje,
+     * analizando una sola vez los prefijos comunes, como
+     * CFGAlgorithms.isDerivedUsignCYK(List).
+     *
+     * @param words Las palabras a verificar, formadas sólo por terminales.
+     *
+     * @return Un vector con el resultado de cada palabra, en el orden del
+     * lote.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.isDerivedUsignCYK.
+     */
+    public boolean[] isDerivedUsignCYK(List<String> words) throws CFGAlgorithmsException {
+        int longest = 0;
+        for (String word : words) {
+            longest = Math.max(longest, word.length());
+        }
+        Snapshot current = cykSnapshot(longest);
+        if (current == null) {
+            return new boolean[words.size()];
+        }
+        boolean[] results = new PrefixSharingRecognizer(current.compiled()).isDerived(words);
+        for (int i = 0; i < results.length; i++) {
+            results[i] &= !words.get(i).isEmpty();
+        }
+        return results;
+    }
+
+    private boolean isDerivedCached(Snapshot current, CharSequence text, int offset, int length, CancellationToken token, CYKWorkspace workspace) throws CFGAlgorithmsException {
+        MembershipCache cache = resultCache;
+        ResultStore store = resultStore;
+        if (cache != null) {
+            int cached = cache.get(current.version, text, offset, length);
+            if (cached != MembershipCache.ABSENT) {
+                return cached == 1;
+            }
+        }
+        CompiledGrammar compiled = current.compiled();
+        boolean derived;
+        int stored = store == null ? ResultStore.ABSENT : store.getOrAbsent(compiled.getFingerprint(), text, offset, length);
+        if (stored != ResultStore.ABSENT) {
+            derived = stored == 1;
+        } else {
+            derived = compiled.isDerived(text, offset, length, topDownFiltering, chartPolicy, workspace, token);
+            if (store != null) {
+                store.putOrSkip(compiled.getFingerprint(), text, offset, length, derived);
+            }
+        }
+        if (cache != null) {
+            cache.put(current.version, text, offset, length, derived);
+        }
+        return derived;
+    }
+
+    /**
+     * Método que analiza una palabra con el algoritmo CYK y devuelve su tabla
+     * completa, como CFGAlgorithms.parseUsignCYK.
+     *
+     * @param word La palabra a analizar, no vacía y formada sólo por
+     * terminales.
+     *
+     * @return La tabla CYK de la palabra.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.parseUsignCYK.
+     */
+    public ParseChart parseUsignCYK(String word) throws CFGAlgorithmsException {
+        Snapshot current = cykSnapshot(word.length());
+        if (current == null) {
+            throw new CFGAlgorithmsException("La palabra vacía no tiene tabla CYK.");
+        }
+        return current.compiled().parse(word);
+    }
+
+    /**
+     * Comprueba que se puede ejecutar CYK sobre la instantánea vigente y la
+     * devuelve (null si la palabra es vacía). Los caracteres de la palabra
+     * los valida la gramática compilada de la instantánea.
+     */
+    private Snapshot cykSnapshot(int length) throws CFGAlgorithmsException {
+        Snapshot current = read();
+        if (!current.cnf.get()) {
+            throw new CFGAlgorithmsException("La gramática no está en Forma Normal de Chomsky.");
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (current.grammar.productions.isEmpty() || current.grammar.startsymbol == null) {
+            throw new CFGAlgorithmsException("La gramática está vacía o no tiene axioma.");
+        }
+        Snapshot.Compilation compilation = current.compilation.get();
+        if (compilation.compiled == null) {
+            throw new CFGAlgorithmsException(compilation.error);
+        }
+        return current;
+    }
+
+    /**
+     * Método que activa o desactiva el filtrado descendente de CYK, como
+     * CFGAlgorithms.setTopDownFiltering.
+     *
+     * @param topDownFiltering TRUE para activarlo (desactivado por defecto).
+     */
+    public void setTopDownFiltering(boolean topDownFiltering) {
+        this.topDownFiltering = topDownFiltering;
+    }
+
+    /**
+     * Método que fija la longitud de palabra a partir de la cual la tabla CYK
+     * se reserva fuera del heap, en memoria directa que se libera en cuanto
+     * termina el análisis en lugar de esperar al recolector de basura.
+     *
+     * @param length Longitud mínima de las palabras que usan una tabla fuera
+     * del heap (4096 por defecto).
+     */
+    public synchronized void setOffHeapChartThreshold(int length) {
+        chartPolicy = chartPolicy.withOffHeapLength(length);
+    }
+
+    /**
+     * Método que permite guardar las tablas CYK muy grandes en un fichero
+     * temporal proyectado en memoria, para palabras cuya tabla no cabe en
+     * RAM. El fichero se borra al terminar cada análisis.
+     *
+     * @param directory Directorio de los ficheros temporales, o null para no
+     * usar nunca ficheros (por defecto).
+     * @param bytes Tamaño a partir del cual la tabla se guarda en un fichero.
+     */
+    public synchronized void setMappedChart(Path directory, long bytes) {
+        chartPolicy = chartPolicy.withMapped(directory, bytes);
+    }
+
+    /**
+     * Método que activa la tabla CYK dispersa, que sólo guarda las celdas no
+     * vacías. Conviene con palabras largas cuya tabla está casi vacía.
+     *
+     * @param sparse TRUE para usar la tabla dispersa (desactivada por
+     * defecto).
+     */
+    public synchronized void setSparseChart(boolean sparse) {
+        chartPolicy = chartPolicy.withSparse(sparse);
+    }
+
+    /**
+     * Método que asocia una caché de resultados a isDerivedUsignCYK, como
+     * CFGAlgorithms.setResultCache. La caché admite accesos concurrentes.
+     *
+     * @param cache La caché, o null para no usar ninguna (por defecto).
+     */
+    public void setResultCache(MembershipCache cache) {
+        this.resultCache = cache;
+    }
+
+    /**
+     * Método que asocia un almacén persistente de resultados a
+     * isDerivedUsignCYK, como CFGAlgorithms.setResultStore. El almacén
+     * serializa los accesos de los distintos hilos.
+     *
+     * @param store El almacén abierto, o null para no usar ninguno (por
+     * defecto).
+     */
+    public void setResultStore(ResultStore store) {
+        this.resultStore = store;
+    }
+
+    /**
+     * Método que devuelve la versión de la gramática, como
+     * CFGAlgorithms.getVersion.
+     *
+     * @return La versión de la instantánea vigente.
+     */
+    public long getVersion() {
+        return read().version;
+    }
+
+    /**
+     * Método que devuelve la tabla CYK de una palabra como texto, como
+     * CFGAlgorithms.algorithmCYKStateToString, sobre la instantánea vigente.
+     *
+     * @param word La palabra a analizar.
+     *
+     * @return La tabla calculada.
+     *
+     * @throws CFGAlgorithmsException Por los mismos motivos que
+     * CFGAlgorithms.algorithmCYKStateToString.
+     */
+    public String algorithmCYKStateToString(String word) throws CFGAlgorithmsException {
+        return read().algorithmCYKStateToString(word);
+    }
+}
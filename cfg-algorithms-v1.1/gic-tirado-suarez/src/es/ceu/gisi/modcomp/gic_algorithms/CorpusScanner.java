@@ -0,0 +1,377 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Comprueba la pertenencia de todas las líneas de un fichero (una palabra por
+ * línea) con una gramática compilada.
+ *
+ * El fichero se divide en bloques de unos chunkSize bytes que terminan en un
+ * salto de línea, y cada bloque se proyecta en memoria (FileChannel.map) y se
+ * analiza en un hilo distinto. Las palabras se traducen a clases de
+ * terminales directamente desde el buffer proyectado, sin crear Strings, y
+ * cada hilo usa su propio CYKWorkspace.
+ *
+ * El fichero se lee a razón de un byte por carácter (ASCII o ISO-8859-1). Se
+ * admiten finales de línea \n y \r\n, y la última línea puede no terminar en
+ * salto de línea. Las líneas con caracteres que no son terminales se cuentan
+ * aparte y se consideran no derivables; la línea vacía pertenece si el axioma
+ * tiene la producción S::=l, como en CompiledGrammar.isDerived.
+ *
+ * El resultado se escribe como un bitset: el bit i (bit i % 64 del long i /
+ * 64, en little-endian) vale 1 si la línea i pertenece al lenguaje. Se puede
+ * leer con BitSet.valueOf(Files.readAllBytes(fichero)). Los recuentos se
+ * devuelven en un Result.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class CorpusScanner {
+
+    private static final byte NEWLINE = '\n';
+    private static final byte RETURN = '\r';
+    private static final int MAX_CHUNK = Integer.MAX_VALUE;
+
+    private static final int REJECTED = 0;
+    private static final int ACCEPTED = 1;
+    private static final int INVALID = 2;
+
+    /**
+     * Recuentos de un análisis del fichero.
+     */
+    public static final class Result {
+
+        private final long lines;
+        private final long accepted;
+        private final long invalid;
+        private final int chunks;
+        private final long nanos;
+
+        Result(long lines, long accepted, long invalid, int chunks, long nanos) {
+            this.lines = lines;
+            this.accepted = accepted;
+            this.invalid = invalid;
+            this.chunks = chunks;
+            this.nanos = nanos;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getAccepted() {
+            return accepted;
+        }
+
+        public long getRejected() {
+            return lines - accepted;
+        }
+
+        /**
+         * Líneas rechazadas por contener caracteres que no son terminales.
+         */
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public int getChunks() {
+            return chunks;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d líneas: %d pertenecen, %d no (%d con caracteres no válidos); %d bloques, %.3f ms",
+                    lines, accepted, getRejected(), invalid, chunks, nanos / 1e6);
+        }
+    }
+
+    private final CompiledGrammar grammar;
+    private long chunkSize = 64L << 20;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean topDownFiltering;
+
+    /**
+     * Crea el analizador de ficheros para una gramática compilada.
+     *
+     * @param grammar Gramática en Forma Normal de Chomsky ya compilada.
+     */
+    public CorpusScanner(CompiledGrammar grammar) {
+        this.grammar = grammar;
+    }
+
+    /**
+     * Método que fija el tamaño aproximado de los bloques en que se divide el
+     * fichero. Cada bloque se alarga hasta el siguiente salto de línea.
+     *
+     * @param bytes Tamaño de bloque (64 MiB por defecto).
+     */
+    public void setChunkSize(long bytes) {
+        if (bytes <= 0 || bytes > MAX_CHUNK) {
+            throw new IllegalArgumentException("El tamaño de bloque debe estar entre 1 y " + MAX_CHUNK + " bytes.");
+        }
+        this.chunkSize = bytes;
+    }
+
+    /**
+     * Método que fija el número de hilos que analizan bloques a la vez.
+     *
+     * @param threads Número de hilos (por defecto, el de procesadores).
+     */
+    public void setParallelism(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("El número de hilos debe ser positivo.");
+        }
+        this.parallelism = threads;
+    }
+
+    /**
+     * Método que activa o desactiva el filtrado descendente de las celdas de
+     * la tabla CYK.
+     *
+     * @param enabled TRUE para activarlo.
+     */
+    public void setTopDownFiltering(boolean enabled) {
+        this.topDownFiltering = enabled;
+    }
+
+    /**
+     * Método que analiza todas las líneas de un fichero y escribe el bitset
+     * de resultados.
+     *
+     * @param input Fichero con una palabra por línea.
+     * @param output Fichero donde se escribe el bitset (se sobrescribe).
+     *
+     * @return Los recuentos del análisis.
+     *
+     * @throws IOException Si no se puede leer la entrada o escribir la salida,
+     * o si una línea no cabe en un bloque proyectado (2 GiB).
+     *
+     * @throws CFGAlgorithmsException Si no se puede reservar una tabla CYK.
+     */
+    public Result scan(Path input, Path output) throws IOException, CFGAlgorithmsException {
+        long begin = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(input, StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            Chunk[] chunks = new Chunk[bounds.length - 1];
+            ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, chunks.length)));
+            try {
+                List<Future<Chunk>> futures = new ArrayList<>(chunks.length);
+                for (int i = 0; i < chunks.length; i++) {
+                    long from = bounds[i];
+                    long to = bounds[i + 1];
+                    futures.add(pool.submit(() -> scanChunk(channel, from, to)));
+                }
+                for (int i = 0; i < chunks.length; i++) {
+                    chunks[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Análisis del fichero interrumpido.");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof CFGAlgorithmsException) {
+                    throw (CFGAlgorithmsException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException(cause);
+            } finally {
+                pool.shutdownNow();
+            }
+
+            long lines = 0;
+            long accepted = 0;
+            long invalid = 0;
+            for (Chunk chunk : chunks) {
+                lines += chunk.lines;
+                accepted += chunk.accepted;
+                invalid += chunk.invalid;
+            }
+            write(chunks, output);
+            return new Result(lines, accepted, invalid, chunks.length, System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * Posiciones de inicio de cada bloque más el tamaño del fichero. Todos los
+     * bloques salvo el último terminan justo después de un salto de línea.
+     */
+    private long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long[] bounds = new long[16];
+        int count = 1;
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long position = 0;
+        while (position < size) {
+            long next = Math.min(size, position + chunkSize);
+            if (next < size) {
+                next = afterNewline(channel, next - 1, size, probe);
+            }
+            if (next - position > MAX_CHUNK) {
+                throw new IOException("Una línea del fichero no cabe en un bloque proyectado.");
+            }
+            if (count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, 2 * count);
+            }
+            bounds[count++] = next;
+            position = next;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Posición siguiente al primer salto de línea a partir de from, o size si
+     * no hay ninguno.
+     */
+    private static long afterNewline(FileChannel channel, long from, long size, ByteBuffer probe) throws IOException {
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == NEWLINE) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private Chunk scanChunk(FileChannel channel, long from, long to) throws IOException, CFGAlgorithmsException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        try {
+            CYKWorkspace workspace = CYKWorkspace.current();
+            Chunk chunk = new Chunk();
+            int end = (int) (to - from);
+            int start = 0;
+            for (int i = 0; i < end; i++) {
+                if (buffer.get(i) == NEWLINE) {
+                    chunk.add(check(buffer, start, i, workspace));
+                    start = i + 1;
+                }
+            }
+            if (start < end) {
+                chunk.add(check(buffer, start, end, workspace));
+            }
+            return chunk;
+        } finally {
+            CYKChart.release(buffer);
+        }
+    }
+
+    private int check(ByteBuffer buffer, int from, int to, CYKWorkspace workspace) throws CFGAlgorithmsException {
+        if (to > from && buffer.get(to - 1) == RETURN) {
+            to--;
+        }
+        int n = to - from;
+        if (n == 0) {
+            return grammar.startDerivesLambda() ? ACCEPTED : REJECTED;
+        }
+        int[] symbols = workspace.symbols(n);
+        for (int i = 0; i < n; i++) {
+            int cls = grammar.terminalClass((char) (buffer.get(from + i) & 0xFF));
+            if (cls < 0) {
+                return INVALID;
+            }
+            symbols[i] = cls;
+        }
+        return grammar.recognize(symbols, n, topDownFiltering, ChartPolicy.DEFAULT, workspace, null) ? ACCEPTED : REJECTED;
+    }
+
+    /**
+     * Concatena los bitsets de los bloques, desplazando cada uno al número de
+     * su primera línea, y los escribe en little-endian.
+     */
+    private static void write(Chunk[] chunks, Path output) throws IOException {
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            long pending = 0;
+            int fill = 0; // bits de pending ya ocupados.
+            for (Chunk chunk : chunks) {
+                long remaining = chunk.lines;
+                for (int w = 0; remaining > 0; w++) {
+                    int count = (int) Math.min(64, remaining);
+                    long word = chunk.bits.length > w ? chunk.bits[w] : 0L;
+                    remaining -= count;
+                    pending |= word << fill;
+                    if (fill + count >= 64) {
+                        put(channel, out, pending);
+                        pending = fill == 0 ? 0L : word >>> (64 - fill);
+                        fill = fill + count - 64;
+                    } else {
+                        fill += count;
+                    }
+                }
+            }
+            if (fill > 0) {
+                put(channel, out, pending);
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    private static void put(FileChannel channel, ByteBuffer out, long word) throws IOException {
+        if (!out.hasRemaining()) {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out.clear();
+        }
+        out.putLong(word);
+    }
+
+    /**
+     * Resultados de un bloque: un bit por línea, numeradas desde el inicio
+     * del bloque.
+     */
+    private static final class Chunk {
+
+        private long[] bits = new long[16];
+        private long lines;
+        private long accepted;
+        private long invalid;
+
+        void add(int status) {
+            if (status == ACCEPTED) {
+                int w = (int) (lines >>> 6);
+                if (w == bits.length) {
+                    bits = Arrays.copyOf(bits, 2 * w);
+                }
+                bits[w] |= 1L << lines;
+                accepted++;
+            } else if (status == INVALID) {
+                invalid++;
+            }
+            lines++;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+
+/**
+ * Reconocedor CYK para palabras muy largas basado en productos de matrices
+ * booleanas sobre filas empaquetadas en long[].
+ *
+ * Para cada no terminal X se guarda la matriz booleana de la palabra: la fila
+ * i tiene el bit j activo si X deriva w[i..j). Con esa representación la
+ * regla A::=BC es un producto de matrices: la fila i de A recibe la OR de las
+ * filas k de C para cada k de la fila i de B, 64 posiciones por operación.
+ *
+ * Las filas se completan de derecha a izquierda. Cuando un bloque de b filas
+ * consecutivas queda terminado se precalcula, para cada no terminal que es
+ * hijo derecho de alguna producción, la tabla de los "cuatro rusos": la OR de
+ * cada uno de los 2^b subconjuntos de esas b filas. A partir de entonces cada
+ * fila combina el bloque entero con una única consulta a la tabla, en lugar
+ * de una OR por posición. Como una posición del bloque puede depender de otra
+ * del mismo bloque, primero se estabilizan los b bits del bloque (una sola
+ * palabra) y después se hace la OR del resto de la fila.
+ *
+ * El tamaño de bloque depende de la longitud: b es ⌊log₂ n⌋ redondeado hacia
+ * abajo a una potencia de dos (para que un bloque no cruce dos long), entre 2
+ * y 16. Con b del orden de log n el coste es O(n³ / (64·log n)). Las tablas
+ * ocupan del orden de 2^b·n²/(64·b) long por no terminal; si superan el
+ * límite de memoria configurado se reduce b, y si ni con b = 2 caben se usa
+ * el producto fila a fila sin tablas, que sigue siendo cúbico dividido por
+ * 64. No es la recursión completa de Valiant.
+ *
+ * Las OR de filas se hacen con BitKernel, vectorizadas con la Vector API
+ * cuando el módulo jdk.incubator.vector está disponible.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class FourRussiansRecognizer {
+
+    private static final int MIN_BLOCK = 2;
+    private static final int MAX_BLOCK = 16;
+
+    private final CompiledGrammar grammar;
+    private final boolean[] rightChild;
+    private final int rightChildren;
+    private long tableMemoryLimit = 256L << 20;
+    private BitKernel kernel = BitKernel.PREFERRED;
+
+    /**
+     * Crea el reconocedor para una gramática compilada.
+     *
+     * @param grammar Gramática en Forma Normal de Chomsky ya compilada.
+     */
+    public FourRussiansRecognizer(CompiledGrammar grammar) {
+        this.grammar = grammar;
+        int r = grammar.nonterminalCount();
+        rightChild = new boolean[r];
+        int count = 0;
+        for (int b = 0; b < r; b++) {
+            for (int e = grammar.pairOffset(b), end = grammar.pairOffset(b + 1); e < end; e++) {
+                int c = grammar.pairRight(e);
+                if (!rightChild[c]) {
+                    rightChild[c] = true;
+                    count++;
+                }
+            }
+        }
+        rightChildren = count;
+    }
+
+    /**
+     * Método que limita la memoria de las tablas de los cuatro rusos. Las
+     * palabras cuyas tablas no caben se reconocen sin ellas.
+     *
+     * @param bytes Número máximo de bytes (256 MiB por defecto).
+     */
+    public void setTableMemoryLimit(long bytes) {
+        this.tableMemoryLimit = bytes;
+    }
+
+    /**
+     * Método que elige entre las OR de filas vectoriales (si la Vector API
+     * está disponible) y las escalares.
+     *
+     * @param vectorized TRUE para usar instrucciones vectoriales si es
+     * posible.
+     */
+    public void setVectorized(boolean vectorized) {
+        this.kernel = vectorized ? BitKernel.PREFERRED : BitKernel.SCALAR;
+    }
+
+    /**
+     * Método que indica si las OR de filas se están haciendo con
+     * instrucciones vectoriales.
+     *
+     * @return TRUE si se usa la Vector API.
+     */
+    public boolean isVectorized() {
+        return kernel.isVectorized();
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje de la gramática.
+     * Devuelve lo mismo que CompiledGrammar.isDerived.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario. La palabra
+     * vacía pertenece si el axioma tiene la producción S::=l.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     */
+    public boolean isDerived(CharSequence word) throws CFGAlgorithmsException {
+        return isDerived(word, null);
+    }
+
+    /**
+     * Método que indica si una palabra pertenece al lenguaje de la gramática,
+     * deteniendo el análisis si se cancela el testigo o vence su plazo. El
+     * testigo se consulta una vez por fila, es decir, por cada posición de
+     * inicio de los fragmentos.
+     *
+     * @param word La palabra a verificar, formada sólo por terminales.
+     * @param token Testigo de cancelación, o null para no usar ninguno.
+     *
+     * @return TRUE si la palabra pertenece, FALSE en caso contrario.
+     *
+     * @throws CYKAbortedException Si el análisis se ha detenido antes de
+     * terminar.
+     *
+     * @throws CFGAlgorithmsException Si la palabra contiene símbolos que no
+     * son terminales de la gramática.
+     */
+    public boolean isDerived(CharSequence word, CancellationToken token) throws CFGAlgorithmsException {
+        int n = word.length();
+        if (n == 0) {
+            return grammar.startDerivesLambda();
+        }
+        int[] symbols = grammar.toClasses(word);
+        if (!grammar.getFilter().accepts(symbols, n)) {
+            return false;
+        }
+        return new Matrices(n).recognize(symbols, token);
+    }
+
+    /**
+     * Método que devuelve el número de filas de cada bloque de los cuatro
+     * rusos para una palabra de longitud n: ⌊log₂ n⌋ redondeado a una
+     * potencia de dos entre 2 y 16, reducido hasta que las tablas caben en el
+     * límite de memoria.
+     *
+     * @param n Longitud de la palabra.
+     *
+     * @return Filas por bloque, o 0 si la palabra se reconoce sin tablas.
+     */
+    public int getBlockSize(int n) {
+        int log = n > 0 ? 31 - Integer.numberOfLeadingZeros(n) : 0;
+        int block = Integer.highestOneBit(Math.min(Math.max(log, MIN_BLOCK), MAX_BLOCK));
+        for (; block >= MIN_BLOCK; block >>>= 1) {
+            if (tablesFit(n, block)) {
+                return block;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Indica si las tablas de una palabra de longitud n con bloques de block
+     * filas caben en el límite de memoria.
+     */
+    private boolean tablesFit(int n, int block) {
+        int w = CompiledGrammar.wordsFor(n + 1);
+        long limit = tableMemoryLimit / (8L * Math.max(rightChildren, 1));
+        long total = 0;
+        for (int k0 = 0; k0 < n; k0 += block) {
+            total += (long) (1 << block) * (w - (k0 >>> 6));
+            if (total > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Matrices de una palabra concreta. Las filas de todos los no terminales
+     * de la posición i son consecutivas.
+     */
+    private final class Matrices {
+
+        private final int n;
+        private final int r;
+        private final int w;
+        private final int block;
+        private final int subsets;
+        private final long[] rows; // rows[(i * r + X) * w + k]
+        private final long[][][] tables; // tables[C][bloque], o null sin tablas.
+
+        private final BitKernel kernel = FourRussiansRecognizer.this.kernel;
+
+        Matrices(int n) {
+            this.n = n;
+            r = grammar.nonterminalCount();
+            w = CompiledGrammar.wordsFor(n + 1);
+            block = getBlockSize(n);
+            subsets = 1 << block;
+            rows = new long[(n + block) * r * w];
+            tables = block > 0 ? new long[r][][] : null;
+            if (tables != null) {
+                for (int c = 0; c < r; c++) {
+                    if (rightChild[c]) {
+                        tables[c] = new long[(n + block - 1) / block][];
+                    }
+                }
+            }
+        }
+
+        private int row(int i, int x) {
+            return (i * r + x) * w;
+        }
+
+        boolean recognize(int[] symbols, CancellationToken token) throws CYKAbortedException {
+            for (int i = n - 1; i >= 0; i--) {
+                if (token != null && token.shouldStop()) {
+                    throw token.aborted();
+                }
+                int bit = i + 1;
+                for (int a = 0; a < r; a++) {
+                    if ((grammar.classRow(symbols[i], a >>> 6) & (1L << a)) != 0) {
+                        rows[row(i, a) + (bit >>> 6)] |= 1L << bit;
+                    }
+                }
+                int k = i + 1;
+                while (k < n) {
+                    if (tables != null && k % block == 0) {
+                        applyBlock(i, k / block);
+                        k += block;
+                    } else {
+                        applyPosition(i, k);
+                        k++;
+                    }
+                }
+                if (tables != null && i % block == 0) {
+                    buildTables(i / block);
+                }
+            }
+            int start = grammar.start();
+            return (rows[row(0, start) + (n >>> 6)] & (1L << n)) != 0;
+        }
+
+        /**
+         * Fila i += filas k de C para cada A::=BC con B en (i, k).
+         */
+        private void applyPosition(int i, int k) {
+            int from = (k + 1) >>> 6;
+            for (int b = 0; b < r; b++) {
+                if ((rows[row(i, b) + (k >>> 6)] & (1L << k)) == 0) {
+                    continue;
+                }
+                for (int e = grammar.pairOffset(b), end = grammar.pairOffset(b + 1); e < end; e++) {
+                    int src = row(k, grammar.pairRight(e));
+                    int dst = row(i, grammar.pairHead(e));
+                    kernel.or(rows, dst + from, rows, src + from, w - from);
+                }
+            }
+        }
+
+        /**
+         * Combina la fila i con las filas del bloque ya terminado.
+         */
+        private void applyBlock(int i, int index) {
+            int k0 = index * block;
+            int word = k0 >>> 6;
+            int shift = k0 & 63;
+            int len = w - word;
+
+            // Primero se estabilizan los bits del propio bloque.
+            boolean cambio = true;
+            while (cambio) {
+                cambio = false;
+                for (int b = 0; b < r; b++) {
+                    int subset = (int) (rows[row(i, b) + word] >>> shift) & (subsets - 1);
+                    if (subset == 0) {
+                        continue;
+                    }
+                    for (int e = grammar.pairOffset(b), end = grammar.pairOffset(b + 1); e < end; e++) {
+                        long[] table = tables[grammar.pairRight(e)][index];
+                        int dst = row(i, grammar.pairHead(e)) + word;
+                        long old = rows[dst];
+                        rows[dst] = old | table[subset * len];
+                        cambio |= ((rows[dst] ^ old) >>> shift & (subsets - 1)) != 0;
+                    }
+                }
+            }
+            if (len == 1) {
+                return;
+            }
+            for (int b = 0; b < r; b++) {
+                int subset = (int) (rows[row(i, b) + word] >>> shift) & (subsets - 1);
+                if (subset == 0) {
+                    continue;
+                }
+                for (int e = grammar.pairOffset(b), end = grammar.pairOffset(b + 1); e < end; e++) {
+                    long[] table = tables[grammar.pairRight(e)][index];
+                    int dst = row(i, grammar.pairHead(e)) + word;
+                    kernel.or(rows, dst + 1, table, subset * len + 1, len - 1);
+                }
+            }
+        }
+
+        /**
+         * Tabla de los cuatro rusos del bloque: la entrada s es la OR de las
+         * filas del bloque seleccionadas por los bits de s, desde la palabra
+         * del bloque hasta el final.
+         */
+        private void buildTables(int index) {
+            int k0 = index * block;
+            int word = k0 >>> 6;
+            int len = w - word;
+            for (int c = 0; c < r; c++) {
+                if (!rightChild[c]) {
+                    continue;
+                }
+                long[] table = new long[subsets * len];
+                for (int subset = 1; subset < subsets; subset++) {
+                    int prev = (subset & (subset - 1)) * len;
+                    int src = row(k0 + Integer.numberOfTrailingZeros(subset), c) + word;
+                    kernel.or(table, subset * len, table, prev, rows, src, len);
+                }
+                tables[c][index] = table;
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.util.*;
+
+/**
+ * Versión inmutable de una gramática, obtenida con CFGAlgorithms.snapshot().
+ *
+ * Una versión comparte su estructura con la gramática de la que procede y con
+ * las demás versiones: sólo los no terminales cuyas producciones cambian
+ * entre dos versiones tienen listas distintas, por lo que guardar muchas
+ * versiones de una gramática grande ocupa casi lo mismo que guardar una.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class GrammarVersion {
+
+    final Set<Character> nonterminals;
+    final Set<Character> terminals;
+    final Map<Character, List<String>> productions;
+    final Map<String, List<Character>> inverse;
+    final Character startsymbol;
+
+    GrammarVersion(Set<Character> nonterminals, Set<Character> terminals,
+            Map<Character, List<String>> productions, Map<String, List<Character>> inverse,
+            Character startsymbol) {
+        this.nonterminals = nonterminals;
+        this.terminals = terminals;
+        this.productions = productions;
+        this.inverse = inverse;
+        this.startsymbol = startsymbol;
+    }
+
+    /**
+     * Método que devuelve los no terminales de la versión.
+     *
+     * @return Un conjunto no modificable con los no terminales.
+     */
+    public Set<Character> getNonTerminals() {
+        return Collections.unmodifiableSet(nonterminals);
+    }
+
+    /**
+     * Método que devuelve los terminales de la versión.
+     *
+     * @return Un conjunto no modificable con los terminales.
+     */
+    public Set<Character> getTerminals() {
+        return Collections.unmodifiableSet(terminals);
+    }
+
+    /**
+     * Devuelve las producciones de un no terminal en esta versión.
+     *
+     * @param nonterminal Elemento no terminal del que se buscan las
+     * producciones
+     *
+     * @return Una lista no modificable con la parte derecha de cada producción,
+     * o null si el no terminal no tiene producciones.
+     */
+    public List<String> getProductions(char nonterminal) {
+        List<String> lista = productions.get(nonterminal);
+        return lista == null ? null : Collections.unmodifiableList(lista);
+    }
+
+    /**
+     * Método que devuelve el axioma de la versión.
+     *
+     * @return El axioma, o null si no estaba establecido.
+     */
+    public Character getStartSymbol() {
+        return startsymbol;
+    }
+}
@@ -0,0 +1,530 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caché acotada de resultados de pertenencia (palabra, versión de la
+ * gramática) -> boolean, para no repetir CYK con las palabras frecuentes.
+ *
+ * La clave es la versión de la gramática (CFGAlgorithms.getVersion(), que
+ * cambia con cada modificación) y un hash de 64 bits de la palabra. Cada
+ * entrada guarda además una copia de la palabra, que se compara al
+ * consultarla, de modo que una colisión de hash nunca devuelve el resultado
+ * de otra palabra. Las entradas de versiones anteriores no se vuelven a
+ * encontrar y acaban expulsadas como cualquier otra.
+ *
+ * El tamaño se limita por peso: cada entrada pesa la longitud de la palabra
+ * más ENTRY_WEIGHT caracteres. La expulsión sigue un LRU segmentado (una
+ * zona de prueba y una protegida, con el 80 % del peso, a la que pasan las
+ * entradas que se vuelven a consultar) con una admisión al estilo TinyLFU:
+ * un count-min sketch estima la frecuencia reciente de cada palabra y, si la
+ * caché está llena, una palabra nueva sólo entra si es más frecuente que la
+ * que tendría que expulsar. Así una ráfaga de palabras únicas no desplaza a
+ * las habituales. El sketch se indexa sólo por la palabra, sin la versión:
+ * tras modificar la gramática, una palabra habitual conserva su frecuencia y
+ * no es rechazada frente a las entradas de la versión anterior. Además, cuando
+ * un segmento ve por primera vez una versión más reciente, sus entradas de
+ * versiones anteriores pasan al final de la zona de prueba, de modo que son
+ * las primeras en expulsarse aunque estuvieran en la zona protegida, y se
+ * expulsan sin comparar frecuencias.
+ *
+ * La caché se divide en segmentos (stripes) con su propio cerrojo, elegidos
+ * por el hash de la palabra, de modo que todas las versiones de una palabra
+ * caen en el mismo segmento y comparten contador; no hay ningún cerrojo
+ * global. Los contadores son LongAdder.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class MembershipCache {
+
+    /**
+     * Peso fijo de cada entrada, en caracteres, además de la palabra.
+     */
+    public static final int ENTRY_WEIGHT = 32;
+
+    static final int ABSENT = -1;
+
+    private final Stripe[] stripes;
+    private final long maxWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Crea una caché con 16 segmentos.
+     *
+     * @param maxWeight Peso máximo, en caracteres.
+     */
+    public MembershipCache(long maxWeight) {
+        this(maxWeight, 16);
+    }
+
+    /**
+     * Crea una caché.
+     *
+     * @param maxWeight Peso máximo, en caracteres, repartido entre los
+     * segmentos.
+     * @param stripes Número de segmentos; se redondea a una potencia de dos.
+     */
+    public MembershipCache(long maxWeight, int stripes) {
+        if (maxWeight <= 0 || stripes <= 0) {
+            throw new IllegalArgumentException("El peso máximo y el número de segmentos deben ser positivos.");
+        }
+        int count = Integer.highestOneBit(stripes);
+        if (count < stripes) {
+            count <<= 1;
+        }
+        this.maxWeight = maxWeight;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe(Math.max(1, maxWeight / count));
+        }
+    }
+
+    /**
+     * Resultado guardado para una palabra y una versión de la gramática.
+     *
+     * @return 1 si pertenece, 0 si no, ABSENT si no está en la caché.
+     */
+    int get(long version, CharSequence text, int offset, int length) {
+        long hash = hash(text, offset, length);
+        long key = key(version, hash);
+        int result = stripe(hash).get(key, version, hash, text, offset, length);
+        if (result == ABSENT) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Guarda el resultado de una palabra para una versión de la gramática.
+     */
+    void put(long version, CharSequence text, int offset, int length, boolean result) {
+        long hash = hash(text, offset, length);
+        long key = key(version, hash);
+        stripe(hash).put(key, version, hash, text, offset, length, result);
+    }
+
+    /**
+     * Método que vacía la caché. No cambia las estadísticas.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    /**
+     * Método que devuelve el número de entradas de la caché.
+     *
+     * @return El número de palabras guardadas.
+     */
+    public long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Método que devuelve el peso de las entradas de la caché.
+     *
+     * @return El peso total, en caracteres; nunca supera getMaxWeight().
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Stripe stripe : stripes) {
+            weight += stripe.weight();
+        }
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Entradas expulsadas para hacer sitio a otras.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Palabras que no han entrado en la caché por ser menos frecuentes que
+     * la entrada que habrían expulsado, o por pesar más que un segmento.
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Método que devuelve la proporción de consultas resueltas por la caché.
+     *
+     * @return Aciertos entre consultas, o 0 si no ha habido ninguna.
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Método que pone a cero las estadísticas.
+     */
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        rejections.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entradas (peso %d de %d): %d aciertos, %d fallos (%.1f %%), %d expulsadas, %d no admitidas",
+                size(), getWeight(), maxWeight, getHits(), getMisses(), 100 * getHitRate(), getEvictions(), getRejections());
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> 40) & (stripes.length - 1)];
+    }
+
+    /**
+     * Hash FNV-1a de 64 bits de la palabra, con una mezcla final para
+     * repartir los bits.
+     */
+    static long hash(CharSequence text, int offset, int length) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ text.charAt(offset + i)) * 0x100000001B3L;
+        }
+        return mix(h ^ length);
+    }
+
+    private static long key(long version, long hash) {
+        return mix(hash ^ version * 0x9E3779B97F4A7C15L);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Entrada de la caché: está a la vez en una lista de la tabla hash y en
+     * la lista LRU de su zona.
+     */
+    private static final class Node {
+
+        final long key;
+        final long version;
+        final long hash;
+        final char[] word;
+        final boolean result;
+        final int weight;
+        Node next; // siguiente de la misma posición de la tabla.
+        Node before;
+        Node after;
+        boolean protectedZone;
+
+        Node(long key, long version, long hash, char[] word, boolean result) {
+            this.key = key;
+            this.version = version;
+            this.hash = hash;
+            this.word = word;
+            this.result = result;
+            this.weight = word.length + ENTRY_WEIGHT;
+        }
+
+        Node() {
+            this(0, 0, 0, new char[0], false);
+            before = this;
+            after = this;
+        }
+
+        boolean matches(long key, long version, long hash, CharSequence text, int offset, int length) {
+            if (this.key != key || this.version != version || this.hash != hash || word.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (word[i] != text.charAt(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Segmento de la caché: tabla hash encadenada, LRU segmentado y sketch
+     * de frecuencias, todo protegido por el monitor del segmento.
+     */
+    private final class Stripe {
+
+        private final long capacity;
+        private final long protectedCapacity;
+        private final Node probation = new Node(); // centinelas de las listas circulares.
+        private final Node protectedList = new Node();
+        private final FrequencySketch sketch;
+        private Node[] table = new Node[16];
+        private int size;
+        private long weight;
+        private long protectedWeight;
+        private long newest; // versión más reciente vista en el segmento.
+
+        Stripe(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = capacity * 4 / 5;
+            this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(16, capacity / ENTRY_WEIGHT)));
+        }
+
+        synchronized int get(long key, long version, long hash, CharSequence text, int offset, int length) {
+            observe(version);
+            sketch.increment(hash);
+            for (Node node = table[(int) key & (table.length - 1)]; node != null; node = node.next) {
+                if (node.matches(key, version, hash, text, offset, length)) {
+                    touch(node);
+                    return node.result ? 1 : 0;
+                }
+            }
+            return ABSENT;
+        }
+
+        synchronized void put(long key, long version, long hash, CharSequence text, int offset, int length, boolean result) {
+            observe(version);
+            int index = (int) key & (table.length - 1);
+            for (Node node = table[index]; node != null; node = node.next) {
+                if (node.matches(key, version, hash, text, offset, length)) {
+                    return; // otro hilo ya la ha guardado.
+                }
+            }
+            int entryWeight = length + ENTRY_WEIGHT;
+            if (entryWeight > capacity) {
+                rejections.increment();
+                return;
+            }
+            if (weight + entryWeight > capacity) {
+                Node victim = victim();
+                if (victim.version == newest && sketch.frequency(hash) <= sketch.frequency(victim.hash)) {
+                    rejections.increment();
+                    return;
+                }
+                while (weight + entryWeight > capacity) {
+                    remove(victim());
+                    evictions.increment();
+                }
+            }
+            char[] word = new char[length];
+            for (int i = 0; i < length; i++) {
+                word[i] = text.charAt(offset + i);
+            }
+            Node node = new Node(key, version, hash, word, result);
+            if (size + 1 > table.length * 3 / 4) {
+                resize();
+                index = (int) key & (table.length - 1);
+            }
+            node.next = table[index];
+            table[index] = node;
+            size++;
+            weight += node.weight;
+            link(probation, node);
+        }
+
+        synchronized void clear() {
+            table = new Node[16];
+            size = 0;
+            weight = 0;
+            protectedWeight = 0;
+            probation.before = probation.after = probation;
+            protectedList.before = protectedList.after = protectedList;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+
+        /**
+         * Al ver una versión más reciente que todas las anteriores, las
+         * entradas de versiones anteriores pasan al final de la zona de
+         * prueba: son las primeras candidatas a la expulsión aunque se
+         * consultaran mucho antes del cambio.
+         */
+        private void observe(long version) {
+            if (version <= newest) {
+                return;
+            }
+            newest = version;
+            List<Node> stale = new ArrayList<>();
+            for (Node list : new Node[]{protectedList, probation}) {
+                for (Node node = list.after; node != list; node = node.after) {
+                    if (node.version < version) {
+                        stale.add(node);
+                    }
+                }
+            }
+            for (Node node : stale) {
+                unlink(node);
+                if (node.protectedZone) {
+                    node.protectedZone = false;
+                    protectedWeight -= node.weight;
+                }
+                linkLast(probation, node);
+            }
+        }
+
+        /**
+         * La entrada menos usada de la zona de prueba o, si está vacía, de la
+         * protegida.
+         */
+        private Node victim() {
+            return probation.before != probation ? probation.before : protectedList.before;
+        }
+
+        /**
+         * Una consulta acertada pasa la entrada a la zona protegida (o al
+         * principio de ella), bajando a prueba las que ya no caben.
+         */
+        private void touch(Node node) {
+            unlink(node);
+            if (!node.protectedZone) {
+                node.protectedZone = true;
+                protectedWeight += node.weight;
+            }
+            link(protectedList, node);
+            while (protectedWeight > protectedCapacity) {
+                Node demoted = protectedList.before;
+                unlink(demoted);
+                demoted.protectedZone = false;
+                protectedWeight -= demoted.weight;
+                link(probation, demoted);
+            }
+        }
+
+        private void remove(Node node) {
+            int index = (int) node.key & (table.length - 1);
+            if (table[index] == node) {
+                table[index] = node.next;
+            } else {
+                Node previous = table[index];
+                while (previous.next != node) {
+                    previous = previous.next;
+                }
+                previous.next = node.next;
+            }
+            unlink(node);
+            size--;
+            weight -= node.weight;
+            if (node.protectedZone) {
+                protectedWeight -= node.weight;
+            }
+        }
+
+        private void resize() {
+            Node[] old = table;
+            table = new Node[old.length * 2];
+            for (Node head : old) {
+                for (Node node = head; node != null;) {
+                    Node next = node.next;
+                    int index = (int) node.key & (table.length - 1);
+                    node.next = table[index];
+                    table[index] = node;
+                    node = next;
+                }
+            }
+        }
+
+        private void link(Node list, Node node) {
+            node.after = list.after;
+            node.before = list;
+            list.after.before = node;
+            list.after = node;
+        }
+
+        private void linkLast(Node list, Node node) {
+            node.after = list;
+            node.before = list.before;
+            list.before.after = node;
+            list.before = node;
+        }
+
+        private void unlink(Node node) {
+            node.before.after = node.after;
+            node.after.before = node.before;
+        }
+    }
+
+    /**
+     * Count-min sketch de cuatro filas con contadores que se saturan en 15.
+     * Tras 10 incrementos por contador de una fila se dividen todos a la
+     * mitad, para que la frecuencia refleje el uso reciente.
+     */
+    private static final class FrequencySketch {
+
+        private static final int ROWS = 4;
+        private static final int MAX = 15;
+
+        private final byte[] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            int w = Integer.highestOneBit(width);
+            counters = new byte[ROWS * w];
+            mask = w - 1;
+            sampleSize = 10 * w;
+        }
+
+        void increment(long key) {
+            boolean added = false;
+            for (int row = 0; row < ROWS; row++) {
+                int i = index(key, row);
+                if (counters[i] < MAX) {
+                    counters[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(long key) {
+            int min = MAX;
+            for (int row = 0; row < ROWS; row++) {
+                min = Math.min(min, counters[index(key, row)]);
+            }
+            return min;
+        }
+
+        private int index(long key, int row) {
+            int h = (int) (key >>> (row * 16)) * 0x9E3779B9 + row;
+            return row * (mask + 1) + ((h ^ (h >>> 16)) & mask);
+        }
+    }
+}
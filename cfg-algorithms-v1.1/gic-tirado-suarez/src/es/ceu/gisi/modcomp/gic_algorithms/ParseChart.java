@@ -0,0 +1,155 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.*;
+
+/**
+ * Tabla CYK completa de una palabra, para consultarla tantas veces como haga
+ * falta sin volver a analizarla.
+ *
+ * Guarda un bit por no terminal y fragmento: para cada uno de los n(n+1)/2
+ * fragmentos [start, end), el bitset de los no terminales que lo derivan, en
+ * un único long[] del tamaño justo (con hasta 64 no terminales, 8 bytes por
+ * fragmento). La tabla se rellena sin filtros descendentes, así que cada
+ * celda dice qué no terminales derivan el fragmento por sí solo, no sólo
+ * cuáles aparecen en una derivación de la palabra completa.
+ *
+ * Es inmutable: se puede guardar y consultar desde varios hilos.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class ParseChart {
+
+    private final CompiledGrammar grammar;
+    private final int n;
+    private final int words;
+    private final long[] cells;
+
+    ParseChart(CompiledGrammar grammar, int[] symbols, int n) {
+        this.grammar = grammar;
+        this.n = n;
+        this.words = grammar.words();
+        this.cells = new long[Math.toIntExact(CompiledGrammar.cellCount(n) * words)];
+        grammar.fill(new CYKChart.Heap(cells), symbols, n, n, false, null);
+    }
+
+    /**
+     * Método que devuelve la longitud de la palabra analizada.
+     *
+     * @return La longitud de la palabra.
+     */
+    public int length() {
+        return n;
+    }
+
+    /**
+     * Método que indica si la palabra completa pertenece al lenguaje.
+     *
+     * @return TRUE si el axioma deriva la palabra. La palabra vacía pertenece
+     * si el axioma tiene la producción S::=l.
+     */
+    public boolean isDerived() {
+        if (n == 0) {
+            return grammar.startDerivesLambda();
+        }
+        return contains(grammar.start(), 0, n);
+    }
+
+    /**
+     * Método que indica si un no terminal deriva el fragmento [start, end)
+     * de la palabra. Es una única consulta a la tabla.
+     *
+     * @param nonterminal Elemento no terminal de la gramática.
+     * @param start Posición del primer carácter del fragmento.
+     * @param end Posición siguiente al último carácter del fragmento.
+     *
+     * @return TRUE si el no terminal deriva el fragmento.
+     *
+     * @throws CFGAlgorithmsException Si el no terminal no pertenece a la
+     * gramática.
+     *
+     * @throws IndexOutOfBoundsException Si el fragmento está vacío o se sale
+     * de la palabra.
+     */
+    public boolean derives(char nonterminal, int start, int end) throws CFGAlgorithmsException {
+        checkSpan(start, end);
+        return contains(grammar.checkedNonterminalIndex(nonterminal), start, end);
+    }
+
+    /**
+     * Método que devuelve los no terminales que derivan el fragmento
+     * [start, end) de la palabra.
+     *
+     * @param start Posición del primer carácter del fragmento.
+     * @param end Posición siguiente al último carácter del fragmento.
+     *
+     * @return Los no terminales, en el orden de CompiledGrammar.getNonTerminals.
+     *
+     * @throws IndexOutOfBoundsException Si el fragmento está vacío o se sale
+     * de la palabra.
+     */
+    public char[] getNonTerminals(int start, int end) {
+        checkSpan(start, end);
+        char[] symbols = grammar.getNonTerminals();
+        long cell = offset(start, end);
+        int count = 0;
+        for (int k = 0; k < words; k++) {
+            count += Long.bitCount(cells[(int) cell + k]);
+        }
+        char[] result = new char[count];
+        int i = 0;
+        for (int k = 0; k < words; k++) {
+            for (long bits = cells[(int) cell + k]; bits != 0; bits &= bits - 1) {
+                result[i++] = symbols[(k << 6) + Long.numberOfTrailingZeros(bits)];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Método que devuelve los fragmentos de la palabra que deriva un no
+     * terminal, ordenados por inicio y fin.
+     *
+     * @param nonterminal Elemento no terminal de la gramática.
+     *
+     * @return Los fragmentos que deriva.
+     *
+     * @throws CFGAlgorithmsException Si el no terminal no pertenece a la
+     * gramática.
+     */
+    public List<SubstringFinder.Span> getSpans(char nonterminal) throws CFGAlgorithmsException {
+        int a = grammar.checkedNonterminalIndex(nonterminal);
+        List<SubstringFinder.Span> spans = new ArrayList<>();
+        for (int start = 0; start < n; start++) {
+            for (int end = start + 1; end <= n; end++) {
+                if (contains(a, start, end)) {
+                    spans.add(new SubstringFinder.Span(start, end));
+                }
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Método que devuelve la memoria que ocupa la tabla.
+     *
+     * @return Número de bytes de los bitsets de las celdas.
+     */
+    public long getMemoryBytes() {
+        return (long) cells.length * Long.BYTES;
+    }
+
+    private boolean contains(int a, int start, int end) {
+        return (cells[(int) offset(start, end) + (a >>> 6)] & (1L << a)) != 0;
+    }
+
+    private long offset(int start, int end) {
+        return CompiledGrammar.cell(n, start, end - start) * words;
+    }
+
+    private void checkSpan(int start, int end) {
+        if (start < 0 || end > n || start >= end) {
+            throw new IndexOutOfBoundsException("Fragmento [" + start + ", " + end + ") no válido para una palabra de longitud " + n + ".");
+        }
+    }
+}
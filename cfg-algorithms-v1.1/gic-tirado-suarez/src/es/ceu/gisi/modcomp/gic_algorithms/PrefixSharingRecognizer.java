@@ -0,0 +1,187 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reconocedor CYK por lotes que analiza una sola vez cada prefijo común a
+ * varias palabras del lote.
+ *
+ * La tabla se rellena por columnas: la columna j contiene las celdas de los
+ * fragmentos que terminan en la posición j, y cada una se obtiene combinando
+ * columnas anteriores con la propia columna j. Como la columna j sólo depende
+ * de los j primeros caracteres, dos palabras con un prefijo común de longitud
+ * p comparten sus p primeras columnas.
+ *
+ * Las palabras se recorren en orden lexicográfico, que es el recorrido en
+ * profundidad del trie que forman: al pasar de una palabra a la siguiente se
+ * desapilan las columnas que no están en el prefijo común y se apilan las de
+ * la parte nueva. Cada prefijo distinto del lote (cada nodo del trie) se
+ * analiza así exactamente una vez, sin construir el trie de forma explícita.
+ *
+ * Con columnas no se puede aplicar el filtrado descendente (depende de la
+ * longitud total de la palabra), pero sí la poda por longitud de cada no
+ * terminal y el filtro previo de la gramática.
+ *
+ * Una instancia se puede usar desde varios hilos a la vez: cada llamada usa
+ * su propia tabla.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class PrefixSharingRecognizer {
+
+    private final CompiledGrammar grammar;
+    private final LongAdder requestedColumns = new LongAdder();
+    private final LongAdder computedColumns = new LongAdder();
+
+    /**
+     * Crea el reconocedor para una gramática compilada.
+     *
+     * @param grammar Gramática en Forma Normal de Chomsky ya compilada.
+     */
+    public PrefixSharingRecognizer(CompiledGrammar grammar) {
+        this.grammar = grammar;
+    }
+
+    /**
+     * Método que indica qué palabras de un lote pertenecen al lenguaje de la
+     * gramática. El resultado de cada palabra es el mismo que el de
+     * CompiledGrammar.isDerived; la palabra vacía pertenece si el axioma
+     * deriva lambda.
+     *
+     * @param words Palabras a verificar, formadas sólo por terminales.
+     *
+     * @return Un vector con el resultado de cada palabra, en el orden del
+     * lote.
+     *
+     * @throws CFGAlgorithmsException Si alguna palabra contiene caracteres
+     * que no son terminales o no se puede reservar la tabla.
+     */
+    public boolean[] isDerived(List<? extends CharSequence> words) throws CFGAlgorithmsException {
+        int count = words.size();
+        boolean[] results = new boolean[count];
+        Integer[] order = new Integer[count];
+        int maxLength = 0;
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            maxLength = Math.max(maxLength, words.get(i).length());
+        }
+        Arrays.sort(order, (x, y) -> CharSequence.compare(words.get(x), words.get(y)));
+
+        CYKWorkspace workspace = CYKWorkspace.current();
+        int[] symbols = new int[maxLength];
+        int w = grammar.words();
+        int start = grammar.start();
+        long requested = 0;
+        long computed = 0;
+        try (CYKChart chart = ChartPolicy.DEFAULT.allocate(maxLength, CompiledGrammar.cellCount(maxLength) * w, workspace)) {
+            CharSequence previous = "";
+            int depth = 0; // columnas apiladas, válidas para previous.
+            for (int index : order) {
+                CharSequence word = words.get(index);
+                int n = word.length();
+                int common = commonPrefix(previous, word);
+                for (int j = common; j < n; j++) {
+                    symbols[j] = grammar.checkedTerminalClass(word.charAt(j));
+                }
+                previous = word;
+                depth = Math.min(depth, common);
+                requested += n;
+                if (n == 0) {
+                    results[index] = grammar.startDerivesLambda();
+                    continue;
+                }
+                if (!grammar.getFilter().accepts(symbols, n)) {
+                    continue;
+                }
+                for (int j = depth + 1; j <= n; j++) {
+                    pushColumn(chart, symbols, j);
+                }
+                computed += n - depth;
+                depth = n;
+                long top = column(n, w); // celda (0, n), la primera de la columna n.
+                results[index] = (chart.get(top + (start >>> 6)) & (1L << start)) != 0;
+            }
+        } catch (IOException ex) {
+            throw new CFGAlgorithmsException("No se ha podido reservar la tabla CYK: " + ex.getMessage());
+        } finally {
+            requestedColumns.add(requested);
+            computedColumns.add(computed);
+        }
+        return results;
+    }
+
+    /**
+     * Calcula la columna j (fragmentos que terminan en j) a partir de las
+     * columnas 1..j-1, ya apiladas. Las celdas se rellenan de la más corta a
+     * la más larga porque cada una usa las más cortas de su misma columna.
+     */
+    private void pushColumn(CYKChart chart, int[] symbols, int j) {
+        int w = grammar.words();
+        long base = column(j, w);
+        for (long i = 0, size = (long) j * w; i < size; i++) {
+            chart.set(base + i, 0);
+        }
+        long last = base + (long) (j - 1) * w;
+        for (int k = 0; k < w; k++) {
+            chart.set(last + k, grammar.classRow(symbols[j - 1], k));
+        }
+        for (int s = j - 2; s >= 0; s--) {
+            long dst = base + (long) s * w;
+            for (int m = s + 1; m < j; m++) {
+                grammar.join(chart, column(m, w) + (long) s * w, base + (long) m * w, dst, j - s);
+            }
+        }
+    }
+
+    /**
+     * Posición de la columna j: las columnas 1..j-1 ocupan 1+2+...+(j-1)
+     * celdas, y la celda de la columna j que empieza en s está s celdas más
+     * allá.
+     */
+    private static long column(int j, int w) {
+        return (long) j * (j - 1) / 2 * w;
+    }
+
+    private static int commonPrefix(CharSequence a, CharSequence b) {
+        int limit = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < limit && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Método que devuelve cuántas columnas habría calculado CYK analizando
+     * cada palabra por separado (la suma de sus longitudes).
+     *
+     * @return El número de columnas pedidas desde la creación o el último
+     * resetStatistics.
+     */
+    public long getRequestedColumns() {
+        return requestedColumns.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas columnas se han calculado realmente: una
+     * por cada prefijo distinto de las palabras que pasan el filtro.
+     *
+     * @return El número de columnas calculadas desde la creación o el último
+     * resetStatistics.
+     */
+    public long getComputedColumns() {
+        return computedColumns.sum();
+    }
+
+    /**
+     * Método que pone a cero las estadísticas del reconocedor.
+     */
+    public void resetStatistics() {
+        requestedColumns.reset();
+        computedColumns.reset();
+    }
+}
@@ -0,0 +1,502 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Almacén persistente de resultados de pertenencia, para no repetir CYK con
+ * las mismas palabras después de reiniciar la aplicación.
+ *
+ * Es un fichero proyectado en memoria con una tabla hash de direccionamiento
+ * abierto (sondeo lineal) y un registro de palabras donde sólo se añade al
+ * final:
+ *
+ * - Cabecera de 64 bytes: número mágico "CYKR", versión del formato, huella
+ * de la gramática (CompiledGrammar.getFingerprint()), número de posiciones
+ * de la tabla, posiciones ocupadas, fin del registro y bytes del registro que
+ * ya no se usan.
+ *
+ * - Tabla: para cada posición, el hash de 64 bits de la palabra (0 si está
+ * libre) y la posición de su registro.
+ *
+ * - Registro: para cada palabra, su longitud, el resultado y sus caracteres.
+ * Se comparan al consultarla, así que una colisión de hash no devuelve el
+ * resultado de otra palabra.
+ *
+ * Un resultado nuevo se escribe primero en el registro y después en la
+ * tabla. Cuando el registro o la tabla se llenan se compacta: se copian las
+ * entradas vivas a un fichero nuevo (más grande si hace falta) que sustituye
+ * al anterior con un movimiento atómico.
+ *
+ * El fichero sólo es válido para una gramática: si se consulta con otra
+ * huella, se vacía y pasa a ser de la nueva gramática.
+ *
+ * Si el almacén falla al consultarlo desde CFGAlgorithms (por ejemplo, porque
+ * ya no puede crecer más allá de 2 GiB), la consulta no falla: el error se
+ * anota en el registro y en getErrors y la palabra se analiza con CYK.
+ *
+ * Los métodos están sincronizados; un mismo fichero no debe abrirse a la vez
+ * desde dos procesos.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class ResultStore implements AutoCloseable {
+
+    /**
+     * Número mágico del fichero ("CYKR").
+     */
+    static final int MAGIC = 0x524B5943;
+
+    /**
+     * Versión del formato del fichero.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    static final int ABSENT = -1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int SLOT_BYTES = 16;
+    private static final int RECORD_HEADER = 8;
+    private static final int MAX_BYTES = Integer.MAX_VALUE;
+
+    private static final Logger LOG = Logger.getLogger(ResultStore.class.getName());
+
+    private final Path file;
+    private FileChannel channel;
+    private MappedByteBuffer data;
+    private int slots;
+    private int used;
+    private long logEnd;
+    private long garbage;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private long invalidations;
+    private long compactions;
+
+    private ResultStore(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Método que abre (o crea, con 4096 posiciones y 1 MiB de registro) un
+     * almacén de resultados.
+     *
+     * @param file Fichero del almacén.
+     *
+     * @return El almacén abierto.
+     *
+     * @throws IOException Si no se puede abrir o crear el fichero, o si no
+     * tiene el formato esperado.
+     */
+    public static ResultStore open(Path file) throws IOException {
+        return open(file, 4096, 1 << 20);
+    }
+
+    /**
+     * Método que abre un almacén de resultados, creándolo con el tamaño
+     * indicado si no existe.
+     *
+     * @param file Fichero del almacén.
+     * @param initialSlots Posiciones iniciales de la tabla (se redondea a una
+     * potencia de dos).
+     * @param initialLogBytes Tamaño inicial del registro de palabras.
+     *
+     * @return El almacén abierto.
+     *
+     * @throws IOException Si no se puede abrir o crear el fichero, o si no
+     * tiene el formato esperado.
+     */
+    public static ResultStore open(Path file, int initialSlots, long initialLogBytes) throws IOException {
+        ResultStore store = new ResultStore(file);
+        if (Files.exists(file) && Files.size(file) > 0) {
+            store.map();
+        } else {
+            int slots = Math.max(16, Integer.highestOneBit(Math.max(1, initialSlots - 1)) << 1);
+            create(file, 0, slots, Math.max(RECORD_HEADER, initialLogBytes));
+            store.map();
+        }
+        return store;
+    }
+
+    /**
+     * Crea un fichero vacío con la huella, posiciones y registro indicados.
+     */
+    private static void create(Path target, long fingerprint, int slots, long logBytes) throws IOException {
+        long size = HEADER_BYTES + (long) slots * SLOT_BYTES + logBytes;
+        if (size > MAX_BYTES) {
+            throw new IOException("El almacén de resultados no puede superar 2 GiB.");
+        }
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putLong(8, fingerprint);
+            buffer.putInt(16, slots);
+            buffer.putInt(20, 0);
+            buffer.putLong(24, HEADER_BYTES + (long) slots * SLOT_BYTES);
+            buffer.putLong(32, 0);
+            buffer.force();
+            CYKChart.release(buffer);
+        }
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > MAX_BYTES) {
+                throw new IOException("El fichero no es un almacén de resultados.");
+            }
+            data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            if (data.getInt(0) != MAGIC) {
+                throw new IOException("El fichero no es un almacén de resultados.");
+            }
+            if (data.getInt(4) != FORMAT_VERSION) {
+                throw new IOException("Versión de almacén de resultados no soportada: " + data.getInt(4));
+            }
+            slots = data.getInt(16);
+            used = data.getInt(20);
+            logEnd = data.getLong(24);
+            garbage = data.getLong(32);
+            if (Integer.bitCount(slots) != 1 || logEnd < logStart() || logEnd > size) {
+                throw new IOException("El almacén de resultados está dañado.");
+            }
+        } catch (IOException | RuntimeException ex) {
+            unmap();
+            throw ex;
+        }
+    }
+
+    private void unmap() throws IOException {
+        if (data != null) {
+            CYKChart.release(data);
+            data = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private long logStart() {
+        return HEADER_BYTES + (long) slots * SLOT_BYTES;
+    }
+
+    /**
+     * Resultado guardado para una palabra con la gramática de la huella
+     * indicada.
+     *
+     * @return 1 si pertenece, 0 si no, ABSENT si no está guardada.
+     */
+    synchronized int get(long fingerprint, CharSequence text, int offset, int length) throws IOException {
+        checkFingerprint(fingerprint);
+        long hash = hash(text, offset, length);
+        for (int i = index(hash);; i = (i + 1) & (slots - 1)) {
+            long slot = HEADER_BYTES + (long) i * SLOT_BYTES;
+            long stored = data.getLong((int) slot);
+            if (stored == 0) {
+                misses.increment();
+                return ABSENT;
+            }
+            if (stored == hash) {
+                int record = (int) data.getLong((int) slot + 8);
+                if (matches(record, text, offset, length)) {
+                    hits.increment();
+                    return data.getInt(record + 4);
+                }
+            }
+        }
+    }
+
+    /**
+     * Guarda el resultado de una palabra con la gramática de la huella
+     * indicada.
+     */
+    synchronized void put(long fingerprint, CharSequence text, int offset, int length, boolean result) throws IOException {
+        checkFingerprint(fingerprint);
+        long hash = hash(text, offset, length);
+        long recordBytes = RECORD_HEADER + 2L * length;
+        if (logEnd + recordBytes > data.capacity() || 10L * (used + 1) > 7L * slots) {
+            compact(recordBytes);
+        }
+        int record = (int) logEnd;
+        data.putInt(record, length);
+        data.putInt(record + 4, result ? 1 : 0);
+        for (int i = 0; i < length; i++) {
+            data.putChar(record + RECORD_HEADER + 2 * i, text.charAt(offset + i));
+        }
+        logEnd += recordBytes;
+        data.putLong(24, logEnd);
+
+        for (int i = index(hash);; i = (i + 1) & (slots - 1)) {
+            int slot = HEADER_BYTES + i * SLOT_BYTES;
+            long stored = data.getLong(slot);
+            if (stored == 0) {
+                data.putLong(slot + 8, record);
+                data.putLong(slot, hash);
+                data.putInt(20, ++used);
+                return;
+            }
+            if (stored == hash && matches((int) data.getLong(slot + 8), text, offset, length)) {
+                garbage += RECORD_HEADER + 2L * data.getInt((int) data.getLong(slot + 8));
+                data.putLong(32, garbage);
+                data.putLong(slot + 8, record); // la entrada anterior queda en el registro hasta compactar.
+                return;
+            }
+        }
+    }
+
+    /**
+     * Como get, pero un error de E/S no se propaga: se anota y la palabra se
+     * trata como no guardada, para que se analice con CYK.
+     */
+    int getOrAbsent(long fingerprint, CharSequence text, int offset, int length) {
+        try {
+            return get(fingerprint, text, offset, length);
+        } catch (IOException ex) {
+            failed(ex);
+            return ABSENT;
+        }
+    }
+
+    /**
+     * Como put, pero un error de E/S sólo se anota: el resultado ya calculado
+     * se devuelve aunque no se haya podido guardar.
+     */
+    void putOrSkip(long fingerprint, CharSequence text, int offset, int length, boolean result) {
+        try {
+            put(fingerprint, text, offset, length, result);
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    /**
+     * El primer error se registra como aviso; los siguientes, que suelen
+     * repetir la misma causa, con nivel FINE.
+     */
+    private void failed(IOException ex) {
+        errors.increment();
+        LOG.log(errors.sum() == 1 ? Level.WARNING : Level.FINE, "No se ha podido usar el almacén de resultados " + file, ex);
+    }
+
+    private boolean matches(int record, CharSequence text, int offset, int length) {
+        if (data.getInt(record) != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data.getChar(record + RECORD_HEADER + 2 * i) != text.charAt(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Si la huella no es la del fichero, lo vacía y lo asigna a la nueva
+     * gramática.
+     */
+    private void checkFingerprint(long fingerprint) throws IOException {
+        if (data == null) {
+            throw new IOException("El almacén de resultados está cerrado.");
+        }
+        if (data.getLong(8) == fingerprint) {
+            return;
+        }
+        if (used > 0) {
+            invalidations++;
+        }
+        for (int i = 0; i < slots; i++) {
+            data.putLong(HEADER_BYTES + i * SLOT_BYTES, 0L);
+        }
+        used = 0;
+        logEnd = logStart();
+        garbage = 0;
+        data.putInt(20, used);
+        data.putLong(24, logEnd);
+        data.putLong(32, garbage);
+        data.putLong(8, fingerprint);
+    }
+
+    /**
+     * Método que compacta el fichero: copia las entradas vivas a un fichero
+     * nuevo, sin los registros que ya no se usan.
+     *
+     * @throws IOException Si no se puede escribir el fichero nuevo.
+     */
+    public synchronized void compact() throws IOException {
+        if (data == null) {
+            throw new IOException("El almacén de resultados está cerrado.");
+        }
+        compact(0);
+    }
+
+    /**
+     * Compacta dejando sitio para un registro de needed bytes y para una
+     * entrada más en la tabla; duplica la tabla o el registro si no basta.
+     */
+    private void compact(long needed) throws IOException {
+        long live = logEnd - logStart() - garbage;
+        int newSlots = slots;
+        while (10L * (used + 1) > 7L * newSlots) {
+            newSlots <<= 1;
+        }
+        long logBytes = data.capacity() - logStart();
+        while (live + needed > logBytes / 2 && logBytes < MAX_BYTES) {
+            logBytes *= 2;
+        }
+        long fingerprint = data.getLong(8);
+
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "cykr", ".tmp");
+        try {
+            create(temp, fingerprint, newSlots, logBytes);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, out.size());
+                target.order(ByteOrder.LITTLE_ENDIAN);
+                long end = HEADER_BYTES + (long) newSlots * SLOT_BYTES;
+                int count = 0;
+                for (int i = 0; i < slots; i++) {
+                    int slot = HEADER_BYTES + i * SLOT_BYTES;
+                    long hash = data.getLong(slot);
+                    if (hash == 0) {
+                        continue;
+                    }
+                    int record = (int) data.getLong(slot + 8);
+                    int bytes = RECORD_HEADER + 2 * data.getInt(record);
+                    for (int k = 0; k < bytes; k++) {
+                        target.put((int) end + k, data.get(record + k));
+                    }
+                    for (int j = (int) mix(hash) & (newSlots - 1);; j = (j + 1) & (newSlots - 1)) {
+                        int newSlot = HEADER_BYTES + j * SLOT_BYTES;
+                        if (target.getLong(newSlot) == 0) {
+                            target.putLong(newSlot + 8, end);
+                            target.putLong(newSlot, hash);
+                            break;
+                        }
+                    }
+                    end += bytes;
+                    count++;
+                }
+                target.putInt(20, count);
+                target.putLong(24, end);
+                target.force();
+                CYKChart.release(target);
+            }
+            unmap();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            if (data == null) {
+                map();
+            }
+            throw ex;
+        }
+        map();
+        compactions++;
+    }
+
+    /**
+     * Método que escribe en disco los cambios pendientes.
+     */
+    public synchronized void flush() {
+        if (data != null) {
+            data.force();
+        }
+    }
+
+    /**
+     * Método que devuelve el número de palabras guardadas.
+     *
+     * @return El número de entradas de la tabla.
+     */
+    public synchronized int size() {
+        return used;
+    }
+
+    /**
+     * Método que devuelve la huella de la gramática a la que pertenecen los
+     * resultados guardados.
+     *
+     * @return La huella, o 0 si el almacén todavía no tiene gramática.
+     */
+    public synchronized long getFingerprint() {
+        return data == null ? 0 : data.getLong(8);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Consultas en que el almacén ha fallado y la palabra se ha analizado
+     * con CYK sin él.
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Veces que el almacén se ha vaciado por consultarse con otra gramática.
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    public synchronized long getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * Método que escribe los cambios pendientes y cierra el fichero.
+     *
+     * @throws IOException Si no se puede cerrar el fichero.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        unmap();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d palabras, %d aciertos, %d fallos, %d invalidaciones, %d compactaciones, %d errores",
+                file, size(), getHits(), getMisses(), getInvalidations(), getCompactions(), getErrors());
+    }
+
+    private int index(long hash) {
+        return (int) mix(hash) & (slots - 1);
+    }
+
+    /**
+     * Hash de la palabra, estable entre ejecuciones; nunca es 0, que marca
+     * las posiciones libres.
+     */
+    private static long hash(CharSequence text, int offset, int length) {
+        long h = MembershipCache.hash(text, offset, length);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,203 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Tabla CYK dispersa: sólo guarda las celdas no vacías.
+ *
+ * Los bitsets de las celdas se guardan seguidos en un long[] que crece bajo
+ * demanda; un mapa de direccionamiento abierto con claves long (inicio y
+ * longitud empaquetados) y valores int da la posición de cada celda. Además,
+ * para cada inicio se guardan las longitudes de sus celdas no vacías (en
+ * orden creciente, porque CYK las rellena por longitudes) junto con su
+ * posición, de modo que el bucle de puntos de corte sólo recorre las celdas
+ * izquierdas que existen.
+ *
+ * Las primeras posiciones del vector son una celda auxiliar donde se calcula
+ * cada celda antes de decidir si se guarda (commit).
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+final class SparseChart extends CYKChart {
+
+    private static final long EMPTY = -1;
+
+    private final int words;
+    private long[] pool;
+    private int used;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    private int[][] lengths; // lengths[s][i]: longitud de la i-ésima celda no vacía que empieza en s.
+    private int[][] offsets; // offsets[s][i]: su posición en pool.
+    private int[] counts;
+
+    SparseChart(int n, int words) {
+        this.words = words;
+        pool = new long[words * Math.max(16, 2 * n)];
+        used = words; // celda auxiliar.
+        keys = new long[64];
+        Arrays.fill(keys, EMPTY);
+        values = new int[64];
+        lengths = new int[n][];
+        offsets = new int[n][];
+        counts = new int[n];
+    }
+
+    /**
+     * Vacía la tabla para reutilizarla con una palabra de longitud n,
+     * conservando los vectores ya reservados.
+     *
+     * @return false si la tabla es de otro número de longs por celda.
+     */
+    boolean reset(int n, int words) {
+        if (words != this.words) {
+            return false;
+        }
+        if (counts.length < n) {
+            lengths = Arrays.copyOf(lengths, n);
+            offsets = Arrays.copyOf(offsets, n);
+            counts = new int[n];
+        } else {
+            Arrays.fill(counts, 0, n, 0);
+        }
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+        Arrays.fill(pool, 0, words, 0L);
+        used = words;
+        return true;
+    }
+
+    @Override
+    long get(long index) {
+        return pool[(int) index];
+    }
+
+    @Override
+    void set(long index, long bits) {
+        pool[(int) index] = bits;
+    }
+
+    @Override
+    void or(long index, long bits) {
+        pool[(int) index] |= bits;
+    }
+
+    @Override
+    void and(long index, long bits) {
+        pool[(int) index] &= bits;
+    }
+
+    /**
+     * Posición de la celda auxiliar.
+     */
+    int scratch() {
+        return 0;
+    }
+
+    /**
+     * Guarda la celda auxiliar como celda (s, l) si no está vacía, y la deja
+     * a cero para la siguiente.
+     */
+    void commit(int s, int l) {
+        boolean empty = true;
+        for (int k = 0; k < words; k++) {
+            empty &= pool[k] == 0;
+        }
+        if (empty) {
+            return;
+        }
+        if (used + words > pool.length) {
+            pool = Arrays.copyOf(pool, pool.length * 2);
+        }
+        int offset = used;
+        System.arraycopy(pool, 0, pool, offset, words);
+        Arrays.fill(pool, 0, words, 0L);
+        used += words;
+        put(key(s, l), offset);
+
+        int c = counts[s];
+        if (lengths[s] == null) {
+            lengths[s] = new int[4];
+            offsets[s] = new int[4];
+        } else if (c == lengths[s].length) {
+            lengths[s] = Arrays.copyOf(lengths[s], c * 2);
+            offsets[s] = Arrays.copyOf(offsets[s], c * 2);
+        }
+        lengths[s][c] = l;
+        offsets[s][c] = offset;
+        counts[s] = c + 1;
+    }
+
+    /**
+     * Posición de la celda (s, l), o -1 si está vacía.
+     */
+    int find(int s, int l) {
+        long key = key(s, l);
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    int count(int s) {
+        return counts[s];
+    }
+
+    int length(int s, int i) {
+        return lengths[s][i];
+    }
+
+    int offset(int s, int i) {
+        return offsets[s][i];
+    }
+
+    /**
+     * Número de celdas no vacías.
+     */
+    int size() {
+        return size;
+    }
+
+    private void put(long key, int value) {
+        if (2 * (size + 1) > keys.length) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            values = new int[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    private static long key(int s, int l) {
+        return ((long) s << 32) | l;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
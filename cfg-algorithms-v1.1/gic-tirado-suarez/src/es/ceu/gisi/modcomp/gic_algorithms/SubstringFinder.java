@@ -0,0 +1,314 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Busca en un texto los fragmentos que pertenecen al lenguaje de la
+ * gramática (o que deriva un no terminal dado) con una única tabla CYK.
+ *
+ * La tabla CYK de todo el texto ya contiene, en cada celda, los no terminales
+ * que derivan ese fragmento, así que basta con rellenarla una vez (sin los
+ * filtros que sólo valen para la palabra completa) y recorrer sus celdas en
+ * lugar de analizar los O(n²) fragmentos por separado.
+ *
+ * Los caracteres que no son terminales de la gramática no forman parte de
+ * ningún fragmento: actúan como separadores. Los fragmentos vacíos no se
+ * devuelven. Con setMaxLength sólo se calculan las celdas hasta esa
+ * longitud, y la tabla pasa de n²/2 a unas n·maxLength celdas.
+ *
+ * Los fragmentos se devuelven ordenados por inicio y, a igual inicio, por
+ * fin. Además de todos los fragmentos (ALL) se puede pedir, como en las
+ * expresiones regulares, la secuencia de fragmentos que no se solapan
+ * tomando en cada posición el más largo (LEFTMOST_LONGEST) o el más corto
+ * (LEFTMOST_SHORTEST) que empieza más a la izquierda.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class SubstringFinder {
+
+    /**
+     * Qué fragmentos se devuelven.
+     */
+    public enum Mode {
+        ALL, LEFTMOST_LONGEST, LEFTMOST_SHORTEST
+    }
+
+    /**
+     * Fragmento [start, end) del texto.
+     */
+    public static final class Span {
+
+        private final int start;
+        private final int end;
+
+        /**
+         * Crea el fragmento [start, end).
+         *
+         * @param start Posición del primer carácter.
+         * @param end Posición siguiente al último carácter.
+         */
+        public Span(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Método que devuelve la posición del primer carácter del fragmento.
+         *
+         * @return La posición de inicio, incluida.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * Método que devuelve la posición siguiente al último carácter del
+         * fragmento.
+         *
+         * @return La posición de fin, excluida.
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * Método que devuelve el número de caracteres del fragmento.
+         *
+         * @return end - start.
+         */
+        public int getLength() {
+            return end - start;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Span)) {
+                return false;
+            }
+            Span other = (Span) obj;
+            return start == other.start && end == other.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * start + end;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Recorrido perezoso de los fragmentos de un texto. La tabla se libera al
+     * llegar al final o al cerrarlo.
+     */
+    public static final class Spans implements Iterator<Span>, AutoCloseable {
+
+        private final Mode mode;
+        private final int n;
+        private final int maxLength;
+        private final int a;
+        private final int w;
+        private CYKChart chart;
+        private int s;
+        private int l;
+        private Span next;
+
+        Spans(CYKChart chart, Mode mode, int n, int maxLength, int a, int w) {
+            this.chart = chart;
+            this.mode = mode;
+            this.n = n;
+            this.maxLength = maxLength;
+            this.a = a;
+            this.w = w;
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Span next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Span span = next;
+            next = advance();
+            return span;
+        }
+
+        @Override
+        public void close() {
+            if (chart != null) {
+                chart.close();
+                chart = null;
+            }
+            s = n;
+        }
+
+        private Span advance() {
+            while (s < n) {
+                int longest = Math.min(maxLength, n - s);
+                switch (mode) {
+                    case ALL:
+                        while (++l <= longest) {
+                            if (contains(s, l)) {
+                                return new Span(s, s + l);
+                            }
+                        }
+                        break;
+                    case LEFTMOST_SHORTEST:
+                        for (int k = 1; k <= longest; k++) {
+                            if (contains(s, k)) {
+                                return jump(k);
+                            }
+                        }
+                        break;
+                    case LEFTMOST_LONGEST:
+                        for (int k = longest; k >= 1; k--) {
+                            if (contains(s, k)) {
+                                return jump(k);
+                            }
+                        }
+                        break;
+                }
+                s++;
+                l = 0;
+            }
+            close();
+            return null;
+        }
+
+        private Span jump(int length) {
+            Span span = new Span(s, s + length);
+            s += length;
+            return span;
+        }
+
+        private boolean contains(int start, int length) {
+            long cell = CompiledGrammar.cell(n, start, length) * w;
+            return (chart.get(cell + (a >>> 6)) & (1L << a)) != 0;
+        }
+    }
+
+    private final CompiledGrammar grammar;
+    private Mode mode = Mode.ALL;
+    private int maxLength = Integer.MAX_VALUE;
+
+    /**
+     * Crea el buscador para una gramática compilada.
+     *
+     * @param grammar Gramática en Forma Normal de Chomsky ya compilada.
+     */
+    public SubstringFinder(CompiledGrammar grammar) {
+        this.grammar = grammar;
+    }
+
+    /**
+     * Método que elige qué fragmentos se devuelven.
+     *
+     * @param mode Todos (por defecto) o los que no se solapan, más largos o
+     * más cortos primero.
+     */
+    public void setMode(Mode mode) {
+        this.mode = Objects.requireNonNull(mode);
+    }
+
+    /**
+     * Método que limita la longitud de los fragmentos que se buscan.
+     *
+     * @param length Longitud máxima (sin límite por defecto).
+     */
+    public void setMaxLength(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("La longitud máxima debe ser positiva.");
+        }
+        this.maxLength = length;
+    }
+
+    /**
+     * Método que devuelve los fragmentos del texto que deriva el axioma.
+     *
+     * @param text Texto en el que se busca.
+     *
+     * @return Los fragmentos, en orden.
+     *
+     * @throws CFGAlgorithmsException Si no se puede reservar la tabla CYK.
+     */
+    public List<Span> findAll(CharSequence text) throws CFGAlgorithmsException {
+        return findAll(text, grammar.getStartSymbol());
+    }
+
+    /**
+     * Método que devuelve los fragmentos del texto que deriva un no terminal.
+     *
+     * @param text Texto en el que se busca.
+     * @param nonterminal No terminal de la gramática.
+     *
+     * @return Los fragmentos, en orden.
+     *
+     * @throws CFGAlgorithmsException Si el no terminal no pertenece a la
+     * gramática o no se puede reservar la tabla CYK.
+     */
+    public List<Span> findAll(CharSequence text, char nonterminal) throws CFGAlgorithmsException {
+        List<Span> spans = new ArrayList<>();
+        try (Spans it = spans(text, nonterminal, CYKWorkspace.current())) {
+            while (it.hasNext()) {
+                spans.add(it.next());
+            }
+        }
+        return spans;
+    }
+
+    /**
+     * Método que rellena la tabla del texto y devuelve un recorrido perezoso
+     * de los fragmentos que deriva un no terminal. El recorrido tiene su
+     * propia tabla, así que se puede seguir analizando otras palabras en el
+     * mismo hilo mientras se consume.
+     *
+     * @param text Texto en el que se busca.
+     * @param nonterminal No terminal de la gramática.
+     *
+     * @return Los fragmentos, en orden. Conviene cerrarlo si no se recorre
+     * hasta el final.
+     *
+     * @throws CFGAlgorithmsException Si el no terminal no pertenece a la
+     * gramática o no se puede reservar la tabla CYK.
+     */
+    public Spans iterator(CharSequence text, char nonterminal) throws CFGAlgorithmsException {
+        return spans(text, nonterminal, new CYKWorkspace());
+    }
+
+    private Spans spans(CharSequence text, char nonterminal, CYKWorkspace workspace) throws CFGAlgorithmsException {
+        int a = grammar.checkedNonterminalIndex(nonterminal);
+        int n = text.length();
+        int limit = Math.min(maxLength, n);
+        int w = grammar.words();
+        if (n == 0) {
+            return new Spans(null, mode, 0, limit, a, w);
+        }
+        int[] symbols = workspace.symbols(n);
+        for (int i = 0; i < n; i++) {
+            symbols[i] = grammar.terminalClass(text.charAt(i));
+        }
+        CYKChart chart;
+        try {
+            chart = ChartPolicy.DEFAULT.allocate(n, CompiledGrammar.bandCells(n, limit) * w, workspace);
+        } catch (IOException ex) {
+            throw new CFGAlgorithmsException("No se ha podido reservar la tabla CYK: " + ex.getMessage());
+        }
+        try {
+            grammar.fill(chart, symbols, n, limit, false, null);
+        } catch (RuntimeException ex) {
+            chart.close();
+            throw ex;
+        }
+        return new Spans(chart, mode, n, limit, a, w);
+    }
+}
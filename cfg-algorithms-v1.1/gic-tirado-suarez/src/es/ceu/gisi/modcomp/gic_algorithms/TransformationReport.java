@@ -0,0 +1,162 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.util.*;
+
+/**
+ * Resumen de la ejecución de WellFormedPipeline: número de rondas, si se
+ * alcanzó el punto fijo y, para cada etapa, cuántas veces se ha ejecutado o
+ * se ha omitido, el tiempo consumido y las producciones eliminadas y añadidas.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class TransformationReport {
+
+    /**
+     * Estadísticas de una etapa de la transformación.
+     */
+    public static final class Stage {
+
+        private final String name;
+        private int runs;
+        private int skips;
+        private long nanos;
+        private int removed;
+        private int added;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        void recordRun(long elapsed, int productionsRemoved, int productionsAdded) {
+            runs++;
+            nanos += elapsed;
+            removed += productionsRemoved;
+            added += productionsAdded;
+        }
+
+        void recordSkip() {
+            skips++;
+        }
+
+        /**
+         * Método que devuelve el nombre de la etapa.
+         *
+         * @return El nombre con el que aparece en el resumen.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Método que devuelve cuántas veces se ha ejecutado la etapa.
+         *
+         * @return El número de ejecuciones.
+         */
+        public int getRuns() {
+            return runs;
+        }
+
+        /**
+         * Método que devuelve cuántas veces se ha omitido la etapa porque no
+         * tenía trabajo.
+         *
+         * @return El número de rondas en las que no se ha ejecutado.
+         */
+        public int getSkips() {
+            return skips;
+        }
+
+        /**
+         * Método que devuelve el tiempo consumido por la etapa en todas sus
+         * ejecuciones.
+         *
+         * @return El tiempo total, en nanosegundos.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Método que devuelve cuántas producciones ha eliminado la etapa.
+         *
+         * @return El número de producciones eliminadas en todas sus ejecuciones.
+         */
+        public int getProductionsRemoved() {
+            return removed;
+        }
+
+        /**
+         * Método que devuelve cuántas producciones ha añadido la etapa.
+         *
+         * @return El número de producciones añadidas en todas sus ejecuciones.
+         */
+        public int getProductionsAdded() {
+            return added;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d ejecuciones, %d omitidas, %.3f ms, -%d/+%d producciones",
+                    name, runs, skips, nanos / 1e6, removed, added);
+        }
+    }
+
+    private final List<Stage> stages = new ArrayList<>();
+    private int rounds;
+    private boolean converged;
+
+    Stage addStage(String name) {
+        Stage stage = new Stage(name);
+        stages.add(stage);
+        return stage;
+    }
+
+    void setRounds(int rounds, boolean converged) {
+        this.rounds = rounds;
+        this.converged = converged;
+    }
+
+    /**
+     * Método que devuelve las estadísticas de cada etapa en orden de
+     * ejecución.
+     *
+     * @return Una lista no modificable con las etapas.
+     */
+    public List<Stage> getStages() {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * Método que devuelve el número de rondas ejecutadas. Si isConverged() es
+     * TRUE, la última ronda es la primera en la que ninguna etapa cambió la
+     * gramática; si no, es el máximo de rondas configurado.
+     *
+     * @return El número de rondas.
+     */
+    public int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Método que indica si la transformación terminó porque ninguna etapa
+     * cambiaba ya la gramática. Si es FALSE se agotó el máximo de rondas y la
+     * gramática puede no estar bien formada.
+     *
+     * @return TRUE si se alcanzó el punto fijo.
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Rondas: ").append(rounds);
+        if (!converged) {
+            sb.append(" (sin alcanzar el punto fijo)");
+        }
+        for (Stage stage : stages) {
+            sb.append('\n').append(stage);
+        }
+        return sb.toString();
+    }
+}
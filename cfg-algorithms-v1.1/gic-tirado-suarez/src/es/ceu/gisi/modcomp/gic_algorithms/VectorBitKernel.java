@@ -0,0 +1,49 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Implementación de BitKernel con la Vector API: cada instrucción procesa
+ * tantos longs como permita el registro vectorial preferido de la máquina (4
+ * con AVX2, 8 con AVX-512). El resto que no llena un vector se hace long a
+ * long. Sólo se carga por reflexión desde BitKernel cuando el módulo
+ * jdk.incubator.vector está disponible.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+final class VectorBitKernel extends BitKernel {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    void or(long[] dst, int d, long[] src, int s, int len) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(len); i < bound; i += SPECIES.length()) {
+            LongVector.fromArray(SPECIES, dst, d + i)
+                    .or(LongVector.fromArray(SPECIES, src, s + i))
+                    .intoArray(dst, d + i);
+        }
+        for (; i < len; i++) {
+            dst[d + i] |= src[s + i];
+        }
+    }
+
+    @Override
+    void or(long[] dst, int d, long[] a, int x, long[] b, int y, int len) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(len); i < bound; i += SPECIES.length()) {
+            LongVector.fromArray(SPECIES, a, x + i)
+                    .or(LongVector.fromArray(SPECIES, b, y + i))
+                    .intoArray(dst, d + i);
+        }
+        for (; i < len; i++) {
+            dst[d + i] = a[x + i] | b[y + i];
+        }
+    }
+
+    @Override
+    boolean isVectorized() {
+        return true;
+    }
+}
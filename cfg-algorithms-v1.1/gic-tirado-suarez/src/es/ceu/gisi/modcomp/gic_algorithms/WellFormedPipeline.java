@@ -0,0 +1,209 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.util.*;
+
+/**
+ * Transformación a gramática bien formada iterada hasta el punto fijo.
+ *
+ * Las cuatro etapas (reglas innecesarias, reglas no generativas, reglas
+ * unitarias y símbolos inútiles) pueden crear trabajo nuevo para las demás:
+ * eliminar reglas lambda genera reglas unitarias, eliminar las unitarias deja
+ * símbolos inútiles, etc. El pipeline mantiene, para cada etapa, los no
+ * terminales que han cambiado desde su última ejecución. Mientras se ejecuta
+ * una etapa, la gramática anota qué no terminales modifica y sus producciones
+ * previas (startChangeLog), así que los cambios se conocen sin comparar la
+ * gramática completa.
+ *
+ * Sólo la etapa de reglas innecesarias es incremental: recorre únicamente los
+ * no terminales cambiados. Las etapas de reglas no generativas y unitarias se
+ * omiten si ninguno de los no terminales cambiados tiene una regla de ese
+ * tipo, pero cuando se ejecutan recorren la gramática entera. La de símbolos
+ * inútiles se ejecuta, sobre la gramática entera, siempre que algo haya
+ * cambiado desde su última ejecución.
+ *
+ * Si se agota el máximo de rondas sin llegar al punto fijo, el pipeline se
+ * detiene y el resumen lo indica con isConverged() a FALSE.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class WellFormedPipeline {
+
+    private static final int USELESS_PRODUCTIONS = 0;
+    private static final int LAMBDA = 1;
+    private static final int UNIT = 2;
+    private static final int USELESS_SYMBOLS = 3;
+
+    private final CFGAlgorithms grammar;
+    private int maxRounds = 64;
+
+    /**
+     * Crea el pipeline para la gramática indicada.
+     *
+     * @param grammar Gramática que se transformará en el sitio.
+     */
+    public WellFormedPipeline(CFGAlgorithms grammar) {
+        this.grammar = grammar;
+    }
+
+    /**
+     * Método que limita el número de rondas, como salvaguarda frente a etapas
+     * que no converjan.
+     *
+     * @param maxRounds Número máximo de rondas (64 por defecto).
+     */
+    public void setMaxRounds(int maxRounds) {
+        if (maxRounds <= 0) {
+            throw new IllegalArgumentException("El número de rondas debe ser al menos 1.");
+        }
+        this.maxRounds = maxRounds;
+    }
+
+    /**
+     * Método que ejecuta las etapas hasta que ninguna cambia la gramática.
+     *
+     * @return El resumen de tiempos y cambios de cada etapa, que indica
+     * también si se ha llegado al punto fijo antes del máximo de rondas.
+     */
+    public TransformationReport run() {
+        TransformationReport report = new TransformationReport();
+        TransformationReport.Stage[] stats = {
+            report.addStage("Reglas innecesarias"),
+            report.addStage("Reglas no generativas"),
+            report.addStage("Reglas unitarias"),
+            report.addStage("Símbolos inútiles")
+        };
+        List<Set<Character>> pending = new ArrayList<>();
+        for (int i = 0; i < stats.length; i++) {
+            pending.add(new TreeSet<>(grammar.getNonTerminals()));
+        }
+
+        int rounds = 0;
+        while (rounds < maxRounds && !allEmpty(pending)) {
+            rounds++;
+            for (int stage = 0; stage < stats.length; stage++) {
+                Set<Character> dirty = pending.get(stage);
+                if (dirty.isEmpty()) {
+                    continue;
+                }
+                if (!hasWork(stage, dirty)) {
+                    stats[stage].recordSkip();
+                    dirty.clear();
+                    continue;
+                }
+                Set<Character> scope = new TreeSet<>(dirty);
+                dirty.clear();
+
+                Map<Character, List<String>> before;
+                grammar.startChangeLog();
+                long t0 = System.nanoTime();
+                try {
+                    apply(stage, scope);
+                } finally {
+                    before = grammar.stopChangeLog();
+                }
+                long elapsed = System.nanoTime() - t0;
+
+                int[] delta = new int[2];
+                Set<Character> changed = changes(before, delta);
+                stats[stage].recordRun(elapsed, delta[0], delta[1]);
+                for (Set<Character> set : pending) {
+                    set.addAll(changed);
+                }
+            }
+        }
+        report.setRounds(rounds, allEmpty(pending));
+        return report;
+    }
+
+    /**
+     * Indica si alguno de los no terminales cambiados puede dar trabajo a la
+     * etapa. Las etapas locales sólo miran esos no terminales; la de símbolos
+     * inútiles es global y se ejecuta ante cualquier cambio.
+     */
+    private boolean hasWork(int stage, Set<Character> dirty) {
+        if (stage == USELESS_SYMBOLS) {
+            return true;
+        }
+        for (char nonterminal : dirty) {
+            List<String> list = grammar.getProductions(nonterminal);
+            if (list == null) {
+                continue;
+            }
+            for (String production : list) {
+                switch (stage) {
+                    case USELESS_PRODUCTIONS:
+                        if (production.length() == 1 && production.charAt(0) == nonterminal) {
+                            return true;
+                        }
+                        break;
+                    case LAMBDA:
+                        if (production.equals("l")) {
+                            return true;
+                        }
+                        break;
+                    default:
+                        if (production.length() == 1 && grammar.getNonTerminals().contains(production.charAt(0))) {
+                            return true;
+                        }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void apply(int stage, Set<Character> scope) {
+        switch (stage) {
+            case USELESS_PRODUCTIONS:
+                grammar.removeUselessProductions(scope);
+                break;
+            case LAMBDA:
+                grammar.removeLambdaProductions();
+                break;
+            case UNIT:
+                grammar.removeUnitProductions();
+                break;
+            default:
+                grammar.removeUselessSymbols();
+        }
+    }
+
+    /**
+     * Devuelve los no terminales anotados cuyas producciones difieren de las
+     * que tenían antes de la etapa y acumula en delta las producciones
+     * eliminadas (0) y añadidas (1).
+     */
+    private Set<Character> changes(Map<Character, List<String>> before, int[] delta) {
+        Set<Character> changed = new TreeSet<>();
+        for (Map.Entry<Character, List<String>> entry : before.entrySet()) {
+            char nonterminal = entry.getKey();
+            List<String> old = entry.getValue();
+            List<String> now = grammar.getNonTerminals().contains(nonterminal) ? grammar.getProductions(nonterminal) : null;
+            if (Objects.equals(old, now)) {
+                continue;
+            }
+            changed.add(nonterminal);
+            Set<String> oldSet = old == null ? Collections.emptySet() : new HashSet<>(old);
+            Set<String> newSet = now == null ? Collections.emptySet() : new HashSet<>(now);
+            for (String production : oldSet) {
+                if (!newSet.contains(production)) {
+                    delta[0]++;
+                }
+            }
+            for (String production : newSet) {
+                if (!oldSet.contains(production)) {
+                    delta[1]++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static boolean allEmpty(List<Set<Character>> sets) {
+        for (Set<Character> set : sets) {
+            if (!set.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
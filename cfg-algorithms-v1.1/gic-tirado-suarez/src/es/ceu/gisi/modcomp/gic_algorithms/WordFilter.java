@@ -0,0 +1,259 @@
+package es.ceu.gisi.modcomp.gic_algorithms;
+
+import java.nio.LongBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filtros precalculados a partir de una gramática compilada que rechazan en
+ * O(n) muchas palabras que no pertenecen al lenguaje, antes de ejecutar CYK:
+ *
+ * - Longitud: el axioma debe poder derivar palabras de esa longitud.
+ *
+ * - Primer y último terminal: deben poder empezar y terminar una palabra
+ * derivada del axioma.
+ *
+ * - Bigramas: cada par de terminales consecutivos debe poder aparecer juntos
+ * en alguna palabra del lenguaje.
+ *
+ * Los filtros son una sobreaproximación: si rechazan, la palabra no
+ * pertenece; si aceptan, CYK decide. Trabajan sobre las clases de terminales
+ * de la gramática compilada y llevan la cuenta de cuántas palabras ha
+ * rechazado cada uno. Sus tablas se calculan al compilar la gramática y se
+ * guardan en su formato binario, así que una gramática proyectada desde un
+ * fichero las lee directamente del buffer.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public final class WordFilter {
+
+    private final CompiledGrammar grammar;
+    private final int q;
+    private final LongBuffer first;
+    private final LongBuffer last;
+    private final LongBuffer bigrams;
+
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder rejectedByLength = new LongAdder();
+    private final LongAdder rejectedByFirst = new LongAdder();
+    private final LongAdder rejectedByLast = new LongAdder();
+    private final LongAdder rejectedByBigram = new LongAdder();
+
+    WordFilter(CompiledGrammar grammar, LongBuffer first, LongBuffer last, LongBuffer bigrams) {
+        this.grammar = grammar;
+        this.q = grammar.classCount();
+        this.first = first;
+        this.last = last;
+        this.bigrams = bigrams;
+    }
+
+    /**
+     * Calcula las tablas de los filtros y las escribe en las secciones
+     * indicadas del formato binario: primeras y últimas clases del axioma
+     * (cw longs cada una) y bigramas (q * cw longs).
+     */
+    static void computeTables(CompiledGrammar grammar, LongBuffer first, LongBuffer last, LongBuffer bigrams) {
+        int r = grammar.nonterminalCount();
+        int q = grammar.classCount();
+        int cw = CompiledGrammar.wordsFor(q);
+
+        // Primeras y últimas clases de terminales de cada no terminal.
+        long[][] firstOf = new long[r][cw];
+        long[][] lastOf = new long[r][cw];
+        for (int cls = 0; cls < q; cls++) {
+            for (int a = 0; a < r; a++) {
+                if ((grammar.classRow(cls, a >>> 6) & (1L << a)) != 0) {
+                    firstOf[a][cls >>> 6] |= 1L << cls;
+                    lastOf[a][cls >>> 6] |= 1L << cls;
+                }
+            }
+        }
+        boolean cambio = true;
+        while (cambio) {
+            cambio = false;
+            for (int b = 0; b < r; b++) {
+                for (int e = grammar.pairOffset(b), end = grammar.pairOffset(b + 1); e < end; e++) {
+                    int c = grammar.pairRight(e);
+                    int a = grammar.pairHead(e);
+                    if (!grammar.productive(b) || !grammar.productive(c)) {
+                        continue;
+                    }
+                    cambio |= or(firstOf[a], firstOf[b]);
+                    cambio |= or(lastOf[a], lastOf[c]);
+                }
+            }
+        }
+
+        // No terminales alcanzables desde el axioma por producciones útiles.
+        boolean[] reachable = new boolean[r];
+        int start = grammar.start();
+        reachable[start] = grammar.productive(start);
+        cambio = true;
+        while (cambio) {
+            cambio = false;
+            for (int b = 0; b < r; b++) {
+                for (int e = grammar.pairOffset(b), end = grammar.pairOffset(b + 1); e < end; e++) {
+                    int c = grammar.pairRight(e);
+                    int a = grammar.pairHead(e);
+                    if (reachable[a] && grammar.productive(b) && grammar.productive(c) && !(reachable[b] && reachable[c])) {
+                        reachable[b] = true;
+                        reachable[c] = true;
+                        cambio = true;
+                    }
+                }
+            }
+        }
+
+        // Bigramas: el último terminal de B seguido del primero de C en cada
+        // A::=BC alcanzable.
+        long[] pairs = new long[Math.max(1, q * cw)];
+        for (int b = 0; b < r; b++) {
+            for (int e = grammar.pairOffset(b), end = grammar.pairOffset(b + 1); e < end; e++) {
+                int c = grammar.pairRight(e);
+                if (!reachable[grammar.pairHead(e)] || !grammar.productive(b) || !grammar.productive(c)) {
+                    continue;
+                }
+                for (int x = 0; x < q; x++) {
+                    if ((lastOf[b][x >>> 6] & (1L << x)) != 0) {
+                        for (int k = 0; k < cw; k++) {
+                            pairs[x * cw + k] |= firstOf[c][k];
+                        }
+                    }
+                }
+            }
+        }
+        first.put(0, firstOf[start]);
+        last.put(0, lastOf[start]);
+        bigrams.put(0, pairs);
+    }
+
+    private static boolean or(long[] target, long[] source) {
+        boolean changed = false;
+        for (int k = 0; k < target.length; k++) {
+            long merged = target[k] | source[k];
+            changed |= merged != target[k];
+            target[k] = merged;
+        }
+        return changed;
+    }
+
+    /**
+     * Aplica los filtros a una palabra ya traducida a clases de terminales.
+     *
+     * @return false si algún filtro demuestra que la palabra no pertenece.
+     */
+    boolean accepts(int[] classes, int n) {
+        checked.increment();
+        if (!grammar.canDerive(grammar.start(), n)) {
+            rejectedByLength.increment();
+            return false;
+        }
+        int cw = CompiledGrammar.wordsFor(q);
+        int head = classes[0];
+        if ((first.get(head >>> 6) & (1L << head)) == 0) {
+            rejectedByFirst.increment();
+            return false;
+        }
+        int tail = classes[n - 1];
+        if ((last.get(tail >>> 6) & (1L << tail)) == 0) {
+            rejectedByLast.increment();
+            return false;
+        }
+        for (int i = 1; i < n; i++) {
+            int y = classes[i];
+            if ((bigrams.get(classes[i - 1] * cw + (y >>> 6)) & (1L << y)) == 0) {
+                rejectedByBigram.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Método que devuelve cuántas palabras han pasado por los filtros.
+     *
+     * @return El número de palabras comprobadas.
+     */
+    public long getChecked() {
+        return checked.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas palabras han rechazado los filtros, y por
+     * tanto cuántas ejecuciones de CYK se han evitado.
+     *
+     * @return El número de palabras rechazadas.
+     */
+    public long getRejected() {
+        return getRejectedByLength() + getRejectedByFirst() + getRejectedByLast() + getRejectedByBigram();
+    }
+
+    /**
+     * Método que devuelve cuántas palabras ha rechazado el filtro de
+     * longitud, porque el axioma no deriva palabras de su longitud.
+     *
+     * @return El número de palabras rechazadas por este filtro.
+     */
+    public long getRejectedByLength() {
+        return rejectedByLength.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas palabras ha rechazado el filtro del
+     * primer terminal, porque ninguna palabra del lenguaje empieza por él.
+     *
+     * @return El número de palabras rechazadas por este filtro.
+     */
+    public long getRejectedByFirst() {
+        return rejectedByFirst.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas palabras ha rechazado el filtro del
+     * último terminal, porque ninguna palabra del lenguaje termina en él.
+     *
+     * @return El número de palabras rechazadas por este filtro.
+     */
+    public long getRejectedByLast() {
+        return rejectedByLast.sum();
+    }
+
+    /**
+     * Método que devuelve cuántas palabras ha rechazado el filtro de
+     * bigramas, porque tienen dos terminales seguidos que no aparecen juntos
+     * en ninguna palabra del lenguaje.
+     *
+     * @return El número de palabras rechazadas por este filtro.
+     */
+    public long getRejectedByBigram() {
+        return rejectedByBigram.sum();
+    }
+
+    /**
+     * Método que devuelve la proporción de palabras rechazadas por los
+     * filtros.
+     *
+     * @return Un valor entre 0 y 1 (0 si no se ha comprobado ninguna).
+     */
+    public double getHitRate() {
+        long total = getChecked();
+        return total == 0 ? 0 : (double) getRejected() / total;
+    }
+
+    /**
+     * Método que pone a cero los contadores.
+     */
+    public void resetStatistics() {
+        checked.reset();
+        rejectedByLength.reset();
+        rejectedByFirst.reset();
+        rejectedByLast.reset();
+        rejectedByBigram.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Filtros: %d comprobadas, %d rechazadas (%.1f%%): longitud %d, primero %d, último %d, bigrama %d",
+                getChecked(), getRejected(), 100 * getHitRate(), getRejectedByLength(),
+                getRejectedByFirst(), getRejectedByLast(), getRejectedByBigram());
+    }
+}
@@ -0,0 +1,28 @@
+package es.ceu.gisi.modcomp.gic_algorithms.exceptions;
+
+/**
+ * Excepción con la que se detiene un análisis CYK cancelado o cuyo plazo ha
+ * vencido. No dice nada sobre la pertenencia de la palabra.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class CYKAbortedException extends CFGAlgorithmsException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean deadlineExpired;
+
+    public CYKAbortedException(String mensaje, boolean deadlineExpired) {
+        super(mensaje);
+        this.deadlineExpired = deadlineExpired;
+    }
+
+    /**
+     * Método que indica el motivo de la interrupción.
+     *
+     * @return TRUE si venció el plazo, FALSE si se canceló el análisis.
+     */
+    public boolean isDeadlineExpired() {
+        return deadlineExpired;
+    }
+}
@@ -0,0 +1,38 @@
+package es.ceu.gisi.modcomp.gic_algorithms.benchmark;
+
+/**
+ * Medición sencilla para las pruebas de rendimiento: unas ejecuciones de
+ * calentamiento y el mejor tiempo de varias repeticiones.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+final class Cronometro {
+
+    /**
+     * Código que se quiere medir.
+     */
+    interface Tarea {
+
+        void ejecutar() throws Exception;
+    }
+
+    private Cronometro() {
+    }
+
+    /**
+     * Ejecuta la tarea warmup veces sin medirla y devuelve el mejor tiempo de
+     * otras repeticiones ejecuciones, en nanosegundos.
+     */
+    static long mejorTiempo(int warmup, int repeticiones, Tarea tarea) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            tarea.ejecutar();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repeticiones; i++) {
+            long t0 = System.nanoTime();
+            tarea.ejecutar();
+            best = Math.min(best, System.nanoTime() - t0);
+        }
+        return best;
+    }
+}
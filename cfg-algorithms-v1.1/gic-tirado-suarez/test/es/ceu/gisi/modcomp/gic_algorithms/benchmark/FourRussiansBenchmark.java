@@ -0,0 +1,86 @@
+package es.ceu.gisi.modcomp.gic_algorithms.benchmark;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.FourRussiansRecognizer;
+import java.util.Random;
+
+/**
+ * Prueba de rendimiento (fuera de los tests de JUnit) que compara el CYK de
+ * la gramática compilada con el reconocedor de los cuatro rusos para
+ * longitudes crecientes y muestra la longitud a partir de la cual compensa
+ * este último. Se ejecuta con:
+ *
+ * java --add-modules jdk.incubator.vector
+ * es.ceu.gisi.modcomp.gic_algorithms.benchmark.FourRussiansBenchmark [max]
+ *
+ * donde max es la longitud máxima de palabra (2048 por defecto).
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class FourRussiansBenchmark {
+
+    /**
+     * Palabras bien parentizadas, con a como paréntesis de apertura y b como
+     * cierre: S::=AB|AC|SS, C::=SB, A::=a, B::=b.
+     */
+    private static CFGAlgorithms gramaticaParentesis() throws Exception {
+        CFGAlgorithms g = new CFGAlgorithms();
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+        g.addNonTerminal('C');
+        g.addTerminal('a');
+        g.addTerminal('b');
+        g.setStartSymbol('S');
+        g.addProduction('S', "AB");
+        g.addProduction('S', "AC");
+        g.addProduction('S', "SS");
+        g.addProduction('C', "SB");
+        g.addProduction('A', "a");
+        g.addProduction('B', "b");
+        return g;
+    }
+
+    private static String parentesis(Random random, int pairs) {
+        StringBuilder sb = new StringBuilder();
+        int open = 0;
+        int remaining = pairs;
+        while (remaining > 0 || open > 0) {
+            if (remaining > 0 && (open == 0 || random.nextBoolean())) {
+                sb.append('a');
+                open++;
+                remaining--;
+            } else {
+                sb.append('b');
+                open--;
+            }
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        CompiledGrammar compiled = CompiledGrammar.compile(gramaticaParentesis());
+        FourRussiansRecognizer recognizer = new FourRussiansRecognizer(compiled);
+        Random random = new Random(7);
+        int crossover = -1;
+
+        System.out.println("Vector API: " + (recognizer.isVectorized() ? "sí" : "no"));
+        System.out.printf("%8s %8s %14s %14s%n", "n", "bloque", "CYK (ms)", "4 rusos (ms)");
+        for (int n = 32; n <= max; n *= 2) {
+            String word = parentesis(random, n / 2);
+            if (compiled.isDerived(word) != recognizer.isDerived(word)) {
+                throw new IllegalStateException("Los reconocedores no coinciden con n=" + n);
+            }
+            int repeticiones = n <= 512 ? 5 : 2;
+            long cyk = Cronometro.mejorTiempo(2, repeticiones, () -> compiled.isDerived(word));
+            long fourRussians = Cronometro.mejorTiempo(2, repeticiones, () -> recognizer.isDerived(word));
+            System.out.printf("%8d %8d %14.3f %14.3f%n", n, recognizer.getBlockSize(n), cyk / 1e6, fourRussians / 1e6);
+            if (crossover < 0 && fourRussians < cyk) {
+                crossover = n;
+            }
+        }
+        System.out.println("Cruce: " + (crossover < 0 ? "no alcanzado" : "n=" + crossover));
+    }
+}
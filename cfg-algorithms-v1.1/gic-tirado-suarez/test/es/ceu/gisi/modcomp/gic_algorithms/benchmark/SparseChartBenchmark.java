@@ -0,0 +1,75 @@
+package es.ceu.gisi.modcomp.gic_algorithms.benchmark;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import java.util.Random;
+
+/**
+ * Prueba de rendimiento (fuera de los tests de JUnit) que compara la tabla
+ * CYK completa con la dispersa en tres gramáticas con distinta proporción de
+ * celdas no vacías: todas (S::=SS|a|b), una parte (paréntesis) y O(n)
+ * (a^k b^k). Se ejecuta con:
+ *
+ * java --add-modules jdk.incubator.vector
+ * es.ceu.gisi.modcomp.gic_algorithms.benchmark.SparseChartBenchmark [n]
+ *
+ * donde n es la longitud de las palabras (256 por defecto).
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class SparseChartBenchmark {
+
+    private static CFGAlgorithms gramatica(char[] nonterminals, String... productions) throws Exception {
+        CFGAlgorithms g = new CFGAlgorithms();
+        for (char nonterminal : nonterminals) {
+            g.addNonTerminal(nonterminal);
+        }
+        g.addTerminal('a');
+        g.addTerminal('b');
+        g.setStartSymbol(nonterminals[0]);
+        for (String production : productions) {
+            g.addProduction(production.charAt(0), production.substring(1));
+        }
+        return g;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) & ~1 : 256;
+        Random random = new Random(11);
+        StringBuilder anbn = new StringBuilder();
+        StringBuilder parentesis = new StringBuilder();
+        StringBuilder cualquiera = new StringBuilder();
+        for (int i = 0; i < n / 2; i++) {
+            anbn.append('a');
+            parentesis.append("ab");
+        }
+        for (int i = 0; i < n / 2; i++) {
+            anbn.append('b');
+        }
+        for (int i = 0; i < n; i++) {
+            cualquiera.append(random.nextBoolean() ? 'a' : 'b');
+        }
+        CFGAlgorithms[] grammars = {
+            gramatica(new char[]{'S'}, "SSS", "Sa", "Sb"),
+            gramatica(new char[]{'S', 'A', 'B', 'C'}, "SAB", "SAC", "SSS", "CSB", "Aa", "Bb"),
+            gramatica(new char[]{'S', 'A', 'B', 'C'}, "SAB", "SAC", "CSB", "Aa", "Bb")
+        };
+        String[] words = {cualquiera.toString(), parentesis.toString(), anbn.toString()};
+        String[] names = {"densa", "media", "dispersa"};
+
+        System.out.printf("%10s %6s %16s %16s %10s%n", "gramática", "n", "completa (ms)", "dispersa (ms)", "mejora");
+        for (int g = 0; g < grammars.length; g++) {
+            CFGAlgorithms gica = grammars[g];
+            String word = words[g];
+            long[] nanos = new long[2];
+            for (int sparse = 0; sparse < 2; sparse++) {
+                gica.setSparseChart(sparse == 1);
+                if (!gica.isDerivedUsignCYK(word)) {
+                    throw new IllegalStateException("La palabra de la gramática " + names[g] + " debería pertenecer.");
+                }
+                nanos[sparse] = Cronometro.mejorTiempo(3, 5, () -> gica.isDerivedUsignCYK(word));
+            }
+            System.out.printf("%10s %6d %16.3f %16.3f %9.1fx%n", names[g], n,
+                    nanos[0] / 1e6, nanos[1] / 1e6, (double) nanos[0] / nanos[1]);
+        }
+    }
+}
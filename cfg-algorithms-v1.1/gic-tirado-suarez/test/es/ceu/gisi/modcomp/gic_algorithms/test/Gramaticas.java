@@ -0,0 +1,83 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.ConcurrentCFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.interfaces.CFGInterface;
+import java.util.Random;
+
+
+
+/**
+ * Gramáticas y palabras compartidas por los tests del reconocimiento CYK.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+final class Gramaticas {
+
+    private Gramaticas() {
+    }
+
+
+
+    /**
+     * Gramática en FNC sobre {a, b} usada por los tests de CYK:
+     *
+     * S::=AB|BC, A::=BA|a, B::=CC|b, C::=AB|a
+     */
+    static CFGAlgorithms fnc() throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+        rellenarFNC(g);
+        return g;
+    }
+
+
+
+    /**
+     * La misma gramática que fnc(), sobre la fachada concurrente.
+     */
+    static ConcurrentCFGAlgorithms fncConcurrente() throws CFGAlgorithmsException {
+        ConcurrentCFGAlgorithms g = new ConcurrentCFGAlgorithms();
+        rellenarFNC(g);
+        return g;
+    }
+
+
+
+    private static void rellenarFNC(CFGInterface g) throws CFGAlgorithmsException {
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+        g.addNonTerminal('C');
+
+        g.addTerminal('a');
+        g.addTerminal('b');
+
+        g.setStartSymbol('S');
+
+        g.addProduction('S', "AB");
+        g.addProduction('S', "BC");
+
+        g.addProduction('A', "BA");
+        g.addProduction('A', "a");
+
+        g.addProduction('B', "CC");
+        g.addProduction('B', "b");
+
+        g.addProduction('C', "AB");
+        g.addProduction('C', "a");
+    }
+
+
+
+    /**
+     * Palabra aleatoria sobre {a, b} de la longitud indicada.
+     */
+    static String palabra(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextBoolean() ? 'a' : 'b');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea la tabla CYK dispersa contra la tabla completa. La
+ * comparación de rendimiento según la proporción de celdas no vacías está en
+ * benchmark.SparseChartBenchmark.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T10_SparseChartTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T10_SparseChartTest() {
+    }
+
+
+
+    private static CFGAlgorithms gramatica(char[] nonterminals, String... productions) throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+        for (char nonterminal : nonterminals) {
+            g.addNonTerminal(nonterminal);
+        }
+        g.addTerminal('a');
+        g.addTerminal('b');
+        g.setStartSymbol(nonterminals[0]);
+        for (String production : productions) {
+            g.addProduction(production.charAt(0), production.substring(1));
+        }
+        return g;
+    }
+
+
+
+    /**
+     * Todas las palabras: S::=SS|a|b. Todas las celdas contienen S.
+     */
+    private CFGAlgorithms gramaticaDensa() throws CFGAlgorithmsException {
+        return gramatica(new char[]{'S'}, "SSS", "Sa", "Sb");
+    }
+
+
+
+    /**
+     * Palabras bien parentizadas: una parte de las celdas no está vacía.
+     */
+    private CFGAlgorithms gramaticaMedia() throws CFGAlgorithmsException {
+        return gramatica(new char[]{'S', 'A', 'B', 'C'}, "SAB", "SAC", "SSS", "CSB", "Aa", "Bb");
+    }
+
+
+
+    /**
+     * a^k b^k: con palabras de esa forma sólo O(n) celdas no están vacías.
+     */
+    private CFGAlgorithms gramaticaDispersa() throws CFGAlgorithmsException {
+        return gramatica(new char[]{'S', 'A', 'B', 'C'}, "SAB", "SAC", "CSB", "Aa", "Bb");
+    }
+
+
+
+    @Test
+    public void comprobarEquivalenteATablaCompleta() throws CFGAlgorithmsException {
+        gica = gramaticaMedia();
+        CFGAlgorithms dispersa = gramaticaMedia();
+        dispersa.setSparseChart(true);
+        CFGAlgorithms descendente = gramaticaMedia();
+        descendente.setSparseChart(true);
+        descendente.setTopDownFiltering(true);
+
+        for (int l = 1; l <= 10; l++) {
+            for (int bits = 0; bits < (1 << l); bits++) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < l; i++) {
+                    sb.append((bits >>> i & 1) == 0 ? 'a' : 'b');
+                }
+                String word = sb.toString();
+                assertEquals(word, gica.isDerivedUsignCYK(word), dispersa.isDerivedUsignCYK(word));
+                assertEquals(word, gica.isDerivedUsignCYK(word), descendente.isDerivedUsignCYK(word));
+            }
+        }
+    }
+
+
+
+    /**
+     * Ambas tablas aceptan palabras largas de las tres gramáticas.
+     */
+    @Test
+    public void comprobarPalabrasLargasSegunDensidad() throws CFGAlgorithmsException {
+        Random random = new Random(11);
+        int n = 256;
+        StringBuilder anbn = new StringBuilder();
+        StringBuilder parentesis = new StringBuilder();
+        StringBuilder cualquiera = new StringBuilder();
+        for (int i = 0; i < n / 2; i++) {
+            anbn.append('a');
+            parentesis.append("ab");
+        }
+        for (int i = 0; i < n / 2; i++) {
+            anbn.append('b');
+        }
+        for (int i = 0; i < n; i++) {
+            cualquiera.append(random.nextBoolean() ? 'a' : 'b');
+        }
+        CFGAlgorithms[] grammars = {gramaticaDensa(), gramaticaMedia(), gramaticaDispersa()};
+        String[] words = {cualquiera.toString(), parentesis.toString(), anbn.toString()};
+
+        for (int g = 0; g < grammars.length; g++) {
+            gica = grammars[g];
+            boolean[] results = new boolean[2];
+            for (int sparse = 0; sparse < 2; sparse++) {
+                gica.setSparseChart(sparse == 1);
+                results[sparse] = gica.isDerivedUsignCYK(words[g]);
+            }
+            assertTrue(results[0]);
+            assertEquals(results[0], results[1]);
+        }
+    }
+}
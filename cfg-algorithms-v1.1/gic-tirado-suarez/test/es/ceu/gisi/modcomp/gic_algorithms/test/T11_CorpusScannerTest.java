@@ -0,0 +1,154 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.CorpusScanner;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea el análisis en paralelo de ficheros con una palabra por
+ * línea.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T11_CorpusScannerTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T11_CorpusScannerTest() {
+    }
+
+
+
+    /**
+     * Palabras bien parentizadas con a como abrir y b como cerrar.
+     */
+    private CFGAlgorithms gramaticaParentesis() throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+        g.addNonTerminal('C');
+
+        g.addTerminal('a');
+        g.addTerminal('b');
+
+        g.setStartSymbol('S');
+
+        g.addProduction('S', "AB");
+        g.addProduction('S', "AC");
+        g.addProduction('S', "SS");
+        g.addProduction('C', "SB");
+        g.addProduction('A', "a");
+        g.addProduction('B', "b");
+
+        return g;
+    }
+
+
+
+    private static List<String> lineas(Random random, int count) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (random.nextInt(4) == 0) { // palabra bien parentizada.
+                int depth = 0;
+                for (int k = random.nextInt(10); k > 0 || depth > 0; k--) {
+                    if (depth > 0 && (k <= 0 || random.nextBoolean())) {
+                        sb.append('b');
+                        depth--;
+                    } else {
+                        sb.append('a');
+                        depth++;
+                    }
+                }
+            } else {
+                for (int k = random.nextInt(12); k > 0; k--) {
+                    sb.append(random.nextInt(20) == 0 ? 'c' : random.nextBoolean() ? 'a' : 'b');
+                }
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+
+
+    @Test
+    public void comprobarEquivalenteAPalabraAPalabra() throws CFGAlgorithmsException, IOException {
+        gica = gramaticaParentesis();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        List<String> lines = lineas(new Random(5), 5000);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            text.append(lines.get(i)).append(i % 7 == 0 ? "\r\n" : "\n");
+        }
+        text.setLength(text.length() - 1); // la última línea sin salto de línea.
+        Path input = Files.createTempFile("corpus", ".txt");
+        Path output = Files.createTempFile("corpus", ".bits");
+        try {
+            Files.write(input, text.toString().getBytes(StandardCharsets.ISO_8859_1));
+            CorpusScanner scanner = new CorpusScanner(compiled);
+            scanner.setChunkSize(997);
+            scanner.setParallelism(4);
+            CorpusScanner.Result result = scanner.scan(input, output);
+
+            BitSet bits = BitSet.valueOf(Files.readAllBytes(output));
+            long accepted = 0;
+            long invalid = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                boolean expected;
+                if (line.indexOf('c') >= 0) {
+                    expected = false;
+                    invalid++;
+                } else {
+                    expected = compiled.isDerived(line);
+                }
+                if (expected) {
+                    accepted++;
+                }
+                assertEquals(i + ": " + line, expected, bits.get(i));
+            }
+            assertTrue(bits.length() <= lines.size());
+            assertEquals(lines.size(), result.getLines());
+            assertEquals(accepted, result.getAccepted());
+            assertEquals(invalid, result.getInvalid());
+            assertTrue(result.getChunks() > 1);
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarFicheroVacio() throws CFGAlgorithmsException, IOException {
+        Path input = Files.createTempFile("corpus", ".txt");
+        Path output = Files.createTempFile("corpus", ".bits");
+        try {
+            CorpusScanner.Result result = new CorpusScanner(CompiledGrammar.compile(gramaticaParentesis())).scan(input, output);
+            assertEquals(0, result.getLines());
+            assertEquals(0, Files.size(output));
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+}
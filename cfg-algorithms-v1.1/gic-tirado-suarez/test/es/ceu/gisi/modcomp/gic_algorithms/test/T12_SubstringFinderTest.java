@@ -0,0 +1,195 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.SubstringFinder;
+import es.ceu.gisi.modcomp.gic_algorithms.SubstringFinder.Span;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+
+
+/**
+ * Clase que testea la búsqueda de todos los fragmentos de un texto que
+ * pertenecen al lenguaje con una única tabla CYK.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T12_SubstringFinderTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T12_SubstringFinderTest() {
+    }
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+
+
+    /**
+     * Palabras bien parentizadas con a como abrir y b como cerrar.
+     */
+    private CFGAlgorithms gramaticaParentesis() throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+        g.addNonTerminal('C');
+
+        g.addTerminal('a');
+        g.addTerminal('b');
+
+        g.setStartSymbol('S');
+
+        g.addProduction('S', "AB");
+        g.addProduction('S', "AC");
+        g.addProduction('S', "SS");
+        g.addProduction('C', "SB");
+        g.addProduction('A', "a");
+        g.addProduction('B', "b");
+
+        return g;
+    }
+
+
+
+    private static String texto(Random random, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            int r = random.nextInt(10);
+            sb.append(r == 0 ? 'x' : r < 6 ? 'a' : 'b');
+        }
+        return sb.toString();
+    }
+
+
+
+    /**
+     * Los fragmentos que deriva el no terminal, analizando cada uno por
+     * separado.
+     */
+    private static boolean[][] fuerzaBruta(CompiledGrammar compiled, String text, char nonterminal) throws CFGAlgorithmsException {
+        int n = text.length();
+        boolean[][] derives = new boolean[n + 1][n + 1];
+        for (int s = 0; s < n; s++) {
+            for (int e = s + 1; e <= n; e++) {
+                String fragment = text.substring(s, e);
+                if (fragment.indexOf('x') < 0) {
+                    derives[s][e] = nonterminal == compiled.getStartSymbol()
+                            ? compiled.isDerived(fragment)
+                            : fragment.equals("a");
+                }
+            }
+        }
+        return derives;
+    }
+
+
+
+    @Test
+    public void comprobarTodosLosFragmentos() throws CFGAlgorithmsException {
+        gica = gramaticaParentesis();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        SubstringFinder finder = new SubstringFinder(compiled);
+        Random random = new Random(3);
+        for (int round = 0; round < 20; round++) {
+            String text = texto(random, 40);
+            for (char nonterminal : new char[]{'S', 'A'}) {
+                boolean[][] expected = fuerzaBruta(compiled, text, nonterminal);
+                List<Span> spans = finder.findAll(text, nonterminal);
+                List<Span> streamed = new ArrayList<>();
+                try (SubstringFinder.Spans it = finder.iterator(text, nonterminal)) {
+                    while (it.hasNext()) {
+                        streamed.add(it.next());
+                    }
+                }
+                assertEquals(spans, streamed);
+
+                int count = 0;
+                for (int s = 0; s < text.length(); s++) {
+                    for (int e = s + 1; e <= text.length(); e++) {
+                        if (expected[s][e]) {
+                            assertEquals(text, new Span(s, e), spans.get(count++));
+                        }
+                    }
+                }
+                assertEquals(count, spans.size());
+            }
+        }
+    }
+
+
+
+    @Test
+    public void comprobarModosSinSolapamiento() throws CFGAlgorithmsException {
+        gica = gramaticaParentesis();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        SubstringFinder finder = new SubstringFinder(compiled);
+        Random random = new Random(8);
+        for (int round = 0; round < 20; round++) {
+            String text = texto(random, 50);
+            boolean[][] expected = fuerzaBruta(compiled, text, 'S');
+            for (SubstringFinder.Mode mode : new SubstringFinder.Mode[]{SubstringFinder.Mode.LEFTMOST_LONGEST, SubstringFinder.Mode.LEFTMOST_SHORTEST}) {
+                List<Span> greedy = new ArrayList<>();
+                int s = 0;
+                while (s < text.length()) {
+                    int found = -1;
+                    for (int e = s + 1; e <= text.length(); e++) {
+                        if (expected[s][e]) {
+                            found = e;
+                            if (mode == SubstringFinder.Mode.LEFTMOST_SHORTEST) {
+                                break;
+                            }
+                        }
+                    }
+                    if (found < 0) {
+                        s++;
+                    } else {
+                        greedy.add(new Span(s, found));
+                        s = found;
+                    }
+                }
+                finder.setMode(mode);
+                assertEquals(text + " " + mode, greedy, finder.findAll(text));
+            }
+        }
+    }
+
+
+
+    @Test
+    public void comprobarLongitudMaxima() throws CFGAlgorithmsException {
+        SubstringFinder finder = new SubstringFinder(CompiledGrammar.compile(gramaticaParentesis()));
+        String text = "aabbxabab";
+        finder.setMaxLength(2);
+        List<Span> spans = finder.findAll(text);
+        List<Span> expected = new ArrayList<>();
+        expected.add(new Span(1, 3));
+        expected.add(new Span(5, 7));
+        expected.add(new Span(7, 9));
+        assertEquals(expected, spans);
+        finder.setMaxLength(Integer.MAX_VALUE);
+        assertTrue(finder.findAll(text).contains(new Span(0, 4)));
+        assertTrue(finder.findAll(text).contains(new Span(5, 9)));
+        assertTrue(finder.findAll("").isEmpty());
+    }
+
+
+
+    @Test
+    public void comprobarNoTerminalNoValido() throws CFGAlgorithmsException {
+        thrown.expect(CFGAlgorithmsException.class);
+
+        new SubstringFinder(CompiledGrammar.compile(gramaticaParentesis())).findAll("ab", 'Z');
+    }
+}
@@ -0,0 +1,104 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.ParseChart;
+import es.ceu.gisi.modcomp.gic_algorithms.SubstringFinder;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+
+
+/**
+ * Clase que testea la tabla CYK que devuelve el análisis de una palabra.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T13_ParseChartTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T13_ParseChartTest() {
+    }
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+
+
+    /**
+     * La misma gramática con otro axioma: el no terminal X deriva un
+     * fragmento si la gramática con axioma X lo deriva.
+     */
+    private CFGAlgorithms gramaticaConAxioma(char axioma) throws CFGAlgorithmsException {
+        CFGAlgorithms g = Gramaticas.fnc();
+        g.setStartSymbol(axioma);
+        return g;
+    }
+
+
+
+    @Test
+    public void comprobarConsultasEquivalentesACYK() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        String word = "baabaabbab";
+        ParseChart chart = gica.parseUsignCYK(word);
+        assertEquals(word.length(), chart.length());
+        assertEquals(gica.isDerivedUsignCYK(word), chart.isDerived());
+
+        for (char nonterminal : new char[]{'S', 'A', 'B', 'C'}) {
+            CompiledGrammar single = CompiledGrammar.compile(gramaticaConAxioma(nonterminal));
+            for (int s = 0; s < word.length(); s++) {
+                for (int e = s + 1; e <= word.length(); e++) {
+                    String fragment = word.substring(s, e);
+                    assertEquals(nonterminal + " " + fragment, single.isDerived(fragment), chart.derives(nonterminal, s, e));
+                }
+            }
+            for (SubstringFinder.Span span : chart.getSpans(nonterminal)) {
+                assertTrue(chart.derives(nonterminal, span.getStart(), span.getEnd()));
+            }
+        }
+    }
+
+
+
+    @Test
+    public void comprobarNoTerminalesDeUnFragmento() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        ParseChart chart = gica.parseUsignCYK("baaba");
+        char[] first = chart.getNonTerminals(0, 1);
+        Arrays.sort(first);
+        assertEquals("B", String.valueOf(first));
+        char[] second = chart.getNonTerminals(1, 2);
+        Arrays.sort(second);
+        assertEquals("AC", String.valueOf(second));
+        for (char nonterminal : chart.getNonTerminals(0, 5)) {
+            assertTrue(chart.derives(nonterminal, 0, 5));
+        }
+        assertEquals(15 * Long.BYTES, chart.getMemoryBytes());
+    }
+
+
+
+    @Test
+    public void comprobarFragmentoNoValido() throws CFGAlgorithmsException {
+        thrown.expect(IndexOutOfBoundsException.class);
+
+        Gramaticas.fnc().parseUsignCYK("ab").derives('S', 1, 3);
+    }
+
+
+
+    @Test
+    public void comprobarPalabraVacia() throws CFGAlgorithmsException {
+        thrown.expect(CFGAlgorithmsException.class);
+
+        Gramaticas.fnc().parseUsignCYK("");
+    }
+}
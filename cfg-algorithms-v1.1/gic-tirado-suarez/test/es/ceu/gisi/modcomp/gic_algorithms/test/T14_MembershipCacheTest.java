@@ -0,0 +1,186 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.ConcurrentCFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.MembershipCache;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea la caché de resultados de pertenencia.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T14_MembershipCacheTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T14_MembershipCacheTest() {
+    }
+
+
+
+    @Test
+    public void comprobarAciertosYFallos() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        CFGAlgorithms sinCache = Gramaticas.fnc();
+        MembershipCache cache = new MembershipCache(1 << 16);
+        gica.setResultCache(cache);
+
+        Random random = new Random(2);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            words.add(Gramaticas.palabra(random, 1 + random.nextInt(12)));
+        }
+        for (int round = 0; round < 3; round++) {
+            for (String word : words) {
+                assertEquals(word, sinCache.isDerivedUsignCYK(word), gica.isDerivedUsignCYK(word));
+                assertEquals(word, sinCache.isDerivedUsignCYK(word), gica.isDerivedUsignCYK(word.toCharArray(), 0, word.length()));
+            }
+        }
+        long distinct = words.stream().distinct().count();
+        assertEquals(distinct, cache.getMisses());
+        assertEquals(6 * words.size() - distinct, cache.getHits());
+        assertEquals(distinct, cache.size());
+    }
+
+
+
+    @Test
+    public void comprobarCambioDeVersion() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        MembershipCache cache = new MembershipCache(1 << 16);
+        gica.setResultCache(cache);
+
+        long version = gica.getVersion();
+        assertFalse(gica.isDerivedUsignCYK("aa"));
+        assertFalse(gica.isDerivedUsignCYK("aa"));
+        assertEquals(1, cache.getHits());
+
+        gica.addProduction('S', "AA");
+        assertTrue(version != gica.getVersion());
+        assertTrue(gica.isDerivedUsignCYK("aa"));
+
+        gica.removeProduction('S', "AA");
+        assertFalse(gica.isDerivedUsignCYK("aa"));
+        assertEquals(1, cache.getHits());
+    }
+
+
+
+    @Test
+    public void comprobarPesoMaximo() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        MembershipCache cache = new MembershipCache(40 * (MembershipCache.ENTRY_WEIGHT + 10), 4);
+        gica.setResultCache(cache);
+        Random random = new Random(4);
+
+        List<String> frecuentes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            frecuentes.add(Gramaticas.palabra(random, 10));
+        }
+        for (int i = 0; i < 2000; i++) {
+            for (String word : frecuentes) {
+                gica.isDerivedUsignCYK(word);
+            }
+            gica.isDerivedUsignCYK(Gramaticas.palabra(random, 10)); // palabras que casi nunca se repiten.
+            assertTrue(cache.getWeight() <= cache.getMaxWeight());
+        }
+        assertTrue(cache.getEvictions() + cache.getRejections() > 0);
+
+        cache.resetStatistics();
+        for (String word : frecuentes) {
+            gica.isDerivedUsignCYK(word);
+        }
+        assertEquals(frecuentes.size(), cache.getHits());
+    }
+
+
+
+    @Test
+    public void comprobarAdmisionTrasCambioDeVersion() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        MembershipCache cache = new MembershipCache(10 * (MembershipCache.ENTRY_WEIGHT + 10), 1);
+        gica.setResultCache(cache);
+        Random random = new Random(8);
+
+        List<String> frecuentes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            frecuentes.add(Gramaticas.palabra(random, 10));
+        }
+        for (int i = 0; i < 5; i++) {
+            for (String word : frecuentes) {
+                gica.isDerivedUsignCYK(word);
+            }
+        }
+        assertEquals(frecuentes.size(), cache.size());
+
+        // Las entradas de la versión anterior ya no se consultan y deben
+        // ceder su sitio a las mismas palabras con la versión nueva.
+        gica.addProduction('S', "AA");
+        for (int i = 0; i < 3; i++) {
+            for (String word : frecuentes) {
+                gica.isDerivedUsignCYK(word);
+            }
+        }
+        cache.resetStatistics();
+        for (String word : frecuentes) {
+            gica.isDerivedUsignCYK(word);
+        }
+        assertEquals(frecuentes.size(), cache.getHits());
+    }
+
+
+
+    @Test
+    public void comprobarAccesoConcurrente() throws Exception {
+        ConcurrentCFGAlgorithms concurrente = Gramaticas.fncConcurrente();
+        MembershipCache cache = new MembershipCache(1 << 12);
+        concurrente.setResultCache(cache);
+        gica = Gramaticas.fnc();
+
+        List<String> words = new ArrayList<>();
+        Random random = new Random(6);
+        Map<String, Boolean> expected = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            String word = Gramaticas.palabra(random, 1 + random.nextInt(10));
+            words.add(word);
+            expected.put(word, gica.isDerivedUsignCYK(word));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                futures.add(pool.submit(() -> {
+                    Random r = new Random(seed);
+                    for (int i = 0; i < 5000; i++) {
+                        String word = words.get(r.nextInt(words.size()));
+                        assertEquals(word, expected.get(word), concurrente.isDerivedUsignCYK(word));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(8 * 5000, cache.getHits() + cache.getMisses());
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    }
+}
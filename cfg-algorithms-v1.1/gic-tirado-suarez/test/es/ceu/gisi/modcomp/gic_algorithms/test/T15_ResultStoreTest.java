@@ -0,0 +1,185 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.ConcurrentCFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.ResultStore;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea el almacén persistente de resultados de pertenencia.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T15_ResultStoreTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T15_ResultStoreTest() {
+    }
+
+
+
+    /**
+     * Palabras distintas sobre {a, b} de longitud 1 a 12.
+     */
+    private static List<String> palabras(int count) {
+        Random random = new Random(count);
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < count) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 1 + random.nextInt(12); k > 0; k--) {
+                sb.append(random.nextBoolean() ? 'a' : 'b');
+            }
+            words.add(sb.toString());
+        }
+        return new ArrayList<>(words);
+    }
+
+
+
+    @Test
+    public void comprobarHuellaEstable() throws CFGAlgorithmsException {
+        long first = CompiledGrammar.compile(Gramaticas.fnc()).getFingerprint();
+        assertEquals(first, CompiledGrammar.compile(Gramaticas.fnc()).getFingerprint());
+        gica = Gramaticas.fnc();
+        gica.addProduction('S', "AA");
+        assertTrue(first != CompiledGrammar.compile(gica).getFingerprint());
+    }
+
+
+
+    @Test
+    public void comprobarResultadosTrasReabrir() throws CFGAlgorithmsException, IOException {
+        Path file = Files.createTempFile("resultados", ".cykr");
+        Files.delete(file);
+        List<String> words = palabras(200);
+        CFGAlgorithms sinAlmacen = Gramaticas.fnc();
+        try {
+            try (ResultStore store = ResultStore.open(file)) {
+                gica = Gramaticas.fnc();
+                gica.setResultStore(store);
+                for (String word : words) {
+                    assertEquals(word, sinAlmacen.isDerivedUsignCYK(word), gica.isDerivedUsignCYK(word));
+                }
+                assertEquals(0, store.getHits());
+            }
+            try (ResultStore store = ResultStore.open(file)) { // como tras reiniciar: otra gramática igual.
+                gica = Gramaticas.fnc();
+                gica.setResultStore(store);
+                for (String word : words) {
+                    assertEquals(word, sinAlmacen.isDerivedUsignCYK(word), gica.isDerivedUsignCYK(word));
+                }
+                assertEquals(words.size(), store.getHits());
+                assertEquals(0, store.getMisses());
+                assertEquals(0, store.getInvalidations());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarInvalidacionConOtraGramatica() throws CFGAlgorithmsException, IOException {
+        Path file = Files.createTempFile("resultados", ".cykr");
+        Files.delete(file);
+        try (ResultStore store = ResultStore.open(file)) {
+            gica = Gramaticas.fnc();
+            gica.setResultStore(store);
+            assertFalse(gica.isDerivedUsignCYK("aa"));
+            assertEquals(1, store.size());
+
+            gica.addProduction('S', "AA");
+            assertTrue(gica.isDerivedUsignCYK("aa"));
+            assertEquals(1, store.getInvalidations());
+            assertEquals(1, store.size());
+            assertEquals(CompiledGrammar.compile(gica).getFingerprint(), store.getFingerprint());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarCompactacion() throws CFGAlgorithmsException, IOException {
+        Path file = Files.createTempFile("resultados", ".cykr");
+        Files.delete(file);
+        List<String> words = palabras(1000);
+        CFGAlgorithms sinAlmacen = Gramaticas.fnc();
+        try {
+            try (ResultStore store = ResultStore.open(file, 16, 64)) {
+                gica = Gramaticas.fnc();
+                gica.setResultStore(store);
+                for (String word : words) {
+                    gica.isDerivedUsignCYK(word);
+                }
+                assertTrue(store.getCompactions() > 0);
+                assertEquals(words.size(), store.size());
+                store.compact();
+                assertEquals(words.size(), store.size());
+            }
+            try (ResultStore store = ResultStore.open(file)) {
+                gica = Gramaticas.fnc();
+                gica.setResultStore(store);
+                for (String word : words) {
+                    assertEquals(word, sinAlmacen.isDerivedUsignCYK(word), gica.isDerivedUsignCYK(word));
+                }
+                assertEquals(0, store.getMisses());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+
+    /**
+     * Si el almacén falla (aquí, porque ya está cerrado), las consultas se
+     * resuelven con CYK y el error queda contado.
+     */
+    @Test
+    public void comprobarFalloDelAlmacen() throws CFGAlgorithmsException, IOException {
+        Path file = Files.createTempFile("resultados", ".cykr");
+        Files.delete(file);
+        Logger log = Logger.getLogger(ResultStore.class.getName());
+        Level level = log.getLevel();
+        log.setLevel(Level.OFF);
+        try {
+            ResultStore store = ResultStore.open(file);
+            store.close();
+            gica = Gramaticas.fnc();
+            gica.setResultStore(store);
+            ConcurrentCFGAlgorithms concurrente = Gramaticas.fncConcurrente();
+            concurrente.setResultStore(store);
+            CFGAlgorithms sinAlmacen = Gramaticas.fnc();
+            for (String word : palabras(20)) {
+                assertEquals(word, sinAlmacen.isDerivedUsignCYK(word), gica.isDerivedUsignCYK(word));
+                assertEquals(word, sinAlmacen.isDerivedUsignCYK(word), concurrente.isDerivedUsignCYK(word));
+            }
+            // Cada consulta falla al buscar y al guardar.
+            assertEquals(2 * 2 * 20, store.getErrors());
+        } finally {
+            log.setLevel(level);
+            Files.deleteIfExists(file);
+        }
+    }
+}
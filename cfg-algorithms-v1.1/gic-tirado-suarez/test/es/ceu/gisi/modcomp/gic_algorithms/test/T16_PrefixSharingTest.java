@@ -0,0 +1,139 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.ConcurrentCFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.PrefixSharingRecognizer;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+
+
+/**
+ * Clase que testea el análisis por lotes que comparte los prefijos comunes.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T16_PrefixSharingTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T16_PrefixSharingTest() {
+    }
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+
+
+    /**
+     * Lote con muchos prefijos comunes: cada palabra es una de unas pocas
+     * raíces largas seguida de un sufijo corto.
+     */
+    private static List<String> lote(Random random, int roots, int count, int rootLength) {
+        String[] stems = new String[roots];
+        for (int i = 0; i < roots; i++) {
+            stems[i] = Gramaticas.palabra(random, rootLength);
+        }
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String stem = stems[random.nextInt(roots)];
+            words.add(stem.substring(0, rootLength / 2 + random.nextInt(rootLength / 2 + 1)) + Gramaticas.palabra(random, random.nextInt(4)));
+        }
+        return words;
+    }
+
+
+
+    @Test
+    public void comprobarIgualQuePalabraAPalabra() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        Random random = new Random(1);
+        List<String> words = lote(random, 5, 300, 16);
+        words.add("");
+        words.add("a");
+        words.add(words.get(0));
+        for (int i = 0; i < 50; i++) {
+            words.add(Gramaticas.palabra(random, 1 + random.nextInt(10)));
+        }
+
+        boolean[] results = gica.isDerivedUsignCYK(words);
+        assertEquals(words.size(), results.length);
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(words.get(i), gica.isDerivedUsignCYK(words.get(i)), results[i]);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarColumnasCompartidas() throws CFGAlgorithmsException {
+        CompiledGrammar grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        PrefixSharingRecognizer recognizer = new PrefixSharingRecognizer(grammar);
+
+        List<String> words = Arrays.asList("abab", "aba", "abb", "ab", "b", "abab");
+        boolean[] results = recognizer.isDerived(words);
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(words.get(i), grammar.isDerived(words.get(i)), results[i]);
+        }
+        // Nodos del trie: a, ab, aba, abab, abb. "b" lo descarta el filtro
+        // (S no deriva palabras de longitud 1).
+        assertEquals(4 + 3 + 3 + 2 + 1 + 4, recognizer.getRequestedColumns());
+        assertEquals(5, recognizer.getComputedColumns());
+
+        recognizer.resetStatistics();
+        assertEquals(0, recognizer.getComputedColumns());
+    }
+
+
+
+    @Test
+    public void comprobarLoteConcurrente() throws CFGAlgorithmsException {
+        ConcurrentCFGAlgorithms concurrente = Gramaticas.fncConcurrente();
+        gica = Gramaticas.fnc();
+
+        List<String> words = lote(new Random(3), 3, 100, 12);
+        words.add("");
+        boolean[] results = concurrente.isDerivedUsignCYK(words);
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(words.get(i), gica.isDerivedUsignCYK(words.get(i)), results[i]);
+        }
+        assertEquals(0, concurrente.isDerivedUsignCYK(new ArrayList<>()).length);
+    }
+
+
+
+    @Test
+    public void comprobarCaracterNoTerminal() throws CFGAlgorithmsException {
+        thrown.expect(CFGAlgorithmsException.class);
+
+        Gramaticas.fnc().isDerivedUsignCYK(Arrays.asList("ab", "abc"));
+    }
+
+
+
+    @Test
+    public void comprobarMenosTrabajoConPrefijos() throws CFGAlgorithmsException {
+        CompiledGrammar grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        PrefixSharingRecognizer recognizer = new PrefixSharingRecognizer(grammar);
+        List<String> words = lote(new Random(5), 20, 2000, 60);
+
+        boolean[] results = recognizer.isDerived(words);
+        for (int i = 0; i < words.size(); i++) {
+            assertEquals(words.get(i), grammar.isDerived(words.get(i)), results[i]);
+        }
+        // Con 20 raíces, casi todas las columnas pedidas ya estaban hechas.
+        long requested = recognizer.getRequestedColumns();
+        long computed = recognizer.getComputedColumns();
+        assertTrue(computed + " de " + requested, computed * 4 < requested);
+    }
+}
@@ -0,0 +1,144 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CancellationToken;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.FourRussiansRecognizer;
+import es.ceu.gisi.modcomp.gic_algorithms.MembershipCache;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea la cancelación y los plazos del análisis CYK.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T17_CancellationTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T17_CancellationTest() {
+    }
+
+
+
+    @Test
+    public void comprobarMismoResultadoSinCancelar() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        CFGAlgorithms dispersa = Gramaticas.fnc();
+        dispersa.setSparseChart(true);
+        CancellationToken token = new CancellationToken();
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            String word = Gramaticas.palabra(random, random.nextInt(15));
+            boolean expected = gica.isDerivedUsignCYK(word);
+            assertEquals(word, expected, gica.isDerivedUsignCYK(word, token));
+            assertEquals(word, expected, gica.isDerivedUsignCYK(word, Duration.ofMinutes(1)));
+            assertEquals(word, expected, dispersa.isDerivedUsignCYK(word, token));
+        }
+    }
+
+
+
+    @Test
+    public void comprobarPlazoVencido() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        String word = Gramaticas.palabra(new Random(2), 2000);
+        CancellationToken token = CancellationToken.withTimeout(Duration.ofMillis(20));
+        try {
+            gica.isDerivedUsignCYK(word, token);
+            fail("El análisis debería haberse detenido.");
+        } catch (CYKAbortedException ex) {
+            assertTrue(ex.isDeadlineExpired());
+        }
+        assertTrue(token.isExpired());
+        assertFalse(token.isCancelled());
+
+        try {
+            gica.isDerivedUsignCYK("abab", Duration.ZERO);
+            fail("El análisis debería haberse detenido.");
+        } catch (CYKAbortedException ex) {
+            assertTrue(ex.isDeadlineExpired());
+        }
+    }
+
+
+
+    @Test
+    public void comprobarCancelacionDesdeOtroHilo() throws Exception {
+        gica = Gramaticas.fnc();
+        gica.setSparseChart(true);
+        String word = Gramaticas.palabra(new Random(3), 2000);
+        CancellationToken token = new CancellationToken();
+        CountDownLatch empezado = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> future = pool.submit(() -> {
+                empezado.countDown();
+                return gica.isDerivedUsignCYK(word, token);
+            });
+            empezado.await();
+            token.cancel();
+            try {
+                future.get();
+                fail("El análisis debería haberse detenido.");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof CYKAbortedException);
+                assertFalse(((CYKAbortedException) ex.getCause()).isDeadlineExpired());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(token.isCancelled());
+    }
+
+
+
+    @Test
+    public void comprobarCacheTrasCancelar() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        MembershipCache cache = new MembershipCache(1 << 16);
+        gica.setResultCache(cache);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            gica.isDerivedUsignCYK("baaba", token);
+            fail("El análisis debería haberse detenido.");
+        } catch (CYKAbortedException ex) {
+            assertEquals(0, cache.size());
+        }
+        assertEquals(Gramaticas.fnc().isDerivedUsignCYK("baaba"), gica.isDerivedUsignCYK("baaba"));
+        assertEquals(1, cache.size());
+    }
+
+
+
+    @Test
+    public void comprobarCuatroRusos() throws CFGAlgorithmsException {
+        CompiledGrammar grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        FourRussiansRecognizer recognizer = new FourRussiansRecognizer(grammar);
+        String word = Gramaticas.palabra(new Random(4), 200);
+        assertEquals(grammar.isDerived(word), recognizer.isDerived(word, new CancellationToken()));
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        try {
+            recognizer.isDerived(word, token);
+            fail("El análisis debería haberse detenido.");
+        } catch (CYKAbortedException ex) {
+            assertFalse(ex.isDeadlineExpired());
+        }
+    }
+}
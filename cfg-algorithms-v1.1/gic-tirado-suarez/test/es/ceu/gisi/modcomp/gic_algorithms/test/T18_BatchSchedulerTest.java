@@ -0,0 +1,164 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.BatchScheduler;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+
+
+/**
+ * Clase que testea el planificador de lotes por coste estimado.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T18_BatchSchedulerTest {
+
+    private CompiledGrammar grammar;
+
+
+
+    public T18_BatchSchedulerTest() {
+    }
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+
+
+    /**
+     * Lote mezclado: muchas palabras cortas y unas pocas largas repartidas.
+     */
+    private static List<String> lote(Random random, int shortWords, int longWords, int longLength) {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < shortWords; i++) {
+            words.add(Gramaticas.palabra(random, random.nextInt(20)));
+        }
+        for (int i = 0; i < longWords; i++) {
+            words.add(random.nextInt(words.size() + 1), Gramaticas.palabra(random, longLength));
+        }
+        return words;
+    }
+
+
+
+    @Test
+    public void comprobarIgualQuePalabraAPalabra() throws CFGAlgorithmsException {
+        grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        List<String> words = lote(new Random(1), 300, 5, 120);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (BatchScheduler.Order order : BatchScheduler.Order.values()) {
+                BatchScheduler scheduler = new BatchScheduler(grammar, pool);
+                scheduler.setOrder(order);
+                scheduler.setSplitLength(100);
+                scheduler.setPackCost(20000);
+                BatchScheduler.Result result = scheduler.run(words);
+                for (int i = 0; i < words.size(); i++) {
+                    assertTrue(result.isCompleted(i));
+                    assertEquals(words.get(i), grammar.isDerived(words.get(i)), result.isDerived(i));
+                }
+                assertEquals(5, result.getSplitWords());
+                assertTrue(result.getTasks() > 5 && result.getTasks() < words.size());
+                assertEquals(0, result.getMissedDeadlines());
+                assertTrue(result.getMakespanNanos() >= result.getMeanLatencyNanos());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+
+    @Test
+    public void comprobarCosteEstimado() throws CFGAlgorithmsException {
+        grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        BatchScheduler scheduler = new BatchScheduler(grammar);
+        assertEquals(5 * 1000, scheduler.estimateCost(10)); // 5 producciones binarias.
+        BatchScheduler.Result result = scheduler.run(Arrays.asList("ab", "abab", ""));
+        assertEquals(5 * (8 + 64), result.getEstimatedCost());
+        assertEquals(1, result.getTasks());
+    }
+
+
+
+    @Test
+    public void comprobarPlazos() throws CFGAlgorithmsException {
+        grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        Random random = new Random(2);
+        List<String> words = new ArrayList<>();
+        List<Duration> deadlines = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            words.add(Gramaticas.palabra(random, 1 + random.nextInt(15)));
+            deadlines.add(i % 2 == 0 ? null : Duration.ofMinutes(1));
+        }
+        words.add(Gramaticas.palabra(random, 3000));
+        deadlines.add(Duration.ofMillis(20));
+
+        BatchScheduler scheduler = new BatchScheduler(grammar);
+        scheduler.setOrder(BatchScheduler.Order.EARLIEST_DEADLINE_FIRST);
+        BatchScheduler.Result result = scheduler.run(words, deadlines);
+        assertEquals(1, result.getMissedDeadlines());
+        assertFalse(result.isCompleted(words.size() - 1));
+        for (int i = 0; i < 50; i++) {
+            assertTrue(result.isCompleted(i));
+            assertEquals(words.get(i), grammar.isDerived(words.get(i)), result.isDerived(i));
+        }
+    }
+
+
+
+    @Test
+    public void comprobarCaracterNoTerminal() throws CFGAlgorithmsException {
+        thrown.expect(CFGAlgorithmsException.class);
+
+        grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        new BatchScheduler(grammar).run(Arrays.asList("ab", "abc", "ba"));
+    }
+
+
+
+    @Test
+    public void comprobarParametrosNoPositivos() throws CFGAlgorithmsException {
+        BatchScheduler scheduler = new BatchScheduler(CompiledGrammar.compile(Gramaticas.fnc()));
+        try {
+            scheduler.setSplitLength(0);
+            fail("Una longitud de reparto nula debería rechazarse.");
+        } catch (IllegalArgumentException ex) {
+        }
+        thrown.expect(IllegalArgumentException.class);
+        scheduler.setPackCost(-1);
+    }
+
+
+
+    @Test
+    public void comprobarLatenciaMasCortoPrimero() throws CFGAlgorithmsException {
+        grammar = CompiledGrammar.compile(Gramaticas.fnc());
+        List<String> words = lote(new Random(3), 2000, 4, 300);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            BatchScheduler sjf = new BatchScheduler(grammar, pool);
+            sjf.setSplitLength(200);
+            BatchScheduler fifo = new BatchScheduler(grammar, pool);
+            fifo.setOrder(BatchScheduler.Order.EARLIEST_DEADLINE_FIRST); // sin plazos: orden de llegada.
+            fifo.setSplitLength(Integer.MAX_VALUE);
+            BatchScheduler.Result a = sjf.run(words);
+            BatchScheduler.Result b = fifo.run(words);
+
+            // Las palabras largas van al final y no retrasan a las cortas.
+            assertTrue(a + " / " + b, a.getMeanLatencyNanos() <= b.getMeanLatencyNanos());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
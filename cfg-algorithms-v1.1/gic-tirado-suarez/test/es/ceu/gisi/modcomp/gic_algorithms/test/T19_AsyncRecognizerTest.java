@@ -0,0 +1,190 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.AsyncRecognizer;
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CYKAbortedException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea la fachada asíncrona con cola acotada.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T19_AsyncRecognizerTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T19_AsyncRecognizerTest() {
+    }
+
+
+
+    /**
+     * Ejecutor que guarda las tareas hasta que se le pide ejecutarlas.
+     */
+    private static final class EjecutorManual implements Executor {
+
+        private final List<Runnable> pendientes = new ArrayList<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            pendientes.add(task);
+        }
+
+        synchronized int ejecutarTodas() {
+            int count = pendientes.size();
+            for (Runnable task : pendientes) {
+                task.run();
+            }
+            pendientes.clear();
+            return count;
+        }
+    }
+
+
+
+    @Test
+    public void comprobarIgualQueSincrono() throws Exception {
+        gica = Gramaticas.fnc();
+        Random random = new Random(1);
+        List<String> words = new ArrayList<>();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        try (AsyncRecognizer async = new AsyncRecognizer(Gramaticas.fncConcurrente(), 4, 16, AsyncRecognizer.Overflow.BLOCK)) {
+            for (int i = 0; i < 500; i++) {
+                String word = Gramaticas.palabra(random, random.nextInt(30));
+                words.add(word);
+                futures.add(async.isDerivedUsignCYK(word));
+                assertTrue(async.getQueueDepth() <= 16);
+            }
+            for (int i = 0; i < words.size(); i++) {
+                assertEquals(words.get(i), gica.isDerivedUsignCYK(words.get(i)), futures.get(i).get());
+            }
+            assertEquals(500, async.getSubmitted());
+            assertEquals(0, async.getRejected());
+            assertTrue(async.getPeakQueueDepth() <= 16);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarRechazoConColaLlena() throws Exception {
+        EjecutorManual ejecutor = new EjecutorManual();
+        AsyncRecognizer async = new AsyncRecognizer(Gramaticas.fncConcurrente(), ejecutor, 2, AsyncRecognizer.Overflow.REJECT);
+        CompletableFuture<Boolean> first = async.isDerivedUsignCYK("ab");
+        CompletableFuture<Boolean> second = async.isDerivedUsignCYK("ba");
+        CompletableFuture<Boolean> third = async.isDerivedUsignCYK("baaba");
+        assertEquals(2, async.getQueueDepth());
+        assertEquals(0, async.getAvailableCapacity());
+        assertTrue(third.isCompletedExceptionally());
+        try {
+            third.get();
+            fail("La consulta debería haberse rechazado.");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof RejectedExecutionException);
+        }
+        assertEquals(1, async.getRejected());
+
+        assertEquals(2, ejecutor.ejecutarTodas());
+        assertEquals(Gramaticas.fnc().isDerivedUsignCYK("ab"), first.get());
+        assertEquals(Gramaticas.fnc().isDerivedUsignCYK("ba"), second.get());
+        assertEquals(0, async.getQueueDepth());
+        assertEquals(2, async.getAvailableCapacity());
+        assertEquals(2, async.getPeakQueueDepth());
+        assertEquals(2, async.getCompleted());
+
+        async.close();
+        assertTrue(async.isDerivedUsignCYK("ab").isCompletedExceptionally());
+    }
+
+
+
+    @Test
+    public void comprobarEsperaConColaLlena() throws Exception {
+        EjecutorManual ejecutor = new EjecutorManual();
+        AsyncRecognizer async = new AsyncRecognizer(Gramaticas.fncConcurrente(), ejecutor, 1, AsyncRecognizer.Overflow.BLOCK);
+        async.isDerivedUsignCYK("ab");
+        List<CompletableFuture<Boolean>> second = new ArrayList<>();
+        Thread sender = new Thread(() -> second.add(async.isDerivedUsignCYK("baaba")));
+        sender.start();
+        sender.join(100);
+        assertTrue(sender.isAlive()); // esperando a que haya sitio.
+
+        assertEquals(1, ejecutor.ejecutarTodas());
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertEquals(1, ejecutor.ejecutarTodas());
+        assertEquals(Gramaticas.fnc().isDerivedUsignCYK("baaba"), second.get(0).get());
+        assertEquals(0, async.getRejected());
+    }
+
+
+
+    @Test
+    public void comprobarCancelacionYPlazo() throws Exception {
+        String larga = Gramaticas.palabra(new Random(2), 3000);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CountDownLatch empezada = new CountDownLatch(1);
+        Executor ejecutor = task -> pool.execute(() -> {
+            empezada.countDown();
+            task.run();
+        });
+        try (AsyncRecognizer async = new AsyncRecognizer(Gramaticas.fncConcurrente(), ejecutor, 4, AsyncRecognizer.Overflow.REJECT)) {
+            CompletableFuture<Boolean> cancelada = async.isDerivedUsignCYK(larga);
+            empezada.await();
+            assertTrue(cancelada.cancel(true));
+
+            // Un único hilo: la consulta con plazo sólo empieza cuando la
+            // cancelada ha soltado el hilo.
+            CompletableFuture<Boolean> conPlazo = async.isDerivedUsignCYK(larga, Duration.ofMillis(50));
+            try {
+                conPlazo.get();
+                fail("El análisis debería haberse detenido.");
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof CYKAbortedException);
+                assertTrue(((CYKAbortedException) ex.getCause()).isDeadlineExpired());
+            }
+            assertTrue(cancelada.isCancelled());
+            pool.shutdown(); // espera a que las dos consultas dejen el hilo.
+            assertTrue(pool.awaitTermination(1, TimeUnit.MINUTES));
+            assertEquals(2, async.getCompleted());
+            assertEquals(2, async.getAborted());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+
+    @Test
+    public void comprobarHilosVirtuales() throws Exception {
+        if (!AsyncRecognizer.isVirtualThreadsAvailable()) {
+            try {
+                AsyncRecognizer.withVirtualThreads(Gramaticas.fncConcurrente(), 8, AsyncRecognizer.Overflow.REJECT);
+                fail("Sin hilos virtuales debería fallar.");
+            } catch (UnsupportedOperationException ex) {
+                return;
+            }
+        }
+        try (AsyncRecognizer async = AsyncRecognizer.withVirtualThreads(Gramaticas.fncConcurrente(), 8, AsyncRecognizer.Overflow.BLOCK)) {
+            assertEquals(Gramaticas.fnc().isDerivedUsignCYK("baaba"), async.isDerivedUsignCYK("baaba").get());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.GrammarVersion;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea la caché de getProductionsToString: tras cualquier cambio
+ * la representación debe ser la de las producciones actuales, y las
+ * versiones que escriben en un Appendable deben coincidir con las que
+ * devuelven un String.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T20_ProductionsToStringTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T20_ProductionsToStringTest() {
+    }
+
+
+
+    private CFGAlgorithms gramatica() throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+        g.addTerminal('a');
+        g.addTerminal('b');
+
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+
+        g.setStartSymbol('S');
+
+        g.addProduction('S', "AB");
+        g.addProduction('A', "aA");
+        g.addProduction('A', "l");
+        g.addProduction('B', "b");
+        g.addProduction('B', "A");
+
+        return g;
+    }
+
+
+
+    /**
+     * Representación de las producciones construida sin pasar por la caché.
+     */
+    private static String esperado(CFGAlgorithms g, char nonterminal) {
+        List<String> lista = g.getProductions(nonterminal);
+        return lista == null ? "" : nonterminal + "::=" + String.join("|", lista);
+    }
+
+
+
+    private static void comprobarActualizada(CFGAlgorithms g) {
+        for (char nonterminal : g.getNonTerminals()) {
+            assertEquals(esperado(g, nonterminal), g.getProductionsToString(nonterminal));
+        }
+    }
+
+
+
+    @Test
+    public void comprobarCacheTrasModificar() throws CFGAlgorithmsException {
+        gica = gramatica();
+        assertEquals("A::=aA|l", gica.getProductionsToString('A'));
+
+        gica.addProduction('A', "b");
+        assertEquals("A::=aA|b|l", gica.getProductionsToString('A'));
+
+        gica.removeProduction('A', "l");
+        assertEquals("A::=aA|b", gica.getProductionsToString('A'));
+
+        assertEquals("B::=A|b", gica.getProductionsToString('B'));
+        gica.removeNonTerminal('B');
+        assertEquals("", gica.getProductionsToString('B'));
+        comprobarActualizada(gica);
+    }
+
+
+
+    @Test
+    public void comprobarCacheTrasTransformar() throws CFGAlgorithmsException {
+        gica = gramatica();
+        comprobarActualizada(gica); // llena la caché de todos los no terminales.
+
+        gica.removeLambdaProductions();
+        comprobarActualizada(gica);
+        gica.removeUnitProductions();
+        comprobarActualizada(gica);
+        gica.removeUselessSymbols();
+        comprobarActualizada(gica);
+
+        gica.deleteGrammar();
+        assertEquals("", gica.getProductionsToString('A'));
+    }
+
+
+
+    @Test
+    public void comprobarCacheTrasRestaurar() throws CFGAlgorithmsException {
+        gica = gramatica();
+        String original = gica.getGrammar();
+        GrammarVersion v0 = gica.snapshot();
+
+        gica.addProduction('S', "a");
+        gica.removeProduction('B', "A");
+        String modificada = gica.getGrammar();
+        assertEquals("S::=AB|a", gica.getProductionsToString('S'));
+
+        gica.restore(v0);
+        assertEquals("S::=AB", gica.getProductionsToString('S'));
+        assertEquals("B::=A|b", gica.getProductionsToString('B'));
+        assertEquals(original, gica.getGrammar());
+
+        gica.addProduction('A', "b");
+        assertEquals("A::=aA|b|l", gica.getProductionsToString('A'));
+        assertFalse(modificada.equals(gica.getGrammar()));
+        comprobarActualizada(gica);
+    }
+
+
+
+    @Test
+    public void comprobarAppendableIgualQueString() throws CFGAlgorithmsException, IOException {
+        gica = gramatica();
+        for (int round = 0; round < 2; round++) { // sin caché y con caché.
+            for (char nonterminal : new char[]{'S', 'A', 'B', 'C'}) {
+                StringWriter out = new StringWriter();
+                gica.getProductionsToString(nonterminal, out);
+                assertEquals(gica.getProductionsToString(nonterminal), out.toString());
+            }
+            StringBuilder sb = new StringBuilder();
+            gica.getGrammar(sb);
+            assertEquals(gica.getGrammar(), sb.toString());
+        }
+
+        gica.removeLambdaProductions();
+        StringWriter out = new StringWriter();
+        gica.getGrammar(out);
+        assertEquals(gica.getGrammar(), out.toString());
+    }
+}
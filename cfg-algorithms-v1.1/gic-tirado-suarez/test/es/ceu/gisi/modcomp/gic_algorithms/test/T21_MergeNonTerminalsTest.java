@@ -0,0 +1,111 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea la fusión de no terminales equivalentes.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T21_MergeNonTerminalsTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T21_MergeNonTerminalsTest() {
+    }
+
+
+
+    private CFGAlgorithms gramatica(String terminals, String nonterminals, char axiom, String... productions) throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+        for (char terminal : terminals.toCharArray()) {
+            g.addTerminal(terminal);
+        }
+        for (char nonterminal : nonterminals.toCharArray()) {
+            g.addNonTerminal(nonterminal);
+        }
+        g.setStartSymbol(axiom);
+        for (String production : productions) {
+            g.addProduction(production.charAt(0), production.substring(4));
+        }
+        return g;
+    }
+
+
+
+    /**
+     * Al fusionar D con C, X::=aC e Y::=aD pasan a ser iguales y se fusionan
+     * en una segunda vuelta.
+     */
+    @Test
+    public void comprobarFusionEnVariasVueltas() throws CFGAlgorithmsException {
+        gica = gramatica("ab", "SXYCD", 'S',
+                "S::=aX", "S::=bY", "X::=aC", "Y::=aD", "C::=b", "D::=b");
+
+        List<Character> merged = gica.mergeEquivalentNonTerminals();
+        assertEquals(new HashSet<>(Arrays.asList('D', 'Y')), new HashSet<>(merged));
+        assertEquals(new HashSet<>(Arrays.asList('S', 'X', 'C')), gica.getNonTerminals());
+        assertEquals("S::=aX|bX", gica.getProductionsToString('S'));
+        assertEquals("X::=aC", gica.getProductionsToString('X'));
+        assertTrue(gica.mergeEquivalentNonTerminals().isEmpty());
+    }
+
+
+
+    /**
+     * El axioma es siempre el representante, aunque otro no terminal
+     * equivalente vaya antes en orden alfabético.
+     */
+    @Test
+    public void comprobarAxiomaComoRepresentante() throws CFGAlgorithmsException {
+        gica = gramatica("ab", "SAB", 'S',
+                "S::=a", "S::=b", "A::=a", "A::=b", "B::=bA");
+
+        assertEquals(Arrays.asList('A'), gica.mergeEquivalentNonTerminals());
+        assertEquals('S', (char) gica.getStartSymbol());
+        assertFalse(gica.getNonTerminals().contains('A'));
+        assertEquals("B::=bS", gica.getProductionsToString('B'));
+    }
+
+
+
+    /**
+     * Las apariciones de cada no terminal en sus propias producciones se
+     * consideran iguales: A::=aA|b y B::=aB|b son equivalentes.
+     */
+    @Test
+    public void comprobarAutorreferencia() throws CFGAlgorithmsException {
+        gica = gramatica("abcd", "SAB", 'S',
+                "S::=cA", "S::=dB", "A::=aA", "A::=b", "B::=aB", "B::=b");
+
+        assertEquals(Arrays.asList('B'), gica.mergeEquivalentNonTerminals());
+        assertEquals("A::=aA|b", gica.getProductionsToString('A'));
+        assertEquals("S::=cA|dA", gica.getProductionsToString('S'));
+    }
+
+
+
+    /**
+     * A::=aB|b y B::=aA|c se parecen pero terminan en terminales distintos,
+     * así que no se fusionan.
+     */
+    @Test
+    public void comprobarSinFusion() throws CFGAlgorithmsException {
+        gica = gramatica("abc", "SAB", 'S',
+                "S::=A", "S::=B", "A::=aB", "A::=b", "B::=aA", "B::=c");
+        String original = gica.getGrammar();
+
+        assertTrue(gica.mergeEquivalentNonTerminals().isEmpty());
+        assertEquals(original, gica.getGrammar());
+    }
+}
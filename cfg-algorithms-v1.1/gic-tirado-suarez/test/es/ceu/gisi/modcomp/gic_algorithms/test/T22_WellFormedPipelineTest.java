@@ -0,0 +1,162 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.TransformationReport;
+import es.ceu.gisi.modcomp.gic_algorithms.WellFormedPipeline;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+
+
+/**
+ * Clase que testea el pipeline de transformación a gramática bien formada y
+ * el resumen que deja cada ejecución.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T22_WellFormedPipelineTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T22_WellFormedPipelineTest() {
+    }
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+
+
+    /**
+     * S::=S|aA|b, A::=aA|l y B::=b: tiene una regla innecesaria, una regla
+     * lambda y un símbolo inaccesible.
+     */
+    private static CFGAlgorithms gramatica() throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+        g.addTerminal('a');
+        g.addTerminal('b');
+
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+
+        g.setStartSymbol('S');
+
+        g.addProduction('S', "S");
+        g.addProduction('S', "aA");
+        g.addProduction('S', "b");
+        g.addProduction('A', "aA");
+        g.addProduction('A', "l");
+        g.addProduction('B', "b");
+
+        return g;
+    }
+
+
+
+    private static TransformationReport.Stage etapa(TransformationReport report, int index) {
+        return report.getStages().get(index);
+    }
+
+
+
+    @Test
+    public void comprobarOrdenDeEtapas() throws CFGAlgorithmsException {
+        gica = gramatica();
+        assertNull(gica.getTransformationReport());
+
+        gica.transformToWellFormedGrammar();
+        TransformationReport report = gica.getTransformationReport();
+        List<String> names = Arrays.asList(
+                etapa(report, 0).getName(), etapa(report, 1).getName(),
+                etapa(report, 2).getName(), etapa(report, 3).getName());
+        assertEquals(Arrays.asList("Reglas innecesarias", "Reglas no generativas",
+                "Reglas unitarias", "Símbolos inútiles"), names);
+    }
+
+
+
+    @Test
+    public void comprobarContenidoDelResumen() throws CFGAlgorithmsException {
+        gica = gramatica();
+        gica.transformToWellFormedGrammar();
+        TransformationReport report = gica.getTransformationReport();
+
+        assertTrue(report.isConverged());
+        assertEquals(2, report.getRounds());
+        assertEquals(1, etapa(report, 0).getRuns());
+        assertEquals(1, etapa(report, 0).getProductionsRemoved()); // S::=S
+        assertEquals(1, etapa(report, 1).getRuns());
+        assertEquals(1, etapa(report, 1).getProductionsRemoved()); // A::=l
+        assertEquals(2, etapa(report, 1).getProductionsAdded()); // S::=a y A::=a
+        assertEquals(0, etapa(report, 2).getRuns());
+        assertEquals(2, etapa(report, 3).getRuns());
+        for (TransformationReport.Stage stage : report.getStages()) {
+            assertTrue(stage.getNanos() >= 0);
+            assertEquals(2, stage.getRuns() + stage.getSkips());
+        }
+        assertFalse(report.toString().contains("sin alcanzar"));
+    }
+
+
+
+    @Test
+    public void comprobarEjecucionIncremental() throws CFGAlgorithmsException {
+        gica = gramatica();
+        gica.transformToWellFormedGrammar();
+        String transformada = gica.getGrammar();
+
+        // Ya bien formada: sólo se ejecuta la etapa global, sin cambios.
+        gica.transformToWellFormedGrammar();
+        TransformationReport report = gica.getTransformationReport();
+        assertEquals(transformada, gica.getGrammar());
+        assertTrue(report.isConverged());
+        assertEquals(1, report.getRounds());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, etapa(report, i).getRuns());
+            assertEquals(1, etapa(report, i).getSkips());
+        }
+        assertEquals(1, etapa(report, 3).getRuns());
+        assertEquals(0, etapa(report, 3).getProductionsRemoved());
+
+        // Tras una modificación sólo trabajan las etapas afectadas.
+        gica.addProduction('S', "S");
+        gica.transformToWellFormedGrammar();
+        report = gica.getTransformationReport();
+        assertEquals(transformada, gica.getGrammar());
+        assertEquals(1, etapa(report, 0).getRuns());
+        assertEquals(1, etapa(report, 0).getProductionsRemoved());
+        assertEquals(0, etapa(report, 1).getRuns());
+        assertEquals(0, etapa(report, 2).getRuns());
+        assertEquals(1, etapa(report, 3).getRuns());
+    }
+
+
+
+    @Test
+    public void comprobarSinPuntoFijo() throws CFGAlgorithmsException {
+        gica = gramatica();
+        WellFormedPipeline pipeline = new WellFormedPipeline(gica);
+        pipeline.setMaxRounds(1);
+        TransformationReport report = pipeline.run();
+
+        assertEquals(1, report.getRounds());
+        assertFalse(report.isConverged());
+        assertTrue(report.toString().contains("sin alcanzar el punto fijo"));
+    }
+
+
+
+    @Test
+    public void comprobarRondasNoPositivas() throws CFGAlgorithmsException {
+        thrown.expect(IllegalArgumentException.class);
+
+        new WellFormedPipeline(gramatica()).setMaxRounds(0);
+    }
+}
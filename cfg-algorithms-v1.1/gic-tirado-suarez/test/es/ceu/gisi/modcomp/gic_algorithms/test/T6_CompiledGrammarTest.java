@@ -0,0 +1,451 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CYKWorkspace;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.WordFilter;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+
+
+/**
+ * Clase que testea la compilación de gramáticas en Forma Normal de Chomsky y
+ * su formato binario proyectado en memoria.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T6_CompiledGrammarTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T6_CompiledGrammarTest() {
+    }
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+
+
+    /**
+     * Genera todas las palabras sobre {a, b} de longitud 1 a maxLength.
+     */
+    private static String[] palabras(int maxLength) {
+        int total = 0;
+        for (int l = 1; l <= maxLength; l++) {
+            total += 1 << l;
+        }
+        String[] words = new String[total];
+        int k = 0;
+        for (int l = 1; l <= maxLength; l++) {
+            for (int bits = 0; bits < (1 << l); bits++) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < l; i++) {
+                    sb.append((bits >>> i & 1) == 0 ? 'a' : 'b');
+                }
+                words[k++] = sb.toString();
+            }
+        }
+        return words;
+    }
+
+
+
+    /**
+     * CYK de referencia, directamente sobre las producciones y con un
+     * HashSet por celda, para contrastar la versión compilada.
+     */
+    static boolean cykReferencia(CFGAlgorithms g, String word) throws CFGAlgorithmsException {
+        int n = word.length();
+        List<List<Set<Character>>> table = new ArrayList<>(n); // table.get(s).get(l - 1)
+        for (int s = 0; s < n; s++) {
+            table.add(new ArrayList<>());
+        }
+        for (int l = 1; l <= n; l++) {
+            for (int s = 0; s <= n - l; s++) {
+                Set<Character> cell = new HashSet<>();
+                table.get(s).add(cell);
+                for (char a : g.getNonTerminals()) {
+                    List<String> productions = g.getProductions(a);
+                    if (productions == null) {
+                        continue;
+                    }
+                    for (String production : productions) {
+                        if (l == 1 && production.length() == 1 && production.charAt(0) == word.charAt(s)) {
+                            cell.add(a);
+                        }
+                        for (int p = 1; p < l && production.length() == 2; p++) {
+                            if (table.get(s).get(p - 1).contains(production.charAt(0))
+                                    && table.get(s + p).get(l - p - 1).contains(production.charAt(1))) {
+                                cell.add(a);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return table.get(0).get(n - 1).contains(g.getStartSymbol());
+    }
+
+
+
+    @Test
+    public void comprobarCompilacionEquivalenteACYK() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+
+        assertEquals('S', compiled.getStartSymbol());
+        assertEquals(5, compiled.getBinaryProductionCount());
+        for (String word : palabras(8)) {
+            assertEquals(word, cykReferencia(gica, word), compiled.isDerived(word));
+            assertEquals(word, cykReferencia(gica, word), gica.isDerivedUsignCYK(word));
+        }
+    }
+
+
+
+    @Test
+    public void comprobarLongitudesDerivables() throws CFGAlgorithmsException {
+        gica = new CFGAlgorithms();
+        gica.addNonTerminal('S');
+        gica.addNonTerminal('A');
+        gica.addNonTerminal('B');
+        gica.addNonTerminal('C');
+        gica.addNonTerminal('D');
+        gica.addTerminal('a');
+        gica.addTerminal('b');
+        gica.setStartSymbol('S');
+        gica.addProduction('S', "AC");
+        gica.addProduction('C', "BB");
+        gica.addProduction('A', "a");
+        gica.addProduction('B', "b");
+        gica.addProduction('D', "DA");
+        gica.addProduction('D', "a");
+
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        assertEquals(3, compiled.getMinLength('S'));
+        assertEquals(3, compiled.getMaxLength('S'));
+        assertEquals(1, compiled.getMinLength('D'));
+        assertEquals(CompiledGrammar.UNBOUNDED, compiled.getMaxLength('D'));
+        assertTrue(compiled.isDerived("abb"));
+        assertFalse(compiled.isDerived("ab"));
+        assertFalse(compiled.isDerived("abbb"));
+    }
+
+
+
+    @Test
+    public void comprobarLongitudDeNoTerminalNoValido() throws CFGAlgorithmsException {
+        CompiledGrammar compiled = CompiledGrammar.compile(Gramaticas.fnc());
+        // 'D' está dentro del rango de no terminales (A..S) pero no es uno de ellos.
+        for (char symbol : new char[]{'D', 'a', 'Z', '@'}) {
+            try {
+                compiled.getMinLength(symbol);
+                fail("'" + symbol + "' no es un no terminal.");
+            } catch (CFGAlgorithmsException ex) {
+            }
+        }
+        assertEquals(2, compiled.getMinLength('S'));
+    }
+
+
+
+    @Test
+    public void comprobarFiltrosPrevios() throws CFGAlgorithmsException {
+        gica = new CFGAlgorithms();
+        gica.addNonTerminal('S');
+        gica.addNonTerminal('A');
+        gica.addNonTerminal('B');
+        gica.addTerminal('a');
+        gica.addTerminal('b');
+        gica.setStartSymbol('S');
+        gica.addProduction('S', "AB");
+        gica.addProduction('A', "AA");
+        gica.addProduction('A', "a");
+        gica.addProduction('B', "b");
+
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        WordFilter filter = compiled.getFilter();
+        for (String word : palabras(8)) {
+            assertEquals(word, cykReferencia(gica, word), compiled.isDerived(word));
+        }
+        assertEquals(palabras(8).length, filter.getChecked());
+        assertEquals(2, filter.getRejectedByLength());
+        assertTrue(filter.getRejectedByFirst() > 0);
+        assertTrue(filter.getRejectedByLast() > 0);
+        assertTrue(filter.getRejectedByBigram() > 0);
+        // a+b: todas las demás palabras las rechazan los filtros sin CYK.
+        assertEquals(palabras(8).length - 7, filter.getRejected());
+
+        filter.resetStatistics();
+        assertEquals(0, filter.getChecked());
+        assertEquals(0.0, filter.getHitRate(), 0.0);
+    }
+
+
+
+    @Test
+    public void comprobarFiltradoDescendente() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        gica.addNonTerminal('D');
+        gica.addProduction('S', "DA"); // D sólo aparece al principio de la palabra.
+        gica.addProduction('D', "BB");
+        gica.addProduction('D', "b");
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+
+        gica.setTopDownFiltering(true);
+        for (String word : palabras(8)) {
+            assertEquals(word, cykReferencia(gica, word), compiled.isDerived(word, true));
+            assertEquals(word, cykReferencia(gica, word), gica.isDerivedUsignCYK(word));
+        }
+    }
+
+
+
+    @Test
+    public void comprobarTablaFueraDelHeap() throws CFGAlgorithmsException, IOException {
+        BufferPoolMXBean direct = null;
+        BufferPoolMXBean mapped = null;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                direct = pool;
+            } else if (pool.getName().equals("mapped")) {
+                mapped = pool;
+            }
+        }
+        gica = Gramaticas.fnc();
+        Path directory = Files.createTempDirectory("charts");
+        try {
+            gica.setOffHeapChartThreshold(1);
+            long directBefore = direct.getMemoryUsed();
+            for (String word : palabras(8)) {
+                assertEquals(word, cykReferencia(gica, word), gica.isDerivedUsignCYK(word));
+            }
+            assertEquals(directBefore, direct.getMemoryUsed()); // liberada sin esperar al GC.
+
+            gica.setMappedChart(directory, 0);
+            long mappedBefore = mapped.getCount();
+            for (String word : palabras(7)) {
+                assertEquals(word, cykReferencia(gica, word), gica.isDerivedUsignCYK(word));
+            }
+            assertEquals(mappedBefore, mapped.getCount());
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                assertFalse(files.iterator().hasNext());
+            }
+        } finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarConsultasSinReservarMemoria() throws CFGAlgorithmsException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        gica = Gramaticas.fnc();
+        String[] words = palabras(8);
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        CYKWorkspace workspace = new CYKWorkspace();
+
+        for (int round = 0; round < 200; round++) { // calentamiento y crecimiento de los buffers.
+            for (String word : words) {
+                gica.isDerivedUsignCYK(word);
+                compiled.isDerived(word, workspace);
+            }
+        }
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (String word : words) {
+            gica.isDerivedUsignCYK(word);
+            compiled.isDerived(word, workspace);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+        assertEquals(0, allocated);
+    }
+
+
+
+    /**
+     * Las palabras pueden ser fragmentos de un texto mayor (String, char[] o
+     * CharBuffer) y se analizan sin copiarlas.
+     */
+    @Test
+    public void comprobarFragmentosSinCopiar() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        String[] words = palabras(7);
+        StringBuilder sb = new StringBuilder();
+        int[] offsets = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            sb.append('#');
+            offsets[i] = sb.length();
+            sb.append(words[i]);
+        }
+        String text = sb.toString();
+        char[] chars = text.toCharArray();
+        CharBuffer buffer = CharBuffer.wrap(chars);
+
+        for (int i = 0; i < words.length; i++) {
+            boolean expected = gica.isDerivedUsignCYK(words[i]);
+            int length = words[i].length();
+            assertEquals(words[i], expected, gica.isDerivedUsignCYK(text, offsets[i], length));
+            assertEquals(words[i], expected, gica.isDerivedUsignCYK(chars, offsets[i], length));
+            assertEquals(words[i], expected, compiled.isDerived(text, offsets[i], length));
+            assertEquals(words[i], expected, compiled.isDerived(chars, offsets[i], length));
+            buffer.limit(offsets[i] + length).position(offsets[i]);
+            assertEquals(words[i], expected, gica.isDerivedUsignCYK(buffer));
+            assertEquals(offsets[i], buffer.position());
+            buffer.clear();
+        }
+        assertFalse(gica.isDerivedUsignCYK(text, 0, 0));
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < words.length; i++) {
+                gica.isDerivedUsignCYK(chars, offsets[i], words[i].length());
+                gica.isDerivedUsignCYK(text, offsets[i], words[i].length());
+            }
+        }
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < words.length; i++) {
+            gica.isDerivedUsignCYK(chars, offsets[i], words[i].length());
+            gica.isDerivedUsignCYK(text, offsets[i], words[i].length());
+        }
+        assertEquals(0, threads.getThreadAllocatedBytes(thread) - before - overhead);
+    }
+
+
+
+    @Test
+    public void comprobarFragmentoFueraDeRango() throws CFGAlgorithmsException {
+        thrown.expect(IndexOutOfBoundsException.class);
+
+        Gramaticas.fnc().isDerivedUsignCYK("abab", 3, 2);
+    }
+
+
+
+    @Test
+    public void comprobarFicheroProyectado() throws CFGAlgorithmsException, IOException {
+        gica = Gramaticas.fnc();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        Path file = Files.createTempFile("grammar", ".cfgc");
+        try {
+            compiled.write(file);
+            CompiledGrammar mapped = CompiledGrammar.map(file);
+
+            assertEquals(new String(compiled.getNonTerminals()), new String(mapped.getNonTerminals()));
+            assertEquals(new String(compiled.getTerminals()), new String(mapped.getTerminals()));
+            for (String word : palabras(8)) {
+                assertEquals(word, compiled.isDerived(word), mapped.isDerived(word));
+            }
+            for (char nonterminal : compiled.getNonTerminals()) {
+                assertEquals(compiled.getMinLength(nonterminal), mapped.getMinLength(nonterminal));
+                assertEquals(compiled.getMaxLength(nonterminal), mapped.getMaxLength(nonterminal));
+            }
+            assertEquals(compiled.getFilter().getRejected(), mapped.getFilter().getRejected());
+            assertEquals(compiled.getFingerprint(), mapped.getFingerprint());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+
+    /**
+     * Las tablas derivadas y la huella se leen del fichero, no se recalculan
+     * al proyectarlo: si se altera la huella guardada, la gramática
+     * proyectada devuelve la alterada.
+     */
+    @Test
+    public void comprobarTablasDerivadasDelFichero() throws CFGAlgorithmsException, IOException {
+        CompiledGrammar compiled = CompiledGrammar.compile(Gramaticas.fnc());
+        Path file = Files.createTempFile("grammar", ".cfgc");
+        try {
+            compiled.write(file);
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[48] ^= 1; // primer byte de la huella en la cabecera.
+            Files.write(file, bytes);
+
+            CompiledGrammar mapped = CompiledGrammar.map(file);
+            assertEquals(compiled.getFingerprint() ^ 1, mapped.getFingerprint());
+            assertEquals(compiled.isDerived("baaba"), mapped.isDerived("baaba"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarClasesDeTerminales() throws CFGAlgorithmsException {
+        gica = Gramaticas.fnc();
+        gica.addTerminal('c');
+        gica.addProduction('A', "c");
+        gica.addProduction('C', "c");
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+
+        assertEquals(3, compiled.getTerminals().length);
+        assertEquals(2, compiled.getTerminalClassCount());
+        for (String word : palabras(7)) {
+            assertEquals(word, compiled.isDerived(word), compiled.isDerived(word.replace('a', 'c')));
+        }
+    }
+
+
+
+    @Test
+    public void comprobarFicheroNoValido() throws CFGAlgorithmsException, IOException {
+        thrown.expect(CFGAlgorithmsException.class);
+
+        Path file = Files.createTempFile("grammar", ".cfgc");
+        try {
+            Files.write(file, new byte[64]);
+            CompiledGrammar.map(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+
+
+    @Test
+    public void comprobarCompilacionNoFNC() throws CFGAlgorithmsException {
+        thrown.expect(CFGAlgorithmsException.class);
+
+        gica = Gramaticas.fnc();
+        gica.addProduction('S', "aB");
+
+        CompiledGrammar.compile(gica);
+    }
+
+
+
+    @Test
+    public void comprobarPalabraNoValida() throws CFGAlgorithmsException {
+        thrown.expect(CFGAlgorithmsException.class);
+
+        CompiledGrammar.compile(Gramaticas.fnc()).isDerived("abc");
+    }
+}
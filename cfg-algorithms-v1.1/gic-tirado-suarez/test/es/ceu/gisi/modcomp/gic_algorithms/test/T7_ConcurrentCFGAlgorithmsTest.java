@@ -0,0 +1,122 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.ConcurrentCFGAlgorithms;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea ConcurrentCFGAlgorithms con muchos hilos lectores
+ * ejecutando CYK mientras otro hilo modifica la gramática.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T7_ConcurrentCFGAlgorithmsTest {
+
+    private static final int READERS = 8;
+    private static final int WRITES = 2000;
+
+    private static final String SIN_AA = "[a, b],[A, B, C, S],A::=BA|aB::=CC|bC::=AB|aS::=AB|BC,S";
+    private static final String CON_AA = "[a, b],[A, B, C, S],A::=BA|aB::=CC|bC::=AB|aS::=AA|AB|BC,S";
+
+
+
+    public T7_ConcurrentCFGAlgorithmsTest() {
+    }
+
+
+
+    @Test
+    public void comprobarLecturasDuranteEscrituras() throws Exception {
+        ConcurrentCFGAlgorithms gica = Gramaticas.fncConcurrente();
+        assertEquals(SIN_AA, gica.getGrammar());
+
+        ExecutorService pool = Executors.newFixedThreadPool(READERS);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+        CountDownLatch started = new CountDownLatch(READERS);
+
+        for (int i = 0; i < READERS; i++) {
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    while (!done.get()) {
+                        // Palabras que no dependen de S::=AA.
+                        assertTrue(gica.isDerivedUsignCYK("baaba"));
+                        assertFalse(gica.isDerivedUsignCYK("bbb"));
+                        // "aa" sólo pertenece al lenguaje mientras exista S::=AA.
+                        gica.isDerivedUsignCYK("aa");
+                        String grammar = gica.getGrammar();
+                        assertTrue(grammar, grammar.equals(SIN_AA) || grammar.equals(CON_AA));
+                        assertTrue(gica.isCNF());
+                        reads.incrementAndGet();
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+        }
+
+        started.await();
+        for (int i = 0; i < WRITES; i++) {
+            gica.addProduction('S', "AA");
+            assertTrue(gica.isDerivedUsignCYK("aa"));
+            gica.removeProduction('S', "AA");
+            assertFalse(gica.isDerivedUsignCYK("aa"));
+        }
+        done.set(true);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(reads.get() > 0);
+        assertEquals(SIN_AA, gica.getGrammar());
+    }
+
+
+
+    /**
+     * Lo leído antes de una escritura no cambia con ella, aunque la
+     * instantánea comparta las listas con la gramática interna.
+     */
+    @Test
+    public void comprobarLecturasSobreVersionAnterior() throws Exception {
+        ConcurrentCFGAlgorithms gica = Gramaticas.fncConcurrente();
+        List<String> antes = gica.getProductions('S');
+        Set<Character> noTerminales = gica.getNonTerminals();
+        long version = gica.getVersion();
+        assertEquals(version, gica.getVersion());
+        assertEquals(Gramaticas.fnc().hasUnitProductions(), gica.hasUnitProductions());
+
+        gica.addProduction('S', "AA");
+        gica.addProduction('S', "A");
+        gica.addNonTerminal('D');
+        assertEquals(Arrays.asList("AB", "BC"), antes);
+        assertFalse(noTerminales.contains('D'));
+        assertEquals(Arrays.asList("A", "AA", "AB", "BC"), gica.getProductions('S'));
+        assertTrue(gica.getNonTerminals().contains('D'));
+        assertEquals("S::=A|AA|AB|BC", gica.getProductionsToString('S'));
+        assertTrue(gica.hasUnitProductions());
+        assertFalse(gica.isCNF());
+        assertTrue(gica.getVersion() != version);
+
+        gica.removeProduction('S', "A");
+        assertTrue(gica.isCNF());
+        assertTrue(gica.isDerivedUsignCYK("aa"));
+        assertEquals(CON_AA.replace("[A, B, C, S]", "[A, B, C, D, S]"), gica.getGrammar());
+    }
+}
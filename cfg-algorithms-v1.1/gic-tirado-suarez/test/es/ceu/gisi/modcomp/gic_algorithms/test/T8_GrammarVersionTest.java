@@ -0,0 +1,143 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.GrammarVersion;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que testea las versiones inmutables de una gramática (snapshot y
+ * restore) y que las transformaciones no alteran versiones anteriores.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T8_GrammarVersionTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T8_GrammarVersionTest() {
+    }
+
+
+
+    private CFGAlgorithms gramaticaConLambda() throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+        g.addTerminal('a');
+        g.addTerminal('b');
+
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+
+        g.setStartSymbol('S');
+
+        g.addProduction('S', "AB");
+        g.addProduction('A', "aA");
+        g.addProduction('A', "l");
+        g.addProduction('B', "b");
+
+        return g;
+    }
+
+
+
+    @Test
+    public void comprobarRestaurarVersion() throws CFGAlgorithmsException {
+        gica = gramaticaConLambda();
+        String original = gica.getGrammar();
+
+        GrammarVersion v0 = gica.snapshot();
+        gica.removeLambdaProductions();
+        String sinLambda = gica.getGrammar();
+        assertFalse(original.equals(sinLambda));
+
+        GrammarVersion v1 = gica.snapshot();
+        gica.restore(v0);
+        assertEquals(original, gica.getGrammar());
+
+        gica.restore(v1);
+        assertEquals(sinLambda, gica.getGrammar());
+    }
+
+
+
+    @Test
+    public void comprobarVersionInmutable() throws CFGAlgorithmsException {
+        gica = gramaticaConLambda();
+        GrammarVersion v0 = gica.snapshot();
+
+        gica.addProduction('B', "a");
+        gica.addNonTerminal('C');
+        gica.removeProduction('A', "l");
+
+        assertEquals("[b]", v0.getProductions('B').toString());
+        assertEquals("[aA, l]", v0.getProductions('A').toString());
+        assertFalse(v0.getNonTerminals().contains('C'));
+        assertEquals("B::=a|b", gica.getProductionsToString('B'));
+        assertEquals("A::=aA", gica.getProductionsToString('A'));
+    }
+
+
+
+    @Test
+    public void comprobarMuchasVersiones() throws CFGAlgorithmsException {
+        gica = gramaticaConLambda();
+        List<GrammarVersion> versions = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (char c = 'C'; c <= 'R'; c++) {
+            versions.add(gica.snapshot());
+            texts.add(gica.getGrammar());
+            gica.addNonTerminal(c);
+            gica.addProduction(c, "a");
+        }
+        for (int i = versions.size() - 1; i >= 0; i--) {
+            gica.restore(versions.get(i));
+            assertEquals(texts.get(i), gica.getGrammar());
+        }
+    }
+
+
+
+    /**
+     * Tras un snapshot() la primera modificación de una lista la copia, las
+     * siguientes ya no, y las listas que no se tocan siguen compartidas.
+     */
+    @Test
+    public void comprobarCopiaSoloAlModificar() throws CFGAlgorithmsException {
+        gica = gramaticaConLambda();
+        List<String> a0 = gica.getProductions('A');
+        List<String> b0 = gica.getProductions('B');
+        GrammarVersion v0 = gica.snapshot();
+
+        gica.addProduction('A', "b");
+        List<String> a1 = gica.getProductions('A');
+        assertNotSame(a0, a1);
+        gica.addProduction('A', "bA");
+        gica.removeProduction('A', "l");
+        assertSame(a1, gica.getProductions('A'));
+        assertSame(b0, gica.getProductions('B'));
+
+        GrammarVersion v1 = gica.snapshot();
+        gica.addProduction('A', "a");
+        assertNotSame(a1, gica.getProductions('A'));
+
+        assertEquals("[aA, l]", v0.getProductions('A').toString());
+        assertEquals("[aA, b, bA]", v1.getProductions('A').toString());
+        assertEquals("A::=a|aA|b|bA", gica.getProductionsToString('A'));
+
+        gica.restore(v0);
+        assertSame(a0, gica.getProductions('A'));
+        assertSame(b0, gica.getProductions('B'));
+        gica.addProduction('B', "a");
+        assertNotSame(b0, gica.getProductions('B'));
+        assertEquals("[b]", v0.getProductions('B').toString());
+        assertEquals("[b]", v1.getProductions('B').toString());
+    }
+}
@@ -0,0 +1,182 @@
+package es.ceu.gisi.modcomp.gic_algorithms.test;
+
+import es.ceu.gisi.modcomp.gic_algorithms.CFGAlgorithms;
+import es.ceu.gisi.modcomp.gic_algorithms.CompiledGrammar;
+import es.ceu.gisi.modcomp.gic_algorithms.FourRussiansRecognizer;
+import es.ceu.gisi.modcomp.gic_algorithms.exceptions.CFGAlgorithmsException;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+
+
+/**
+ * Clase que contrasta el reconocedor de los cuatro rusos con el CYK de
+ * CFGAlgorithms. La longitud a partir de la cual compensa se mide aparte,
+ * con benchmark.FourRussiansBenchmark.
+ *
+ * @author Sergio Saugar García <sergio.saugargarcia@ceu.es>
+ */
+public class T9_FourRussiansTest {
+
+    private CFGAlgorithms gica;
+
+
+
+    public T9_FourRussiansTest() {
+    }
+
+
+
+    /**
+     * Palabras bien parentizadas, con a como paréntesis de apertura y b como
+     * cierre: S::=AB|AC|SS, C::=SB, A::=a, B::=b.
+     */
+    private CFGAlgorithms gramaticaParentesis() throws CFGAlgorithmsException {
+        CFGAlgorithms g = new CFGAlgorithms();
+
+        g.addNonTerminal('S');
+        g.addNonTerminal('A');
+        g.addNonTerminal('B');
+        g.addNonTerminal('C');
+
+        g.addTerminal('a');
+        g.addTerminal('b');
+
+        g.setStartSymbol('S');
+
+        g.addProduction('S', "AB");
+        g.addProduction('S', "AC");
+        g.addProduction('S', "SS");
+        g.addProduction('C', "SB");
+        g.addProduction('A', "a");
+        g.addProduction('B', "b");
+
+        return g;
+    }
+
+
+
+    private static String parentesis(Random random, int pairs) {
+        StringBuilder sb = new StringBuilder();
+        int open = 0;
+        int remaining = pairs;
+        while (remaining > 0 || open > 0) {
+            if (remaining > 0 && (open == 0 || random.nextBoolean())) {
+                sb.append('a');
+                open++;
+                remaining--;
+            } else {
+                sb.append('b');
+                open--;
+            }
+        }
+        return sb.toString();
+    }
+
+
+
+    private static String cambiarLetra(String word, int i) {
+        char[] chars = word.toCharArray();
+        chars[i] = chars[i] == 'a' ? 'b' : 'a';
+        return new String(chars);
+    }
+
+
+
+    @Test
+    public void comprobarEquivalenteACYK() throws CFGAlgorithmsException {
+        gica = gramaticaParentesis();
+        FourRussiansRecognizer recognizer = new FourRussiansRecognizer(CompiledGrammar.compile(gica));
+        FourRussiansRecognizer sinTablas = new FourRussiansRecognizer(CompiledGrammar.compile(gica));
+        sinTablas.setTableMemoryLimit(0);
+
+        for (int l = 1; l <= 10; l++) {
+            for (int bits = 0; bits < (1 << l); bits++) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < l; i++) {
+                    sb.append((bits >>> i & 1) == 0 ? 'a' : 'b');
+                }
+                String word = sb.toString();
+                assertEquals(word, gica.isDerivedUsignCYK(word), recognizer.isDerived(word));
+                assertEquals(word, gica.isDerivedUsignCYK(word), sinTablas.isDerived(word));
+            }
+        }
+    }
+
+
+
+    @Test
+    public void comprobarPalabrasLargas() throws CFGAlgorithmsException {
+        gica = gramaticaParentesis();
+        FourRussiansRecognizer recognizer = new FourRussiansRecognizer(CompiledGrammar.compile(gica));
+        Random random = new Random(42);
+
+        for (int pairs = 60; pairs <= 150; pairs += 15) {
+            String word = parentesis(random, pairs);
+            assertTrue(recognizer.isDerived(word));
+            assertTrue(gica.isDerivedUsignCYK(word));
+
+            // Cambiando dos letras que se compensan se obtienen palabras
+            // que sólo CYK completo distingue.
+            int i = random.nextInt(word.length());
+            int j = random.nextInt(word.length());
+            String other = cambiarLetra(cambiarLetra(word, i), j);
+            assertEquals(other, gica.isDerivedUsignCYK(other), recognizer.isDerived(other));
+        }
+    }
+
+
+
+    @Test
+    public void comprobarVectorialIgualAEscalar() throws CFGAlgorithmsException {
+        gica = gramaticaParentesis();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        FourRussiansRecognizer vectorial = new FourRussiansRecognizer(compiled);
+        FourRussiansRecognizer escalar = new FourRussiansRecognizer(compiled);
+        escalar.setVectorized(false);
+        assertFalse(escalar.isVectorized());
+        Random random = new Random(3);
+
+        for (int pairs = 100; pairs <= 1000; pairs += 300) {
+            String word = parentesis(random, pairs);
+            String other = cambiarLetra(cambiarLetra(word, random.nextInt(word.length())), random.nextInt(word.length()));
+            assertTrue(vectorial.isDerived(word));
+            assertTrue(escalar.isDerived(word));
+            assertEquals(other, escalar.isDerived(other), vectorial.isDerived(other));
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && Boolean.parseBoolean(System.getProperty("gic.vector", "true"))) {
+            assertTrue(vectorial.isVectorized());
+        }
+    }
+
+
+
+    /**
+     * El bloque crece con ⌊log₂ n⌋ hasta que las tablas dejan de caber.
+     */
+    @Test
+    public void comprobarBloqueSegunLongitud() throws CFGAlgorithmsException {
+        gica = gramaticaParentesis();
+        CompiledGrammar compiled = CompiledGrammar.compile(gica);
+        FourRussiansRecognizer recognizer = new FourRussiansRecognizer(compiled);
+        assertEquals(2, recognizer.getBlockSize(8));
+        assertEquals(4, recognizer.getBlockSize(16));
+        assertEquals(4, recognizer.getBlockSize(255));
+        assertEquals(8, recognizer.getBlockSize(256));
+        assertEquals(0, recognizer.getBlockSize(1 << 20));
+
+        Random random = new Random(7);
+        for (int n = 32; n <= 512; n *= 2) {
+            String word = parentesis(random, n / 2);
+            assertTrue(recognizer.isDerived(word));
+            assertEquals(compiled.isDerived(word + "a"), recognizer.isDerived(word + "a"));
+        }
+
+        recognizer.setTableMemoryLimit(1 << 16);
+        assertTrue(recognizer.getBlockSize(256) < 8);
+        recognizer.setTableMemoryLimit(0);
+        assertEquals(0, recognizer.getBlockSize(256));
+    }
+}